@@ -0,0 +1,85 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.firejoust.parkourcapture.format.BlockCategory;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Block of every raw block-state id of one game version, read from minecraft-data's
+ * {@code blocks.json} (the table the data-normalizer resolves {@code vb} ids through), e.g.
+ * {@code node_modules/minecraft-data/minecraft-data/data/pc/1.21.4/blocks.json}.
+ * <p>
+ * Only block names are known, not their properties, so palette strings come out as
+ * {@code "minecraft:ladder"} rather than a full block state. That is all {@link BlockCategory}
+ * looks at.
+ */
+final class BlockNames {
+
+    /** No table: every id is nameless and {@link BlockCategory#DEFAULT}. */
+    static final BlockNames NONE = new BlockNames(new String[0], "none");
+
+    private final String[] names;
+    private final byte[] categories;
+    private final String source;
+
+    private BlockNames(String[] names, String source) {
+        this.names = names;
+        this.source = source;
+        this.categories = new byte[names.length];
+        for (int i = 0; i < names.length; i++) {
+            categories[i] = names[i] != null ? BlockCategory.ofStateName(names[i]) : BlockCategory.DEFAULT;
+        }
+    }
+
+    /** Reads the {@code name}, {@code minStateId} and {@code maxStateId} of every block in {@code path}. */
+    static BlockNames load(Path path) throws IOException {
+        String[] names = new String[0];
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            in.beginArray();
+            while (in.hasNext()) {
+                String name = null;
+                int minStateId = -1;
+                int maxStateId = -1;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "name" -> name = in.nextString();
+                        case "minStateId" -> minStateId = in.nextInt();
+                        case "maxStateId" -> maxStateId = in.nextInt();
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                if (name == null || minStateId < 0 || maxStateId < minStateId) {
+                    throw new IOException("Block entry without a name or state id range in " + path);
+                }
+                if (maxStateId >= names.length) {
+                    names = Arrays.copyOf(names, Math.max(maxStateId + 1, names.length * 2));
+                }
+                Arrays.fill(names, minStateId, maxStateId + 1, "minecraft:" + name);
+            }
+            in.endArray();
+        }
+        return new BlockNames(names, path.toAbsolutePath().normalize() + "@" + Files.size(path) + ","
+                + Files.getLastModifiedTime(path).toMillis());
+    }
+
+    /** Where the table came from: the file's absolute path, size and modification time, or {@code none}. */
+    String source() {
+        return source;
+    }
+
+    /** Registry name of the block of {@code rawId}, or {@code null} if unknown. */
+    String name(int rawId) {
+        return rawId >= 0 && rawId < names.length ? names[rawId] : null;
+    }
+
+    int category(int rawId) {
+        return rawId >= 0 && rawId < categories.length ? categories[rawId] : BlockCategory.DEFAULT;
+    }
+}
@@ -0,0 +1,65 @@
+package com.firejoust.parkourcapture.converter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only record of finished conversions, so a restarted batch skips them.
+ * <p>
+ * One line per converted input: the output settings ({@link Converter.Options#settings}), the
+ * input's size and modification time, and its absolute path. An input counts as done only if all
+ * four still match, so an edited file, a change of formats or output directory, or a different
+ * block table is converted again. Lines are written once every output of the
+ * input has been moved into place; a line cut short by a crash matches nothing.
+ */
+final class ConversionJournal implements Closeable {
+
+    private final Set<String> done;
+    private final BufferedWriter out;
+
+    private ConversionJournal(Set<String> done, BufferedWriter out) {
+        this.done = done;
+        this.out = out;
+    }
+
+    static ConversionJournal open(Path path) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            done.addAll(lines);
+        }
+        BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        return new ConversionJournal(done, out);
+    }
+
+    boolean isDone(Path input, String settings) throws IOException {
+        return done.contains(entry(input, settings));
+    }
+
+    synchronized void markDone(Path input, String settings) throws IOException {
+        String entry = entry(input, settings);
+        out.write(entry);
+        out.newLine();
+        out.flush();
+        done.add(entry);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private static String entry(Path input, String settings) throws IOException {
+        return settings + '\t' + Files.size(input) + '\t' + Files.getLastModifiedTime(input).toMillis()
+                + '\t' + input.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,306 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.firejoust.parkourcapture.format.Pkdseq;
+import com.firejoust.parkourcapture.format.PkdeltaWriter;
+import com.firejoust.parkourcapture.format.PkdseqWriter;
+import com.firejoust.parkourcapture.format.PkrawWriter;
+import com.firejoust.parkourcapture.format.RunExport;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Batch conversion of run files ({@code parkour_data/*.json}) to the binary formats the mod writes
+ * while recording:
+ * <pre>
+ * converter [options] &lt;run.json | directory&gt;...
+ *   --out DIR             write outputs here instead of next to each input
+ *   --formats LIST        any of pkraw, pkdelta, pkdseq (default pkraw,pkdseq)
+ *   --pkdseq-version N    1 (default) or 2
+ *   --blocks FILE         minecraft-data blocks.json resolving vb ids to blocks
+ *   --threads N           files converted at once (default: all cores)
+ *   --journal FILE        record of finished inputs (default converted.journal)
+ *   --force               convert inputs the journal lists as done
+ *   --progress-seconds N  seconds between progress lines (default 5)
+ * </pre>
+ * Each file is read once with a streaming parser and written through the same writers the mod
+ * uses, so memory per worker stays at one tick plus the writers' buffers whatever the file size.
+ * Directories contribute the {@code .json} files directly inside them. Outputs only appear once
+ * complete, and finished inputs are journaled, so an interrupted batch picks up where it stopped
+ * when run again with the same arguments.
+ */
+public final class Converter {
+
+    /** Output formats, written as {@code <name><extension>}. */
+    enum Format {
+        PKRAW(".pkraw"),
+        PKDELTA(".pkdelta"),
+        PKDSEQ(".pkdseq");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /** Settings shared by every file of a batch. */
+    record Options(Path outDir, Set<Format> formats, int pkdseqVersion, BlockNames blocks) {
+
+        /**
+         * Everything that changes the outputs, as the journal keys them: formats, PKDSEQ version,
+         * the output directory and the block table.
+         */
+        String settings() {
+            return formats.stream().map(format -> format.name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(","))
+                    + ";pkdseq=" + pkdseqVersion
+                    // Without --out each output goes next to its input, which the journal keys already
+                    + ";out=" + (outDir != null ? outDir.toAbsolutePath().normalize() : "input")
+                    + ";blocks=" + blocks.source();
+        }
+    }
+
+    private static final int DEFAULT_PROGRESS_SECONDS = 5;
+    // Not stored in run files; the mod's raycast reach when they were recorded
+    private static final float RAY_DISTANCE = 64.0f;
+    private static final int DELTA_BLOCK_TICKS = 32;
+    private static final int DELTA_DEFLATE_LEVEL = 6;
+
+    private Converter() {}
+
+    public static void main(String[] args) {
+        Path outDir = null;
+        Set<Format> formats = EnumSet.of(Format.PKRAW, Format.PKDSEQ);
+        int pkdseqVersion = Pkdseq.VERSION_WINDOWS;
+        Path blocksFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path journalFile = Path.of("converted.journal");
+        boolean force = false;
+        int progressSeconds = DEFAULT_PROGRESS_SECONDS;
+        List<Path> arguments = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> outDir = Path.of(value(args, ++i));
+                    case "--formats" -> formats = parseFormats(value(args, ++i));
+                    case "--pkdseq-version" -> pkdseqVersion = Integer.parseInt(value(args, ++i));
+                    case "--blocks" -> blocksFile = Path.of(value(args, ++i));
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(value(args, ++i)));
+                    case "--journal" -> journalFile = Path.of(value(args, ++i));
+                    case "--force" -> force = true;
+                    case "--progress-seconds" -> progressSeconds = Math.max(1, Integer.parseInt(value(args, ++i)));
+                    default -> {
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        }
+                        arguments.add(Path.of(args[i]));
+                    }
+                }
+            }
+            if (pkdseqVersion != Pkdseq.VERSION_WINDOWS && pkdseqVersion != Pkdseq.VERSION_INDEXED) {
+                throw new IllegalArgumentException("Unknown PKDSEQ version " + pkdseqVersion);
+            }
+            if (arguments.isEmpty() || formats.isEmpty()) {
+                throw new IllegalArgumentException("Nothing to convert");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: converter [--out DIR] [--formats pkraw,pkdelta,pkdseq] [--pkdseq-version 1|2]"
+                    + " [--blocks blocks.json] [--threads N] [--journal FILE] [--force] [--progress-seconds N]"
+                    + " <run.json | directory>...");
+            System.exit(2);
+            return;
+        }
+
+        try {
+            BlockNames blocks = BlockNames.NONE;
+            if (blocksFile != null) {
+                blocks = BlockNames.load(blocksFile);
+            } else {
+                System.err.println("No --blocks table: block names are left empty and every block is category DEFAULT");
+            }
+            if (outDir != null) {
+                Files.createDirectories(outDir);
+            }
+            Options options = new Options(outDir, formats, pkdseqVersion, blocks);
+            System.exit(run(collectInputs(arguments), options, threads, journalFile, force, progressSeconds));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Converts {@code inputs} on {@code threads} workers and returns the exit status. */
+    static int run(List<Path> inputs, Options options, int threads, Path journalFile, boolean force,
+                   int progressSeconds) throws IOException {
+        try (ConversionJournal journal = ConversionJournal.open(journalFile)) {
+            String settings = options.settings();
+            List<Path> pending = new ArrayList<>();
+            long totalBytes = 0;
+            for (Path input : inputs) {
+                if (force || !journal.isDone(input, settings)) {
+                    pending.add(input);
+                    totalBytes += Files.size(input);
+                }
+            }
+            System.err.printf(Locale.ROOT, "%d file(s) to convert, %d already done%n", pending.size(),
+                    inputs.size() - pending.size());
+            // Largest first, so one huge file does not start last and hold up the end of the batch
+            pending.sort(Comparator.comparingLong(Converter::sizeOrZero).reversed());
+
+            Progress progress = new Progress(pending.size(), totalBytes);
+            AtomicInteger threadIds = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Converter-" + threadIds.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            progress.start(progressSeconds);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (Path input : pending) {
+                    tasks.add(workers.submit(() -> {
+                        try {
+                            String result = convert(input, options, progress);
+                            journal.markDone(input, settings);
+                            progress.converted.incrementAndGet();
+                            System.out.println(input + ": " + result);
+                        } catch (IOException | RuntimeException e) {
+                            progress.failed.incrementAndGet();
+                            System.err.println(input + ": " + e.getMessage());
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 1;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                workers.shutdownNow();
+                progress.stop();
+            }
+            System.err.println(progress.line());
+            return progress.failed.get() == 0 ? 0 : 1;
+        }
+    }
+
+    /** Converts one run file and describes what was written. */
+    static String convert(Path input, Options options, Progress progress) throws IOException {
+        String name = input.getFileName().toString();
+        String baseName = name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+        Path dir = options.outDir() != null ? options.outDir() : input.toAbsolutePath().getParent();
+        BlockNames blocks = options.blocks();
+        List<RunExport> exports = new ArrayList<>();
+        PkdseqWriter sequences = null;
+        JsonTick tick = new JsonTick();
+        int ticks = 0;
+        try (RunJsonReader reader = RunJsonReader.open(input, progress.bytesRead)) {
+            try {
+                while (reader.next(tick)) {
+                    // The first tick's grid is the file's, as the data-normalizer infers it
+                    if (ticks == 0) {
+                        int width = tick.visionWidth();
+                        int height = tick.visionHeight();
+                        if (width <= 0 || height <= 0) {
+                            throw new IOException("First tick has no usable vision grid");
+                        }
+                        for (Format format : options.formats()) {
+                            Path target = dir.resolve(baseName + format.extension);
+                            exports.add(switch (format) {
+                                case PKRAW -> PkrawWriter.open(target, reader.startTimestampMillis(), reader.serverIp(),
+                                        reader.targetYaw(), reader.fallZoneY(), width, height, RAY_DISTANCE, blocks::name);
+                                case PKDELTA -> PkdeltaWriter.open(target, reader.startTimestampMillis(), reader.serverIp(),
+                                        reader.targetYaw(), reader.fallZoneY(), width, height, RAY_DISTANCE,
+                                        DELTA_BLOCK_TICKS, DELTA_DEFLATE_LEVEL, Runnable::run, blocks::name);
+                                case PKDSEQ -> sequences = PkdseqWriter.open(target, options.pkdseqVersion(), width, height,
+                                        reader.targetYaw(), reader.fallZoneY(), blocks::category);
+                            });
+                        }
+                    }
+                    for (RunExport export : exports) {
+                        export.append(tick);
+                    }
+                    ticks++;
+                    progress.ticks.increment();
+                }
+                RunJsonReader.Footer footer = reader.footer();
+                int validTicks = footer.validTicks() >= 0 ? Math.min(footer.validTicks(), ticks) : ticks;
+                for (RunExport export : exports) {
+                    export.finish(footer.stopTimestampMillis(), validTicks);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (RunExport export : exports) {
+                    export.abort();
+                }
+                throw e;
+            }
+        }
+        if (ticks == 0) {
+            return "no ticks, nothing written";
+        }
+        return ticks + " ticks" + (sequences != null ? ", " + sequences.sequenceCount() + " windows" : "");
+    }
+
+    private static List<Path> collectInputs(List<Path> arguments) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (Path argument : arguments) {
+            if (Files.isDirectory(argument)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(argument, "*.json")) {
+                    for (Path file : files) {
+                        if (Files.isRegularFile(file)) {
+                            inputs.add(file);
+                        }
+                    }
+                }
+            } else if (Files.isRegularFile(argument)) {
+                inputs.add(argument);
+            } else {
+                throw new IOException("No such file or directory: " + argument);
+            }
+        }
+        return inputs;
+    }
+
+    private static Set<Format> parseFormats(String list) {
+        Set<Format> formats = EnumSet.noneOf(Format.class);
+        for (String name : list.split(",")) {
+            if (!name.isBlank()) {
+                formats.add(Format.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return formats;
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static long sizeOrZero(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.firejoust.parkourcapture.format.RunTick;
+
+import java.util.Arrays;
+
+/**
+ * One tick of a run file, filled in place by {@link RunJsonReader#next} and reused for every tick
+ * of the run. Grids are stored row-major in arrays that only grow.
+ */
+final class JsonTick implements RunTick {
+
+    long sequence;
+    boolean inputForward;
+    boolean inputLeft;
+    boolean inputRight;
+    boolean inputBack;
+    boolean inputJump;
+    boolean inputSneak;
+    boolean inputSprint;
+    float yaw;
+    double velocityX;
+    double velocityY;
+    double velocityZ;
+    boolean onGround;
+    boolean collidedHorizontally;
+    boolean collidedVertically;
+    double playerY;
+    boolean inFallZone;
+
+    // --- Grids, as parsed; a width of -1 marks ragged rows ---
+    float[] distances = new float[0];
+    int distanceWidth;
+    int distanceHeight;
+    int[] blockStates = new int[0];
+    int blockWidth;
+    int blockHeight;
+
+    /** Resets every key to the value a tick without it reads as. */
+    void clear() {
+        inputForward = inputLeft = inputRight = inputBack = inputJump = inputSneak = inputSprint = false;
+        yaw = 0.0f;
+        velocityX = velocityY = velocityZ = 0.0;
+        onGround = collidedHorizontally = collidedVertically = inFallZone = false;
+        playerY = 0.0;
+        distanceWidth = distanceHeight = blockWidth = blockHeight = 0;
+    }
+
+    float[] distanceCapacity(int cells) {
+        if (distances.length < cells) {
+            distances = Arrays.copyOf(distances, Math.max(cells, distances.length * 2));
+        }
+        return distances;
+    }
+
+    int[] blockStateCapacity(int cells) {
+        if (blockStates.length < cells) {
+            blockStates = Arrays.copyOf(blockStates, Math.max(cells, blockStates.length * 2));
+        }
+        return blockStates;
+    }
+
+    @Override
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public boolean inputForward() {
+        return inputForward;
+    }
+
+    @Override
+    public boolean inputLeft() {
+        return inputLeft;
+    }
+
+    @Override
+    public boolean inputRight() {
+        return inputRight;
+    }
+
+    @Override
+    public boolean inputBack() {
+        return inputBack;
+    }
+
+    @Override
+    public boolean inputJump() {
+        return inputJump;
+    }
+
+    @Override
+    public boolean inputSneak() {
+        return inputSneak;
+    }
+
+    @Override
+    public boolean inputSprint() {
+        return inputSprint;
+    }
+
+    @Override
+    public float yaw() {
+        return yaw;
+    }
+
+    @Override
+    public double velocityX() {
+        return velocityX;
+    }
+
+    @Override
+    public double velocityY() {
+        return velocityY;
+    }
+
+    @Override
+    public double velocityZ() {
+        return velocityZ;
+    }
+
+    @Override
+    public boolean isOnGround() {
+        return onGround;
+    }
+
+    @Override
+    public boolean isCollidedHorizontally() {
+        return collidedHorizontally;
+    }
+
+    @Override
+    public boolean isCollidedVertically() {
+        return collidedVertically;
+    }
+
+    @Override
+    public double playerY() {
+        return playerY;
+    }
+
+    @Override
+    public boolean isInFallZone() {
+        return inFallZone;
+    }
+
+    // Grids whose shapes disagree read as -1 x -1, which no export's grid matches
+    @Override
+    public int visionWidth() {
+        return gridsAgree() ? distanceWidth : -1;
+    }
+
+    @Override
+    public int visionHeight() {
+        return gridsAgree() ? distanceHeight : -1;
+    }
+
+    @Override
+    public float visionDistance(int row, int column) {
+        return distances[row * distanceWidth + column];
+    }
+
+    @Override
+    public int visionBlockState(int row, int column) {
+        return blockStates[row * blockWidth + column];
+    }
+
+    private boolean gridsAgree() {
+        return distanceWidth >= 0 && distanceWidth == blockWidth && distanceHeight == blockHeight;
+    }
+}
@@ -0,0 +1,65 @@
+package com.firejoust.parkourcapture.converter;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batch counters, updated by every worker and printed on a schedule: files, input bytes, ticks,
+ * throughput and an estimate of the time left, which goes by bytes since run files vary in size
+ * by orders of magnitude.
+ */
+final class Progress {
+
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder ticks = new LongAdder();
+    final AtomicInteger converted = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+
+    private final int totalFiles;
+    private final long totalBytes;
+    private final long startNanos = System.nanoTime();
+    private ScheduledExecutorService printer;
+
+    Progress(int totalFiles, long totalBytes) {
+        this.totalFiles = totalFiles;
+        this.totalBytes = totalBytes;
+    }
+
+    /** Prints {@link #line} to stderr every {@code seconds}. */
+    void start(int seconds) {
+        printer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Converter-Progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        printer.scheduleAtFixedRate(() -> System.err.println(line()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        if (printer != null) {
+            printer.shutdownNow();
+        }
+    }
+
+    String line() {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        long bytes = bytesRead.sum();
+        double bytesPerSecond = bytes / seconds;
+        String eta = bytes > 0 && bytes < totalBytes
+                ? duration((long) ((totalBytes - bytes) / bytesPerSecond))
+                : "-";
+        return String.format(Locale.ROOT, "[%d/%d files, %d failed] %.1f/%.1f MiB, %.1f MiB/s, %.0f ticks/s, %s elapsed, ETA %s",
+                converted.get() + failed.get(), totalFiles, failed.get(), bytes / 1048576.0, totalBytes / 1048576.0,
+                bytesPerSecond / 1048576.0, ticks.sum() / seconds, duration((long) seconds), eta);
+    }
+
+    private static String duration(long seconds) {
+        return seconds >= 3600
+                ? String.format(Locale.ROOT, "%dh%02dm", seconds / 3600, seconds / 60 % 60)
+                : String.format(Locale.ROOT, "%dm%02ds", seconds / 60, seconds % 60);
+    }
+}
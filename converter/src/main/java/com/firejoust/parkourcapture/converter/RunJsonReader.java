@@ -0,0 +1,335 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams a run file ({@code parkour_data/*.json}) tick by tick, holding one tick at a time.
+ * <p>
+ * Both layouts the mod has written are read. Legacy files put {@code te} ahead of {@code d} and
+ * hold only valid, consecutive ticks. Streamed files put the footer ({@code te}, {@code dn},
+ * {@code dt}) after {@code d}, but a tick's sequence number depends on {@code dt}, so the footer is
+ * needed first: it is parsed from the last {@link #TAIL_BYTES} of the file, or, when {@code dt} is
+ * too long to fit there, by skimming the whole file once beforehand.
+ */
+final class RunJsonReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int TAIL_BYTES = 1 << 20;
+    private static final String[] FOOTER_KEYS = {"\"te\"", "\"dn\"", "\"dt\""};
+
+    /**
+     * End-of-run fields.
+     *
+     * @param validTicks       {@code dn}, or -1 when every tick is valid
+     * @param droppedSequences {@code dt}, ascending
+     */
+    record Footer(long stopTimestampMillis, int validTicks, long[] droppedSequences) {}
+
+    private final JsonReader json;
+
+    // --- Header, read by open() ---
+    private long startTimestampMillis = 0;
+    private String serverIp = "";
+    private float targetYaw = 0.0f;
+    private int fallZoneY = 0;
+    private Footer footer;
+
+    // Sequence numbering: the next number to hand out and the next dropped one to skip
+    private long nextSequence = 0;
+    private int nextDropped = 0;
+
+    private RunJsonReader(JsonReader json) {
+        this.json = json;
+    }
+
+    /**
+     * Opens {@code path} and reads up to the first tick, resolving the footer on the way.
+     *
+     * @param bytesRead counts the bytes read by this reader, for progress reports
+     */
+    static RunJsonReader open(Path path, LongAdder bytesRead) throws IOException {
+        RunJsonReader reader = new RunJsonReader(newJsonReader(path, bytesRead));
+        try {
+            reader.readHeader(path);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    long startTimestampMillis() {
+        return startTimestampMillis;
+    }
+
+    String serverIp() {
+        return serverIp;
+    }
+
+    float targetYaw() {
+        return targetYaw;
+    }
+
+    int fallZoneY() {
+        return fallZoneY;
+    }
+
+    Footer footer() {
+        return footer;
+    }
+
+    /**
+     * Reads the next tick into {@code tick}.
+     *
+     * @return {@code false} once the ticks are exhausted
+     */
+    boolean next(JsonTick tick) throws IOException {
+        if (!json.hasNext()) {
+            return false;
+        }
+        long[] dropped = footer.droppedSequences();
+        while (nextDropped < dropped.length && dropped[nextDropped] == nextSequence) {
+            nextSequence++;
+            nextDropped++;
+        }
+        tick.clear();
+        tick.sequence = nextSequence++;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "f" -> tick.inputForward = json.nextBoolean();
+                case "l" -> tick.inputLeft = json.nextBoolean();
+                case "r" -> tick.inputRight = json.nextBoolean();
+                case "b" -> tick.inputBack = json.nextBoolean();
+                case "j" -> tick.inputJump = json.nextBoolean();
+                case "n" -> tick.inputSneak = json.nextBoolean();
+                case "s" -> tick.inputSprint = json.nextBoolean();
+                case "y" -> tick.yaw = (float) json.nextDouble();
+                case "vx" -> tick.velocityX = json.nextDouble();
+                case "vy" -> tick.velocityY = json.nextDouble();
+                case "vz" -> tick.velocityZ = json.nextDouble();
+                case "g" -> tick.onGround = json.nextBoolean();
+                case "ch" -> tick.collidedHorizontally = json.nextBoolean();
+                case "cv" -> tick.collidedVertically = json.nextBoolean();
+                case "py" -> tick.playerY = json.nextDouble();
+                case "fz" -> tick.inFallZone = json.nextBoolean();
+                case "vd" -> readDistances(tick);
+                case "vb" -> readBlockStates(tick);
+                default -> json.skipValue(); // e.g. "p", pitch in the oldest files
+            }
+        }
+        json.endObject();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+
+    private void readHeader(Path path) throws IOException {
+        Long stopTimestampMillis = null;
+        json.beginObject();
+        while (true) {
+            if (!json.hasNext()) {
+                throw new IOException("No \"d\" tick array");
+            }
+            String name = json.nextName();
+            switch (name) {
+                case "ts" -> startTimestampMillis = json.nextLong();
+                case "te" -> stopTimestampMillis = json.nextLong();
+                case "ip" -> serverIp = nextStringOrEmpty(json);
+                case "ty" -> targetYaw = (float) json.nextDouble();
+                case "tfy" -> fallZoneY = json.nextInt();
+                case "d" -> {
+                    json.beginArray();
+                    // "te" ahead of the ticks means a legacy file, whose ticks are all valid and consecutive
+                    footer = stopTimestampMillis != null
+                            ? new Footer(stopTimestampMillis, -1, new long[0])
+                            : readFooter(path);
+                    return;
+                }
+                default -> json.skipValue();
+            }
+        }
+    }
+
+    private static Footer readFooter(Path path) throws IOException {
+        Footer footer = readFooterFromTail(path);
+        return footer != null ? footer : readFooterByScanning(path);
+    }
+
+    // The footer is the end of the file: parse from the last "te" key on, if it is within reach
+    private static Footer readFooterFromTail(Path path) throws IOException {
+        String tail;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(size, TAIL_BYTES));
+            long position = size - bytes.capacity();
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0) {
+                    break;
+                }
+            }
+            tail = new String(bytes.array(), 0, bytes.position(), StandardCharsets.ISO_8859_1);
+        }
+        // The footer starts at the first of its keys the writer emitted
+        int start = -1;
+        for (int i = 0; i < FOOTER_KEYS.length && start < 0; i++) {
+            start = tail.lastIndexOf(FOOTER_KEYS[i]);
+        }
+        if (start < 0) {
+            return null;
+        }
+        try (JsonReader footer = new JsonReader(new StringReader("{" + tail.substring(start)))) {
+            Footer parsed = readFooterFields(footer, false);
+            return parsed != null && footer.peek() == JsonToken.END_DOCUMENT ? parsed : null;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Footer readFooterByScanning(Path path) throws IOException {
+        try (JsonReader scan = newJsonReader(path, new LongAdder())) {
+            Footer footer = readFooterFields(scan, true);
+            return footer != null ? footer : new Footer(0, -1, new long[0]);
+        }
+    }
+
+    /**
+     * Reads an object's {@code te}, {@code dn} and {@code dt}, any of which may be missing. Other keys
+     * are skipped if {@code skipOthers}, otherwise they make this return {@code null}, as does an
+     * object with none of the three.
+     */
+    private static Footer readFooterFields(JsonReader in, boolean skipOthers) throws IOException {
+        boolean found = false;
+        long stopTimestampMillis = 0;
+        int validTicks = -1;
+        long[] dropped = new long[0];
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "te" -> {
+                    stopTimestampMillis = in.nextLong();
+                    found = true;
+                }
+                case "dn" -> {
+                    validTicks = in.nextInt();
+                    found = true;
+                }
+                case "dt" -> {
+                    found = true;
+                    int count = 0;
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (count == dropped.length) {
+                            dropped = Arrays.copyOf(dropped, Math.max(16, count * 2));
+                        }
+                        dropped[count++] = in.nextLong();
+                    }
+                    in.endArray();
+                    dropped = Arrays.copyOf(dropped, count);
+                    Arrays.sort(dropped);
+                }
+                default -> {
+                    if (!skipOthers) {
+                        return null;
+                    }
+                    in.skipValue();
+                }
+            }
+        }
+        in.endObject();
+        return found ? new Footer(stopTimestampMillis, validTicks, dropped) : null;
+    }
+
+    private void readDistances(JsonTick tick) throws IOException {
+        int rows = 0;
+        int width = 0;
+        int cells = 0;
+        json.beginArray();
+        while (json.hasNext()) {
+            int columns = 0;
+            json.beginArray();
+            while (json.hasNext()) {
+                tick.distanceCapacity(cells + 1)[cells++] = (float) json.nextDouble();
+                columns++;
+            }
+            json.endArray();
+            width = rows == 0 || columns == width ? columns : -1;
+            rows++;
+        }
+        json.endArray();
+        tick.distanceWidth = width;
+        tick.distanceHeight = rows;
+    }
+
+    private void readBlockStates(JsonTick tick) throws IOException {
+        int rows = 0;
+        int width = 0;
+        int cells = 0;
+        json.beginArray();
+        while (json.hasNext()) {
+            int columns = 0;
+            json.beginArray();
+            while (json.hasNext()) {
+                tick.blockStateCapacity(cells + 1)[cells++] = json.nextInt();
+                columns++;
+            }
+            json.endArray();
+            width = rows == 0 || columns == width ? columns : -1;
+            rows++;
+        }
+        json.endArray();
+        tick.blockWidth = width;
+        tick.blockHeight = rows;
+    }
+
+    private static String nextStringOrEmpty(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return "";
+        }
+        return in.nextString();
+    }
+
+    private static JsonReader newJsonReader(Path path, LongAdder bytesRead) throws IOException {
+        InputStream counted = new FilterInputStream(Files.newInputStream(path)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    bytesRead.add(n);
+                }
+                return n;
+            }
+        };
+        return new JsonReader(new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+}
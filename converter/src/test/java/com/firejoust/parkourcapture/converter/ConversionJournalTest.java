@@ -0,0 +1,59 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.firejoust.parkourcapture.format.Pkdseq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionJournalTest {
+
+    @Test
+    void convertsAgainOnlyWhenTheOutputsWouldDiffer(@TempDir Path dir) throws Exception {
+        Path input = Files.copy(resource("golden/run.json"), dir.resolve("run.json"));
+        Path journal = dir.resolve("converted.journal");
+        Path out = Files.createDirectories(dir.resolve("out"));
+        BlockNames blocks = BlockNames.load(resource("golden/blocks.json"));
+
+        convert(input, new Converter.Options(out, EnumSet.of(Converter.Format.PKDSEQ), Pkdseq.VERSION_WINDOWS,
+                BlockNames.NONE), journal);
+        assertEquals(1, entries(journal));
+        convert(input, new Converter.Options(out, EnumSet.of(Converter.Format.PKDSEQ), Pkdseq.VERSION_WINDOWS,
+                BlockNames.NONE), journal);
+        assertEquals(1, entries(journal));
+
+        // A block table changes the categories, so the nameless outputs are replaced
+        convert(input, new Converter.Options(out, EnumSet.of(Converter.Format.PKDSEQ), Pkdseq.VERSION_WINDOWS,
+                blocks), journal);
+        assertEquals(2, entries(journal));
+        assertArrayEquals(Files.readAllBytes(resource("golden/run.pkdseq")), Files.readAllBytes(out.resolve("run.pkdseq")));
+
+        Path elsewhere = Files.createDirectories(dir.resolve("elsewhere"));
+        convert(input, new Converter.Options(elsewhere, EnumSet.of(Converter.Format.PKDSEQ), Pkdseq.VERSION_WINDOWS,
+                blocks), journal);
+        assertEquals(3, entries(journal));
+        assertTrue(Files.exists(elsewhere.resolve("run.pkdseq")));
+    }
+
+    private static void convert(Path input, Converter.Options options, Path journal) throws IOException {
+        assertEquals(0, Converter.run(List.of(input), options, 1, journal, false, 60));
+    }
+
+    private static int entries(Path journal) throws IOException {
+        return Files.readAllLines(journal, StandardCharsets.UTF_8).size();
+    }
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Path.of(ConversionJournalTest.class.getClassLoader().getResource(name).toURI());
+    }
+}
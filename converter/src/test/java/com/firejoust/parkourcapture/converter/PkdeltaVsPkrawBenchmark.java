@@ -0,0 +1,135 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.firejoust.parkourcapture.format.PkdeltaWriter;
+import com.firejoust.parkourcapture.format.PkrawWriter;
+import com.firejoust.parkourcapture.format.RunExport;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * File size and encode throughput of PKDELTA against PKRAW on the same synthetic run: a player
+ * running and jumping down a walled corridor, with idle stretches, at the mod's 36x54 grid.
+ * Run with {@code ./gradlew :converter:benchmark}.
+ */
+@Tag("benchmark")
+class PkdeltaVsPkrawBenchmark {
+
+    private static final int WIDTH = 36;
+    private static final int HEIGHT = 54;
+    private static final float RAY_DISTANCE = 64.0f;
+    private static final int TICKS = 6000;
+    private static final int ROUNDS = 5;
+    // The converter's settings
+    private static final int DELTA_BLOCK_TICKS = 32;
+    private static final int DELTA_DEFLATE_LEVEL = 6;
+
+    @Test
+    void sizeAndEncodeSpeed(@TempDir Path dir) throws IOException {
+        JsonTick[] run = new JsonTick[TICKS];
+        for (int i = 0; i < TICKS; i++) {
+            run[i] = corridorTick(i);
+        }
+
+        long rawNanos = Long.MAX_VALUE;
+        long deltaNanos = Long.MAX_VALUE;
+        long rawBytes = 0;
+        long deltaBytes = 0;
+        // The first round warms up; the best of the rest counts
+        for (int round = 0; round <= ROUNDS; round++) {
+            Path raw = dir.resolve("run" + round + ".pkraw");
+            long start = System.nanoTime();
+            write(PkrawWriter.open(raw, 0L, "", 0.0f, 64, WIDTH, HEIGHT, RAY_DISTANCE, rawId -> null), run);
+            long rawTime = System.nanoTime() - start;
+
+            Path delta = dir.resolve("run" + round + ".pkdelta");
+            start = System.nanoTime();
+            write(PkdeltaWriter.open(delta, 0L, "", 0.0f, 64, WIDTH, HEIGHT, RAY_DISTANCE, DELTA_BLOCK_TICKS,
+                    DELTA_DEFLATE_LEVEL, Runnable::run, rawId -> null), run);
+            long deltaTime = System.nanoTime() - start;
+
+            if (round > 0) {
+                rawNanos = Math.min(rawNanos, rawTime);
+                deltaNanos = Math.min(deltaNanos, deltaTime);
+            }
+            rawBytes = Files.size(raw);
+            deltaBytes = Files.size(delta);
+        }
+
+        System.out.printf(Locale.ROOT, "PKRAW:   %,d bytes (%.0f B/tick), %.0f ticks/s%n",
+                rawBytes, (double) rawBytes / TICKS, TICKS / (rawNanos / 1e9));
+        System.out.printf(Locale.ROOT, "PKDELTA: %,d bytes (%.0f B/tick), %.0f ticks/s, %.1fx smaller, %.2fx the encode time%n",
+                deltaBytes, (double) deltaBytes / TICKS, TICKS / (deltaNanos / 1e9), (double) rawBytes / deltaBytes,
+                (double) deltaNanos / rawNanos);
+        assertTrue(deltaBytes < rawBytes);
+    }
+
+    private static void write(RunExport export, JsonTick[] run) throws IOException {
+        for (JsonTick tick : run) {
+            export.append(tick);
+        }
+        export.finish(0L, run.length);
+    }
+
+    // Corridor along +z with walls at x = -3 and x = 3 (ladder every fifth block) and a stone floor at y 64
+    private static JsonTick corridorTick(int i) {
+        // Runs for 140 ticks, then stands still for 60
+        int phase = i % 200;
+        int moving = i / 200 * 140 + Math.min(phase, 140);
+        double eyeX = 0.3 * Math.sin(moving * 0.05);
+        double eyeZ = moving * 0.28;
+        // A jump every 30 ticks of running
+        int airborne = phase < 140 ? moving % 30 : 30;
+        double eyeY = 65.62 + (airborne < 12 ? 0.42 * airborne - 0.035 * airborne * airborne : 0.0);
+        float yaw = (float) (5.0 * Math.sin(moving * 0.03));
+
+        JsonTick tick = new JsonTick();
+        tick.sequence = i;
+        tick.inputForward = phase < 140;
+        tick.inputSprint = phase < 140;
+        tick.inputJump = airborne == 0;
+        tick.yaw = yaw;
+        tick.velocityZ = phase < 140 ? 0.28 : 0.0;
+        tick.onGround = airborne >= 12;
+        tick.playerY = eyeY - 1.62;
+        tick.distanceWidth = tick.blockWidth = WIDTH;
+        tick.distanceHeight = tick.blockHeight = HEIGHT;
+        float[] distances = tick.distanceCapacity(WIDTH * HEIGHT);
+        int[] blockStates = tick.blockStateCapacity(WIDTH * HEIGHT);
+
+        double yawRad = Math.toRadians(yaw);
+        for (int r = 0; r < HEIGHT; r++) {
+            double pitch = Math.toRadians(-90.0 + (r + 0.5) * 180.0 / HEIGHT);
+            for (int c = 0; c < WIDTH; c++) {
+                double azimuth = yawRad + Math.toRadians(-60.0 + (c + 0.5) * 120.0 / WIDTH);
+                double dx = -Math.sin(azimuth) * Math.cos(pitch);
+                double dy = -Math.sin(pitch);
+                double dz = Math.cos(azimuth) * Math.cos(pitch);
+                double t = RAY_DISTANCE;
+                int block = 0;
+                if (dy < 0.0 && (eyeY - 64.0) / -dy < t) {
+                    t = (eyeY - 64.0) / -dy;
+                    block = 1;
+                }
+                if (dx != 0.0) {
+                    double wall = ((dx > 0.0 ? 3.0 : -3.0) - eyeX) / dx;
+                    if (wall < t) {
+                        t = wall;
+                        block = Math.floorMod((int) Math.floor(eyeZ + dz * wall), 5) == 0 ? 3 : 2;
+                    }
+                }
+                // As the run file stores them
+                distances[r * WIDTH + c] = (float) (Math.round(t * 1000.0) / 1000.0);
+                blockStates[r * WIDTH + c] = block;
+            }
+        }
+        return tick;
+    }
+}
@@ -0,0 +1,38 @@
+package com.firejoust.parkourcapture.converter;
+
+import com.firejoust.parkourcapture.format.Pkdseq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * The PKDSEQ writer against the data-normalizer's output for the same run.
+ * <p>
+ * {@code golden/run.json} is a small streamed run (8x4 grid, a dropped tick, trailing airborne
+ * ticks past {@code dn}, distances beyond the clamp and on rounding ties, wrapping yaws).
+ * {@code golden/run.pkdseq} is {@code node data-normalizer/index.js run.json run.pkdseq} run
+ * against a minecraft-data whose {@code blocksByStateId} is {@code golden/blocks.json}.
+ */
+class PkdseqGoldenTest {
+
+    @Test
+    void matchesDataNormalizer(@TempDir Path out) throws Exception {
+        Path input = resource("golden/run.json");
+        Converter.Options options = new Converter.Options(out, EnumSet.of(Converter.Format.PKDSEQ),
+                Pkdseq.VERSION_WINDOWS, BlockNames.load(resource("golden/blocks.json")));
+
+        Converter.convert(input, options, new Progress(1, Files.size(input)));
+
+        assertArrayEquals(Files.readAllBytes(resource("golden/run.pkdseq")), Files.readAllBytes(out.resolve("run.pkdseq")));
+    }
+
+    private static Path resource(String name) throws URISyntaxException {
+        return Path.of(PkdseqGoldenTest.class.getClassLoader().getResource(name).toURI());
+    }
+}
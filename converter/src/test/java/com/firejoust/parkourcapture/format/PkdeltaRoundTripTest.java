@@ -0,0 +1,275 @@
+package com.firejoust.parkourcapture.format;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * PKDELTA written by {@link PkdeltaWriter}, read back by {@link PkdeltaReader} in and out of order,
+ * and cut down by {@link PkdeltaWriter#truncate}.
+ */
+class PkdeltaRoundTripTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+    private static final float RAY_DISTANCE = 64.0f;
+    private static final int TICKS_PER_BLOCK = 8;
+    // Twelve full blocks and a partial one
+    private static final int TICKS = 101;
+    private static final int VALID_TICKS = 90;
+    private static final int RANDOM_READS = 500;
+    private static final long START_TIMESTAMP = 1_700_000_000_000L;
+    private static final long STOP_TIMESTAMP = 1_700_000_060_000L;
+    private static final String SERVER_IP = "localhost";
+    private static final float TARGET_YAW = 90.0f;
+    private static final int FALL_ZONE_Y = 60;
+
+    private record Tick(long sequence, float yaw, double velocityX, double velocityY, double velocityZ, double playerY,
+                        int flags, float[] distances, int[] blockStates) implements RunTick {
+
+        @Override
+        public boolean inputForward() {
+            return (flags & Pkraw.FLAG_FORWARD) != 0;
+        }
+
+        @Override
+        public boolean inputLeft() {
+            return (flags & Pkraw.FLAG_LEFT) != 0;
+        }
+
+        @Override
+        public boolean inputRight() {
+            return (flags & Pkraw.FLAG_RIGHT) != 0;
+        }
+
+        @Override
+        public boolean inputBack() {
+            return (flags & Pkraw.FLAG_BACK) != 0;
+        }
+
+        @Override
+        public boolean inputJump() {
+            return (flags & Pkraw.FLAG_JUMP) != 0;
+        }
+
+        @Override
+        public boolean inputSneak() {
+            return (flags & Pkraw.FLAG_SNEAK) != 0;
+        }
+
+        @Override
+        public boolean inputSprint() {
+            return (flags & Pkraw.FLAG_SPRINT) != 0;
+        }
+
+        @Override
+        public boolean isOnGround() {
+            return (flags & Pkraw.FLAG_ON_GROUND) != 0;
+        }
+
+        @Override
+        public boolean isCollidedHorizontally() {
+            return (flags & Pkraw.FLAG_COLLIDED_HORIZONTALLY) != 0;
+        }
+
+        @Override
+        public boolean isCollidedVertically() {
+            return (flags & Pkraw.FLAG_COLLIDED_VERTICALLY) != 0;
+        }
+
+        @Override
+        public boolean isInFallZone() {
+            return (flags & Pkraw.FLAG_IN_FALL_ZONE) != 0;
+        }
+
+        @Override
+        public int visionWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int visionHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public float visionDistance(int row, int column) {
+            return distances[row * WIDTH + column];
+        }
+
+        @Override
+        public int visionBlockState(int row, int column) {
+            return blockStates[row * WIDTH + column];
+        }
+    }
+
+    @Test
+    void readsBackEveryTickInAndOutOfOrder(@TempDir Path dir) throws IOException {
+        Tick[] ticks = ticks(new Random(0xDE17A));
+        Path file = write(dir.resolve("run.pkdelta"), ticks);
+
+        try (PkdeltaReader reader = PkdeltaReader.open(file)) {
+            assertTrue(reader.verifyChecksums());
+            assertEquals(TICKS, reader.tickCount());
+            assertEquals(VALID_TICKS, reader.validTicks());
+            assertEquals(TICKS_PER_BLOCK, reader.ticksPerBlock());
+            assertEquals(WIDTH, reader.width());
+            assertEquals(HEIGHT, reader.height());
+            assertEquals(START_TIMESTAMP, reader.startTimestampMillis());
+            assertEquals(STOP_TIMESTAMP, reader.stopTimestampMillis());
+            assertEquals(SERVER_IP, reader.serverIp());
+            assertEquals(TARGET_YAW, reader.targetYaw());
+            assertEquals(FALL_ZONE_Y, reader.fallZoneY());
+            assertEquals(RAY_DISTANCE, reader.rayDistance());
+            for (int i = 0; i < TICKS; i++) {
+                assertTick(reader, ticks, i);
+            }
+            Random order = new Random(7);
+            for (int i = 0; i < RANDOM_READS; i++) {
+                assertTick(reader, ticks, order.nextInt(TICKS));
+            }
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> reader.readTick(TICKS, ByteBuffer.allocate(reader.decodedStride())));
+        }
+    }
+
+    @Test
+    void truncatesToAnyTickCount(@TempDir Path dir) throws IOException {
+        Tick[] ticks = ticks(new Random(0x7C));
+        // Inside a block, on a block boundary, below the valid ticks, to one tick and to none
+        for (int kept : new int[] {95, 43, 40, 1, 0}) {
+            Path file = write(dir.resolve("run-" + kept + ".pkdelta"), ticks);
+            PkdeltaWriter.truncate(file, kept);
+
+            try (PkdeltaReader reader = PkdeltaReader.open(file)) {
+                assertTrue(reader.verifyChecksums(), "checksums after keeping " + kept);
+                assertEquals(kept, reader.tickCount());
+                assertEquals(Math.min(VALID_TICKS, kept), reader.validTicks());
+                assertEquals(STOP_TIMESTAMP, reader.stopTimestampMillis());
+                Random order = new Random(kept);
+                for (int i = 0; i < kept; i++) {
+                    assertTick(reader, ticks, i);
+                    assertTick(reader, ticks, order.nextInt(kept));
+                }
+                assertThrows(IndexOutOfBoundsException.class,
+                        () -> reader.readTick(kept, ByteBuffer.allocate(reader.decodedStride())));
+            }
+        }
+    }
+
+    @Test
+    void truncatingPastTheEndChangesNothing(@TempDir Path dir) throws IOException {
+        Path file = write(dir.resolve("run.pkdelta"), ticks(new Random(3)));
+        byte[] written = Files.readAllBytes(file);
+
+        PkdeltaWriter.truncate(file, TICKS);
+        PkdeltaWriter.truncate(file, TICKS + 10);
+
+        assertArrayEquals(written, Files.readAllBytes(file));
+    }
+
+    @Test
+    void checksumsCatchACorruptBlock(@TempDir Path dir) throws IOException {
+        Tick[] ticks = ticks(new Random(5));
+        Path file = write(dir.resolve("run.pkdelta"), ticks);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer field = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(field, Pkraw.HEADER_SIZE_FIELD);
+            // A byte inside the first block, which starts right after the header
+            long position = field.getInt(0) + 1L;
+            ByteBuffer corrupt = ByteBuffer.allocate(1);
+            channel.read(corrupt, position);
+            corrupt.put(0, (byte) (corrupt.get(0) ^ 0x40));
+            channel.write(corrupt.rewind(), position);
+        }
+
+        try (PkdeltaReader reader = PkdeltaReader.open(file)) {
+            assertFalse(reader.verifyChecksums());
+            assertThrows(IOException.class, () -> reader.readTick(0, ByteBuffer.allocate(reader.decodedStride())));
+            // Other blocks are still readable
+            assertTick(reader, ticks, TICKS_PER_BLOCK);
+        }
+    }
+
+    private static Path write(Path file, Tick[] ticks) throws IOException {
+        ExecutorService compressor = Executors.newFixedThreadPool(2);
+        try {
+            PkdeltaWriter writer = PkdeltaWriter.open(file, START_TIMESTAMP, SERVER_IP, TARGET_YAW, FALL_ZONE_Y, WIDTH, HEIGHT,
+                    RAY_DISTANCE, TICKS_PER_BLOCK, 6, compressor, rawId -> "minecraft:block_" + rawId);
+            for (Tick tick : ticks) {
+                writer.append(tick);
+            }
+            writer.finish(STOP_TIMESTAMP, VALID_TICKS);
+        } finally {
+            compressor.shutdown();
+        }
+        return file;
+    }
+
+    // Decodes tick i and checks it against what was appended
+    private static void assertTick(PkdeltaReader reader, Tick[] ticks, int i) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(reader.decodedStride()).order(ByteOrder.LITTLE_ENDIAN);
+        reader.readTick(i, record);
+        assertEquals(reader.decodedStride(), record.position());
+
+        Tick tick = ticks[i];
+        ByteBuffer scalars = ByteBuffer.allocate(Pkraw.TICK_DISTANCES).order(ByteOrder.LITTLE_ENDIAN);
+        Pkraw.putScalars(scalars, tick);
+        assertArrayEquals(scalars.array(), slice(record, 0, Pkraw.TICK_DISTANCES), "scalars of tick " + i);
+        int cells = WIDTH * HEIGHT;
+        for (int cell = 0; cell < cells; cell++) {
+            short distance = record.getShort(Pkraw.TICK_DISTANCES + cell * Short.BYTES);
+            assertEquals(Pkraw.quantizeDistance(tick.distances()[cell], RAY_DISTANCE), distance,
+                    "distance " + cell + " of tick " + i);
+            int paletteIndex = Short.toUnsignedInt(record.getShort(Pkraw.blocksOffset(WIDTH, HEIGHT) + cell * Short.BYTES));
+            assertEquals(tick.blockStates()[cell], reader.paletteRawId(paletteIndex), "block " + cell + " of tick " + i);
+            assertEquals("minecraft:block_" + tick.blockStates()[cell], reader.paletteName(paletteIndex));
+        }
+    }
+
+    private static byte[] slice(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    // A player moving along a course: most cells unchanged from tick to tick, some runs of new ones
+    private static Tick[] ticks(Random random) {
+        Tick[] ticks = new Tick[TICKS];
+        float[] distances = new float[WIDTH * HEIGHT];
+        int[] blockStates = new int[WIDTH * HEIGHT];
+        for (int cell = 0; cell < distances.length; cell++) {
+            distances[cell] = random.nextFloat() * RAY_DISTANCE;
+            blockStates[cell] = random.nextInt(40);
+        }
+        for (int i = 0; i < TICKS; i++) {
+            distances = distances.clone();
+            blockStates = blockStates.clone();
+            int changed = random.nextInt(distances.length / 4);
+            for (int n = 0, cell = random.nextInt(distances.length); n < changed; n++, cell = (cell + 1) % distances.length) {
+                distances[cell] = random.nextInt(10) == 0 ? RAY_DISTANCE : random.nextFloat() * RAY_DISTANCE;
+                blockStates[cell] = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(30_000);
+            }
+            ticks[i] = new Tick(i + i / 20, random.nextFloat() * 360.0f - 180.0f, random.nextGaussian() * 0.3,
+                    random.nextGaussian() * 0.4, random.nextGaussian() * 0.3, 60.0 + random.nextDouble() * 10.0,
+                    random.nextInt(1 << 11), distances, blockStates);
+        }
+        return ticks;
+    }
+}
@@ -56,7 +56,9 @@ function processFile(inputFilePath, outputFilePath) {
     return;
   }
 
-  const { ty: targetYaw, tfy: targetFallY, d: ticks } = rawData;
+  const { ty: targetYaw, tfy: targetFallY, d: allTicks, dn: validTickCount, dt: droppedSequences = [] } = rawData;
+  // Streamed runs keep trailing airborne ticks in "d" and mark how many leading ticks are valid in "dn"
+  const ticks = Number.isInteger(validTickCount) ? allTicks?.slice(0, validTickCount) : allTicks;
 
   if (!ticks || ticks.length < K) {
     console.warn(`Skipping ${inputFilePath}: Not enough ticks (${ticks?.length || 0}) for K=${K}.`);
@@ -75,9 +77,24 @@ function processFile(inputFilePath, outputFilePath) {
 
   const visionTickSize = visionWidth * visionHeight; // Bytes per vision grid per tick
 
+  // Capture sequence number of each tick; "dt" lists the sequence numbers that were dropped
+  const tickSequences = new Array(ticks.length);
+  let nextSequence = 0;
+  let droppedIdx = 0;
+  for (let i = 0; i < ticks.length; i++) {
+    while (droppedIdx < droppedSequences.length && droppedSequences[droppedIdx] === nextSequence) {
+      nextSequence++;
+      droppedIdx++;
+    }
+    tickSequences[i] = nextSequence++;
+  }
+
   const processedSequences = []; // Still process into JS objects first
 
   for (let t = K - 1; t < ticks.length; t++) {
+    // Windows spanning a dropped tick are not K consecutive ticks
+    if (tickSequences[t] - tickSequences[t - K + 1] !== K - 1) continue;
+
     const sequence = {
       vision_dist_seq_flat: [], // Flat Uint8Array K * W * H
       vision_block_id_seq_flat: [], // Flat Uint8Array K * W * H
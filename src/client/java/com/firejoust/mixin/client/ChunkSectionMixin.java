@@ -0,0 +1,37 @@
+package com.firejoust.mixin.client;
+
+import com.firejoust.parkourcapture.vision.VersionedChunkSection;
+import net.minecraft.block.BlockState;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.world.chunk.ChunkSection;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ChunkSection.class)
+public abstract class ChunkSectionMixin implements VersionedChunkSection {
+
+    @Unique
+    private int parkourcapture$version;
+
+    @Override
+    public int parkourcapture$getVersion() {
+        return parkourcapture$version;
+    }
+
+    @Inject(method = "setBlockState(IIILnet/minecraft/block/BlockState;Z)Lnet/minecraft/block/BlockState;", at = @At("RETURN"))
+    private void parkourcapture$onSetBlockState(int x, int y, int z, BlockState state, boolean lock, CallbackInfoReturnable<BlockState> cir) {
+        if (cir.getReturnValue() != state) {
+            parkourcapture$version++;
+        }
+    }
+
+    // Chunk data packets refill existing sections in place
+    @Inject(method = "readDataPacket", at = @At("RETURN"))
+    private void parkourcapture$onReadDataPacket(PacketByteBuf buf, CallbackInfo ci) {
+        parkourcapture$version++;
+    }
+}
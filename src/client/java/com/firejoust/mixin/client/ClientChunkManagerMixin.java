@@ -0,0 +1,28 @@
+package com.firejoust.mixin.client;
+
+import com.firejoust.parkourcapture.vision.BlockChangeTracker;
+import net.minecraft.client.world.ClientChunkManager;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.WorldChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ClientChunkManager.class)
+public abstract class ClientChunkManagerMixin {
+
+    @Inject(method = "loadChunkFromPacket", at = @At("RETURN"))
+    private void parkourcapture$onLoadChunk(CallbackInfoReturnable<WorldChunk> cir) {
+        WorldChunk chunk = cir.getReturnValue();
+        if (chunk != null) {
+            BlockChangeTracker.onChunkChanged(chunk.getPos());
+        }
+    }
+
+    @Inject(method = "unload", at = @At("RETURN"))
+    private void parkourcapture$onUnloadChunk(ChunkPos pos, CallbackInfo ci) {
+        BlockChangeTracker.onChunkChanged(pos);
+    }
+}
@@ -0,0 +1,27 @@
+package com.firejoust.mixin.client;
+
+import com.firejoust.parkourcapture.vision.BlockChangeTracker;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(ClientWorld.class)
+public abstract class ClientWorldMixin {
+
+    // Server block updates and chunk delta packets
+    @Inject(method = "handleBlockUpdate", at = @At("HEAD"))
+    private void parkourcapture$onHandleBlockUpdate(BlockPos pos, BlockState state, int flags, CallbackInfo ci) {
+        BlockChangeTracker.onBlockChanged(pos);
+    }
+
+    // Client-predicted changes (breaking/placing) that go through the world directly
+    @Inject(method = "setBlockState(Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;II)Z", at = @At("HEAD"))
+    private void parkourcapture$onSetBlockState(BlockPos pos, BlockState state, int flags, int maxUpdateDepth, CallbackInfoReturnable<Boolean> cir) {
+        BlockChangeTracker.onBlockChanged(pos);
+    }
+}
@@ -0,0 +1,123 @@
+package com.firejoust.parkourcapture;
+
+import com.firejoust.parkourcapture.vision.VisionMode;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tuning knobs for the capture pipeline, read once from JVM system properties
+ * (e.g. {@code -Dparkourcapture.visionThreads=8} in the launcher's JVM arguments).
+ */
+public final class CaptureConfig {
+
+    private static final String PREFIX = "parkourcapture.";
+
+    /** Worker threads used for vision raycasting. Defaults to all cores but one, leaving the render thread alone. */
+    public static final int VISION_PARALLELISM = Math.max(1,
+            Integer.getInteger(PREFIX + "visionThreads", Runtime.getRuntime().availableProcessors() - 1));
+
+    /** Grid rows traced by a single fork-join leaf task. */
+    public static final int VISION_ROWS_PER_TASK = Math.max(1, Integer.getInteger(PREFIX + "visionRowsPerTask", 2));
+
+    /** How vision grids are produced; see {@link VisionMode}. */
+    public static final VisionMode VISION_MODE = readEnum("visionMode", VisionMode.class, VisionMode.FULL);
+
+    /** Eye movement, in blocks, below which cached vision results are still considered valid. */
+    public static final double VISION_REUSE_EPSILON = Math.max(0.0, readDouble("visionReuseEpsilon", 0.0));
+
+    /**
+     * Fovea of {@link VisionMode#FOVEATED}, as inclusive grid rows (0 is straight up) and columns.
+     * Defaults to the lower half of the grid across the central 60°.
+     */
+    public static final int VISION_FOVEA_TOP = Integer.getInteger(PREFIX + "visionFoveaTop", 27);
+    public static final int VISION_FOVEA_BOTTOM = Integer.getInteger(PREFIX + "visionFoveaBottom", 53);
+    public static final int VISION_FOVEA_LEFT = Integer.getInteger(PREFIX + "visionFoveaLeft", 9);
+    public static final int VISION_FOVEA_RIGHT = Integer.getInteger(PREFIX + "visionFoveaRight", 26);
+
+    /** Spacing, in cells, of the traced lattice outside the fovea. */
+    public static final int VISION_SPARSE_STRIDE = Math.max(1, Integer.getInteger(PREFIX + "visionSparseStride", 2));
+
+    /**
+     * Captured ticks allowed between the tick thread and the disk at once (about 16 KB each once
+     * traced). Past this, new ticks are dropped and counted instead of stalling the game.
+     */
+    public static final int MAX_TICKS_IN_FLIGHT = Math.max(1, Integer.getInteger(PREFIX + "maxTicksInFlight", 256));
+
+    /** Where in-flight vision grids are stored; {@code DIRECT} keeps them off the Java heap. */
+    public static final VisionArena.Kind VISION_ARENA = readEnum("visionArena", VisionArena.Kind.class, VisionArena.Kind.HEAP);
+
+    /** Cap on direct memory for vision grids across all recordings; beyond it they spill to a temp file. */
+    public static final long VISION_ARENA_MAX_BYTES = Math.max(0L, Long.getLong(PREFIX + "visionArenaMaxBytes", 256L << 20));
+
+    /** Files written next to each run's JSON while recording, as a comma-separated list (e.g. {@code pkdseq,pkraw,npz}). */
+    public static final Set<ExportFormat> EXPORTS = readEnumSet("exports", ExportFormat.class);
+
+    /** Ticks per compressed block of a {@code pkdelta} export; a random read decodes at most this many. */
+    public static final int DELTA_BLOCK_TICKS = Math.max(1, Math.min(0xFFFF,
+            Integer.getInteger(PREFIX + "deltaBlockTicks", 32)));
+
+    /** Deflate level of {@code pkdelta} blocks, 0 (stored) to 9; -1 is the JDK default. */
+    public static final int DELTA_DEFLATE_LEVEL = Math.max(-1, Math.min(9, Integer.getInteger(PREFIX + "deltaDeflateLevel", 6)));
+
+    /**
+     * Layout of {@code pkdseq} exports: 1 writes every window out in full, 2 writes each tick once
+     * plus a table of window starts. Anything but 2 means 1.
+     */
+    public static final int PKDSEQ_VERSION = Integer.getInteger(PREFIX + "pkdseqVersion", 1) == 2 ? 2 : 1;
+
+    /** Whether recordings normalize their ticks as they are written and warn in chat about bad values. */
+    public static final boolean LIVE_NORMALIZATION = Boolean.parseBoolean(System.getProperty(PREFIX + "liveNormalization", "true"));
+
+    /** Threads compressing export blocks, shared by all recordings. */
+    public static final int COMPRESSION_THREADS = Math.max(1,
+            Integer.getInteger(PREFIX + "compressionThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 4)));
+
+    private CaptureConfig() {}
+
+    private static double readDouble(String key, double fallback) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            RLParkourCaptureClient.LOGGER.warn("Ignoring invalid {}{}: {}", PREFIX, key, value);
+            return fallback;
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(String key, Class<E> type, E fallback) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            RLParkourCaptureClient.LOGGER.warn("Ignoring invalid {}{}: {}", PREFIX, key, value);
+            return fallback;
+        }
+    }
+
+    private static <E extends Enum<E>> Set<E> readEnumSet(String key, Class<E> type) {
+        Set<E> values = EnumSet.noneOf(type);
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            return values;
+        }
+        for (String name : value.split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
+            try {
+                values.add(Enum.valueOf(type, name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                RLParkourCaptureClient.LOGGER.warn("Ignoring invalid {}{} entry: {}", PREFIX, key, name);
+            }
+        }
+        return values;
+    }
+}
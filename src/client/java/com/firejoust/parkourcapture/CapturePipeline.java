@@ -0,0 +1,308 @@
+package com.firejoust.parkourcapture;
+
+import com.firejoust.parkourcapture.format.BlockCategory;
+import com.firejoust.parkourcapture.format.NpyRunWriter;
+import com.firejoust.parkourcapture.format.PkdeltaWriter;
+import com.firejoust.parkourcapture.format.PkdseqWriter;
+import com.firejoust.parkourcapture.format.PkrawWriter;
+import com.firejoust.parkourcapture.format.RunExport;
+import com.firejoust.parkourcapture.io.RunHeader;
+import com.firejoust.parkourcapture.io.StreamingRunWriter;
+import com.firejoust.parkourcapture.vision.BlockChangeTracker;
+import com.firejoust.parkourcapture.vision.BlockShapeTable;
+import com.firejoust.parkourcapture.vision.ParallelVisionEngine;
+import net.minecraft.command.argument.BlockArgumentParser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Staged capture pipeline for one recording.
+ * <ol>
+ *   <li>Tick thread: {@link #submit} numbers the {@link TickCapture} and hands it on. At most a
+ *       non-blocking queue hand-off happens on the tick thread after this point.</li>
+ *   <li>Vision workers: raycast the capture's world snapshot into the tick's {@link RunBuffer} slot.</li>
+ *   <li>Delivery: results are passed to the writer strictly in sequence order, whatever order
+ *       the vision stage finishes them in.</li>
+ *   <li>Writer thread: encodes and writes each tick ({@link StreamingRunWriter}), checks its
+ *       normalized values ({@link NormalizationMonitor}), then writes it into each requested
+ *       {@link ExportFormat}.</li>
+ * </ol>
+ * At most {@code maxInFlight} ticks are anywhere between submission and the disk, one per
+ * buffer slot. When every slot is taken the tick is dropped rather than stalling the game, and counted; so is a tick
+ * whose vision failed. The writer records the resulting sequence gaps in the run's footer, so
+ * consumers can tell which written ticks are no longer consecutive.
+ */
+public final class CapturePipeline {
+
+    /**
+     * Outcome of a finished recording.
+     *
+     * @param exported      export files that were written
+     * @param failedExports requested exports that failed and were discarded
+     * @param normalization live normalization totals, or {@code null} if it was off
+     */
+    public record Result(StreamingRunWriter.Summary summary, int droppedUnderLoad, int failedTicks,
+                         List<Path> exported, int failedExports, NormalizationMonitor.Report normalization) {}
+
+    // Compresses export blocks for every recording, so writer threads only encode
+    private static final AtomicInteger COMPRESSION_THREAD_IDS = new AtomicInteger();
+    private static final ExecutorService COMPRESSION_EXECUTOR = Executors.newFixedThreadPool(
+            CaptureConfig.COMPRESSION_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "ParkourCapture-Compress-" + COMPRESSION_THREAD_IDS.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ParallelVisionEngine engine;
+    private final boolean orderedVision;
+    private final StreamingRunWriter writer;
+    private final RunBuffer buffer;
+    // Writer-thread state until the writer is joined. A failed export is dropped; the run itself is still saved
+    private final List<RunExport> exports = new ArrayList<>();
+    private int failedExports = 0;
+    private final NormalizationMonitor monitor;
+    // Writer-thread state: set once the monitor threw, after which it sees no more ticks
+    private boolean monitorFailed = false;
+    private final AtomicInteger droppedUnderLoad = new AtomicInteger();
+    private final AtomicInteger failedTicks = new AtomicInteger();
+
+    // Tick-thread state: next sequence number and the tails of the vision and delivery chains
+    private long nextSequence = 0;
+    private CompletableFuture<?> lastVisionTail;
+    private CompletableFuture<Void> lastDelivery = CompletableFuture.completedFuture(null);
+
+    private CapturePipeline(ParallelVisionEngine engine, boolean orderedVision, CompletableFuture<?> previousVision,
+                            Path target, RunHeader header, Set<ExportFormat> exportFormats, int maxInFlight) throws IOException {
+        this.engine = engine;
+        this.orderedVision = orderedVision;
+        // Shared vision caches must see the previous recording's ticks before this one's
+        this.lastVisionTail = orderedVision ? previousVision : null;
+        this.buffer = new RunBuffer(maxInFlight, ParkourTickData.VISION_GRID_WIDTH, ParkourTickData.VISION_GRID_HEIGHT,
+                CaptureConfig.VISION_ARENA, CaptureConfig.VISION_ARENA_MAX_BYTES);
+        BlockShapeTable table = BlockShapeTable.get();
+        this.monitor = CaptureConfig.LIVE_NORMALIZATION
+                ? new NormalizationMonitor(ParkourTickData.VISION_GRID_WIDTH, ParkourTickData.VISION_GRID_HEIGHT,
+                        header.targetBearingYaw(), header.fallZoneY(),
+                        rawId -> rawId < table.size() ? table.category(rawId) : BlockCategory.DEFAULT)
+                : null;
+        for (ExportFormat format : exportFormats) {
+            openExport(format, target, header);
+        }
+        // The writer queue can hold every in-flight tick, so handing a tick to it never blocks
+        try {
+            this.writer = StreamingRunWriter.open(target, header, maxInFlight, tick -> {
+                try {
+                    export(tick);
+                } finally {
+                    buffer.release(tick.slot());
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            abortExports();
+            buffer.close();
+            throw e;
+        }
+    }
+
+    // Named after the run: <name>.json -> <name><extension>
+    private void openExport(ExportFormat format, Path runTarget, RunHeader header) {
+        String runName = runTarget.getFileName().toString();
+        String baseName = runName.endsWith(".json") ? runName.substring(0, runName.length() - ".json".length()) : runName;
+        Path target = runTarget.resolveSibling(baseName + format.extension());
+        BlockShapeTable table = BlockShapeTable.get();
+        IntFunction<String> stateNames =
+                rawId -> rawId < table.size() ? BlockArgumentParser.stringifyBlockState(table.state(rawId)) : null;
+        IntUnaryOperator categories = rawId -> rawId < table.size() ? table.category(rawId) : BlockCategory.DEFAULT;
+        try {
+            exports.add(switch (format) {
+                case PKDSEQ -> PkdseqWriter.open(target, CaptureConfig.PKDSEQ_VERSION, ParkourTickData.VISION_GRID_WIDTH,
+                        ParkourTickData.VISION_GRID_HEIGHT, header.targetBearingYaw(), header.fallZoneY(), categories);
+                case PKRAW -> PkrawWriter.open(target, header.startTimestampMillis(), header.serverIp(),
+                        header.targetBearingYaw(), header.fallZoneY(), ParkourTickData.VISION_GRID_WIDTH,
+                        ParkourTickData.VISION_GRID_HEIGHT, ParkourTickData.MAX_RAYCAST_DISTANCE, stateNames);
+                case PKDELTA -> PkdeltaWriter.open(target, header.startTimestampMillis(), header.serverIp(),
+                        header.targetBearingYaw(), header.fallZoneY(), ParkourTickData.VISION_GRID_WIDTH,
+                        ParkourTickData.VISION_GRID_HEIGHT, ParkourTickData.MAX_RAYCAST_DISTANCE,
+                        CaptureConfig.DELTA_BLOCK_TICKS, CaptureConfig.DELTA_DEFLATE_LEVEL, COMPRESSION_EXECUTOR,
+                        stateNames);
+                case NPY, NPZ -> NpyRunWriter.open(target, format == ExportFormat.NPZ, ParkourTickData.VISION_GRID_WIDTH,
+                        ParkourTickData.VISION_GRID_HEIGHT, header.targetBearingYaw(), header.fallZoneY(), categories);
+            });
+        } catch (IOException e) {
+            RLParkourCaptureClient.LOGGER.error("Failed to create export file {}; recording without it", target, e);
+            failedExports++;
+        }
+    }
+
+    /**
+     * @param previousVision last vision task of the previous recording, which ordered vision modes
+     *                       wait for before tracing this one's first tick; may be {@code null}
+     * @param exportFormats  files to write next to {@code target} from the same ticks
+     */
+    public static CapturePipeline open(ParallelVisionEngine engine, boolean orderedVision, CompletableFuture<?> previousVision,
+                                       Path target, RunHeader header, Set<ExportFormat> exportFormats,
+                                       int maxInFlight) throws IOException {
+        return new CapturePipeline(engine, orderedVision, previousVision, target, header, exportFormats, maxInFlight);
+    }
+
+    /** The most recently submitted vision task; see {@link #open}. */
+    public CompletableFuture<?> visionTail() {
+        return lastVisionTail;
+    }
+
+    public Path target() {
+        return writer.target();
+    }
+
+    /** Sequence numbers handed out so far, i.e. ticks captured including dropped ones. */
+    public long capturedTicks() {
+        return nextSequence;
+    }
+
+    public int droppedTicks() {
+        return droppedUnderLoad.get() + failedTicks.get();
+    }
+
+    /** Next live normalization warning to show, or {@code null}; see {@link NormalizationMonitor}. */
+    public String pollNormalizationWarning() {
+        return monitor != null ? monitor.pollWarning() : null;
+    }
+
+    /**
+     * Numbers the capture and queues it for vision and writing. Call on the tick thread.
+     *
+     * @return {@code false} if the pipeline was full and the tick was dropped
+     */
+    public boolean submit(TickCapture capture) {
+        long sequence = nextSequence++;
+        int slot = buffer.acquire();
+        if (slot < 0) {
+            droppedUnderLoad.incrementAndGet();
+            // Vision caches never see this tick, so its world changes carry over to the next capture
+            BlockChangeTracker.restore(capture.blockChanges());
+            return false;
+        }
+        buffer.putState(slot, sequence, capture);
+
+        // Ordered vision modes chain each tick behind the previous one; otherwise ticks trace concurrently
+        CompletableFuture<ParkourTickData> vision = orderedVision && lastVisionTail != null
+                ? lastVisionTail.handleAsync((ignored, error) -> traceVision(capture, slot), engine.pool())
+                : CompletableFuture.supplyAsync(() -> traceVision(capture, slot), engine.pool());
+        lastVisionTail = vision;
+
+        // Delivery runs once this tick's vision and every earlier delivery are done, keeping sequence order
+        lastDelivery = lastDelivery.thenCombine(vision.handle((tick, error) -> {
+            if (error != null) {
+                RLParkourCaptureClient.LOGGER.error("Vision raycasting failed for captured tick {}", sequence, error);
+                // The tick's world changes may not have reached the vision caches
+                BlockChangeTracker.requestInvalidateAll();
+                return null;
+            }
+            return tick;
+        }), (ignored, tick) -> tick).thenAccept(tick -> deliver(slot, tick));
+        return true;
+    }
+
+    private ParkourTickData traceVision(TickCapture capture, int slot) {
+        capture.traceVision(engine, buffer.grid(slot));
+        return buffer.tick(slot);
+    }
+
+    private void deliver(int slot, ParkourTickData tick) {
+        if (tick == null) {
+            failedTicks.incrementAndGet();
+            buffer.release(slot);
+            return;
+        }
+        try {
+            writer.append(tick);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedTicks.incrementAndGet();
+            buffer.release(slot);
+        }
+    }
+
+    // Writer thread: each tick goes to the exports after the run file, while its slot is still held
+    // Nothing thrown here may reach the writer thread: a failing export or monitor is dropped on its own
+    private void export(ParkourTickData tick) {
+        if (monitor != null && !monitorFailed) {
+            try {
+                monitor.accept(tick);
+            } catch (RuntimeException e) {
+                RLParkourCaptureClient.LOGGER.error("Live normalization failed at tick {}; no longer checking this run",
+                        tick.sequence(), e);
+                monitorFailed = true;
+            }
+        }
+        for (Iterator<RunExport> it = exports.iterator(); it.hasNext(); ) {
+            RunExport export = it.next();
+            try {
+                export.append(tick);
+            } catch (IOException | RuntimeException e) {
+                RLParkourCaptureClient.LOGGER.error("Failed to write export file {}", export.target(), e);
+                export.abort();
+                it.remove();
+                failedExports++;
+            }
+        }
+    }
+
+    /** Waits for every submitted tick to reach the writer, then finishes the run file. */
+    public Result finish(long stopTimestampMillis) throws IOException, InterruptedException {
+        lastDelivery.join();
+        try {
+            StreamingRunWriter.Summary summary;
+            try {
+                summary = writer.finish(stopTimestampMillis, nextSequence);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                abortExports();
+                throw e;
+            }
+            List<Path> exported = finishExports(stopTimestampMillis, summary.validTicks());
+            return new Result(summary, droppedUnderLoad.get(), failedTicks.get(), exported, failedExports,
+                    monitor != null ? monitor.report() : null);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    /** Lets in-flight ticks drain, then deletes the partial run file. */
+    public void abort() {
+        lastDelivery.join();
+        writer.abort();
+        abortExports();
+        buffer.close();
+    }
+
+    private List<Path> finishExports(long stopTimestampMillis, int validTicks) {
+        List<Path> finished = new ArrayList<>();
+        for (RunExport export : exports) {
+            try {
+                export.finish(stopTimestampMillis, validTicks);
+                finished.add(export.target());
+            } catch (IOException | RuntimeException e) {
+                RLParkourCaptureClient.LOGGER.error("Failed to finish export file {}", export.target(), e);
+                failedExports++;
+            }
+        }
+        return finished;
+    }
+
+    private void abortExports() {
+        for (RunExport export : exports) {
+            export.abort();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.firejoust.parkourcapture;
+
+import com.firejoust.parkourcapture.format.NpyRunWriter;
+import com.firejoust.parkourcapture.format.PkdeltaWriter;
+import com.firejoust.parkourcapture.format.PkdseqWriter;
+import com.firejoust.parkourcapture.format.PkrawWriter;
+
+/** Files that can be written next to a run's JSON while it is recorded, named after it. */
+public enum ExportFormat {
+    /** Training sequences, as the data-normalizer produces them; see {@link PkdseqWriter}. */
+    PKDSEQ(".pkdseq"),
+    /** Every recorded value in fixed-size binary records; see {@link PkrawWriter}. */
+    PKRAW(".pkraw"),
+    /** The same records with grids encoded against the previous tick, in deflated blocks; see {@link PkdeltaWriter}. */
+    PKDELTA(".pkdelta"),
+    /** A directory of NumPy arrays; see {@link NpyRunWriter}. */
+    NPY(".arrays"),
+    /** The same arrays bundled into one uncompressed archive. */
+    NPZ(".npz");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+}
@@ -0,0 +1,140 @@
+package com.firejoust.parkourcapture;
+
+import com.firejoust.parkourcapture.format.Pkdseq;
+import com.firejoust.parkourcapture.format.RunTick;
+import com.firejoust.parkourcapture.format.SequenceNormalizer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Normalizes a recording's ticks as they are written, the way the training data will see them, and
+ * checks the values while the run is still going.
+ * <p>
+ * Fed on the writer thread through a {@link SequenceNormalizer}, so memory stays at
+ * {@link Pkdseq#K} ticks. The first tick showing each {@link Issue} queues a warning for
+ * {@link #pollWarning}, which the client thread shows in chat; {@link #report} totals the run.
+ */
+public final class NormalizationMonitor {
+
+    /** Normalized values that would make poor training data. */
+    public enum Issue {
+        NON_FINITE("proprio values are NaN or infinite"),
+        VELOCITY_CLIPPED("velocity clipped at " + Pkdseq.MAX_VELOCITY + " blocks/tick"),
+        HEIGHT_CLIPPED("more than " + Pkdseq.MAX_REL_HEIGHT + " blocks from the fall zone"),
+        FACING_AWAY("facing more than 90° away from the target bearing"),
+        BLIND_VISION("every vision ray hit at zero or out of range"),
+        GRID_MISMATCH("vision grid has the wrong size");
+
+        private final String description;
+
+        Issue(String description) {
+            this.description = description;
+        }
+
+        public String description() {
+            return description;
+        }
+    }
+
+    /**
+     * Totals of a finished recording.
+     *
+     * @param windows windows the written ticks complete, before trailing airborne ticks are cut off
+     * @param counts  ticks showing each issue; issues no tick showed are left out
+     */
+    public record Report(int ticks, int windows, Map<Issue, Integer> counts) {
+
+        public boolean clean() {
+            return counts.isEmpty();
+        }
+
+        /** The issues as one line, e.g. {@code "12 ticks velocity clipped at 1.0 blocks/tick"}. */
+        public String describe() {
+            StringBuilder line = new StringBuilder();
+            counts.forEach((issue, count) -> {
+                if (!line.isEmpty()) {
+                    line.append("; ");
+                }
+                line.append(count).append(count == 1 ? " tick " : " ticks ").append(issue.description());
+            });
+            return line.toString();
+        }
+    }
+
+    private final SequenceNormalizer normalizer;
+    private final int[] counts = new int[Issue.values().length];
+    private final Queue<String> warnings = new ConcurrentLinkedQueue<>();
+    private int windows = 0;
+
+    public NormalizationMonitor(int width, int height, float targetYaw, int fallZoneY, IntUnaryOperator categoryOf) {
+        this.normalizer = new SequenceNormalizer(width, height, targetYaw, fallZoneY, categoryOf);
+    }
+
+    /** Normalizes and checks the run's next tick. Call on the writer thread, in run order. */
+    public void accept(RunTick tick) {
+        if (normalizer.push(tick)) {
+            windows++;
+        }
+        if (!normalizer.gridMatches()) {
+            flag(Issue.GRID_MISMATCH);
+            return;
+        }
+
+        float[] proprio = normalizer.proprio();
+        boolean finite = true;
+        for (float value : proprio) {
+            finite &= Float.isFinite(value);
+        }
+        if (!finite) {
+            flag(Issue.NON_FINITE);
+        }
+        if (Math.abs(proprio[0]) >= 1.0f || Math.abs(proprio[1]) >= 1.0f || Math.abs(proprio[2]) >= 1.0f) {
+            flag(Issue.VELOCITY_CLIPPED);
+        }
+        if (Math.abs(proprio[3]) > 0.5f) {
+            flag(Issue.FACING_AWAY);
+        }
+        if (Math.abs(proprio[7]) >= 1.0f) {
+            flag(Issue.HEIGHT_CLIPPED);
+        }
+
+        // A grid that is all zero or all out of range means the rays saw nothing usable
+        byte[] distances = normalizer.distances();
+        byte first = distances[0];
+        if (first == 0 || first == (byte) Pkdseq.MAX_DISTANCE_UNITS) {
+            boolean uniform = true;
+            for (int i = 1; i < distances.length && uniform; i++) {
+                uniform = distances[i] == first;
+            }
+            if (uniform) {
+                flag(Issue.BLIND_VISION);
+            }
+        }
+    }
+
+    /** The next warning not yet shown, or {@code null}. Safe to call from any thread. */
+    public String pollWarning() {
+        return warnings.poll();
+    }
+
+    /** Totals so far; call once the writer thread is done for an exact count. */
+    public Report report() {
+        Map<Issue, Integer> issues = new EnumMap<>(Issue.class);
+        for (Issue issue : Issue.values()) {
+            if (counts[issue.ordinal()] > 0) {
+                issues.put(issue, counts[issue.ordinal()]);
+            }
+        }
+        return new Report(normalizer.tickCount(), windows, issues);
+    }
+
+    private void flag(Issue issue) {
+        if (counts[issue.ordinal()]++ == 0) {
+            warnings.add("Tick " + (normalizer.tickCount() - 1) + ": " + issue.description());
+        }
+    }
+}
@@ -1,66 +1,177 @@
 package com.firejoust.parkourcapture;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.gson.annotations.SerializedName;
-import net.minecraft.block.Block;
-import net.minecraft.block.BlockState;
-import net.minecraft.block.Blocks;
+import com.firejoust.parkourcapture.format.RunTick;
+import com.firejoust.parkourcapture.vision.BlockChangeTracker;
+import com.firejoust.parkourcapture.vision.BlockChanges;
+import com.firejoust.parkourcapture.vision.FoveatedLayout;
+import com.firejoust.parkourcapture.vision.IncrementalVisionCache;
+import com.firejoust.parkourcapture.vision.PanoramaCache;
+import com.firejoust.parkourcapture.vision.ParallelVisionEngine;
+import com.firejoust.parkourcapture.vision.RayDirectionTable;
+import com.firejoust.parkourcapture.vision.VisionGrid;
+import com.firejoust.parkourcapture.vision.VisionMode;
+import com.firejoust.parkourcapture.vision.VoxelRaycaster;
+import com.firejoust.parkourcapture.vision.WorldSnapshot;
+import com.firejoust.parkourcapture.vision.WorldSnapshotter;
+import net.minecraft.block.ShapeContext;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.ClientPlayerEntity;
 import net.minecraft.client.world.ClientWorld;
-import net.minecraft.util.hit.BlockHitResult;
-import net.minecraft.util.hit.HitResult;
-import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
-import net.minecraft.world.RaycastContext;
-
-import java.util.Set;
-
-// Record definition remains the same
-public record ParkourTickData(
-    // ... (all existing fields remain the same) ...
-    @SerializedName("f") boolean inputForward,
-    @SerializedName("l") boolean inputLeft,
-    @SerializedName("r") boolean inputRight,
-    @SerializedName("b") boolean inputBack,
-    @SerializedName("j") boolean inputJump,
-    @SerializedName("n") boolean inputSneak,
-    @SerializedName("s") boolean inputSprint,
-    @SerializedName("y") float yaw,
-    @SerializedName("vx") double velocityX,
-    @SerializedName("vy") double velocityY,
-    @SerializedName("vz") double velocityZ,
-    @SerializedName("g") boolean isOnGround,
-    @SerializedName("ch") boolean isCollidedHorizontally,
-    @SerializedName("cv") boolean isCollidedVertically,
-    @SerializedName("py") double playerY,
-    @SerializedName("vd") float[][] visionDistanceGrid,
-    @SerializedName("vb") int[][] visionBlockStateGrid,
-    @SerializedName("fz") boolean isInFallZone
-) {
+
+/**
+ * One captured tick, as a lightweight view of its slot in a {@link RunBuffer}. The accessors
+ * mirror the run file's tick keys (f, l, r, b, j, n, s, y, vx, vy, vz, g, ch, cv, py, vd, vb,
+ * fz). A view is only valid until its slot is released.
+ * <p>
+ * Also hosts the capture itself: {@link #capture} on the tick thread, {@link #traceVision} on
+ * the vision workers.
+ */
+public final class ParkourTickData implements RunTick {
 
     // --- Vision Grid Constants (Unchanged) ---
-    private static final int VISION_GRID_WIDTH = 36;
+    public static final int VISION_GRID_WIDTH = 36;
     private static final float VISION_FOV_DEGREES = 120.0f;
     private static final float VERTICAL_FOV_DEGREES = 180.0f;
-    private static final float MAX_RAYCAST_DISTANCE = 64.0f;
-    private static final int VISION_GRID_HEIGHT = calculateVisionGridHeight();
-
-    // --- Set of Special Blocks to Check After Outline Hit ---
-    // These are the blocks we prioritize if hit by the OUTLINE raycast.
-    private static final Set<Block> SPECIAL_NON_COLLIDABLE_BLOCKS = ImmutableSet.of(
-            Blocks.LADDER,
-            Blocks.VINE,
-            Blocks.TWISTING_VINES,
-            Blocks.TWISTING_VINES_PLANT,
-            Blocks.WEEPING_VINES,
-            Blocks.WEEPING_VINES_PLANT,
-            Blocks.WATER,
-            Blocks.LAVA,
-            Blocks.COBWEB
-            // Slime, Soul Sand, Ice, Honey have collision, COLLIDER should hit them.
-    );
+    /** Distance recorded for rays that hit nothing. */
+    public static final float MAX_RAYCAST_DISTANCE = 64.0f;
+    public static final int VISION_GRID_HEIGHT = calculateVisionGridHeight();
+
+    // Per-cell ray directions at yaw 0, and one allocation-free raycaster per worker thread
+    private static final RayDirectionTable RAY_DIRECTIONS = new RayDirectionTable(
+            VISION_GRID_WIDTH, VISION_GRID_HEIGHT, VISION_FOV_DEGREES, VERTICAL_FOV_DEGREES);
+    private static final ThreadLocal<VoxelRaycaster> RAYCASTERS = ThreadLocal.withInitial(VoxelRaycaster::new);
+    // Only consulted in VisionMode.PANORAMA / VisionMode.INCREMENTAL respectively
+    private static final PanoramaCache PANORAMA = new PanoramaCache(VISION_GRID_WIDTH, VISION_GRID_HEIGHT,
+            VISION_FOV_DEGREES, VERTICAL_FOV_DEGREES, MAX_RAYCAST_DISTANCE, CaptureConfig.VISION_REUSE_EPSILON);
+    private static final IncrementalVisionCache INCREMENTAL = new IncrementalVisionCache(
+            RAY_DIRECTIONS, MAX_RAYCAST_DISTANCE, CaptureConfig.VISION_REUSE_EPSILON);
+    // Only consulted in VisionMode.FOVEATED
+    private static final FoveatedLayout FOVEATED = new FoveatedLayout(VISION_GRID_WIDTH, VISION_GRID_HEIGHT,
+            CaptureConfig.VISION_FOVEA_TOP, CaptureConfig.VISION_FOVEA_BOTTOM,
+            CaptureConfig.VISION_FOVEA_LEFT, CaptureConfig.VISION_FOVEA_RIGHT, CaptureConfig.VISION_SPARSE_STRIDE);
+
+    private final RunBuffer buffer;
+    private final int slot;
+
+    ParkourTickData(RunBuffer buffer, int slot) {
+        this.buffer = buffer;
+        this.slot = slot;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    /** Capture order within the recording, counting dropped ticks. */
+    @Override
+    public long sequence() {
+        return buffer.sequence(slot);
+    }
+
+    @Override
+    public boolean inputForward() {
+        return hasFlag(RunBuffer.INPUT_FORWARD);
+    }
+
+    @Override
+    public boolean inputLeft() {
+        return hasFlag(RunBuffer.INPUT_LEFT);
+    }
+
+    @Override
+    public boolean inputRight() {
+        return hasFlag(RunBuffer.INPUT_RIGHT);
+    }
+
+    @Override
+    public boolean inputBack() {
+        return hasFlag(RunBuffer.INPUT_BACK);
+    }
+
+    @Override
+    public boolean inputJump() {
+        return hasFlag(RunBuffer.INPUT_JUMP);
+    }
+
+    @Override
+    public boolean inputSneak() {
+        return hasFlag(RunBuffer.INPUT_SNEAK);
+    }
+
+    @Override
+    public boolean inputSprint() {
+        return hasFlag(RunBuffer.INPUT_SPRINT);
+    }
+
+    @Override
+    public float yaw() {
+        return buffer.yaw(slot);
+    }
+
+    @Override
+    public double velocityX() {
+        return buffer.velocityX(slot);
+    }
+
+    @Override
+    public double velocityY() {
+        return buffer.velocityY(slot);
+    }
+
+    @Override
+    public double velocityZ() {
+        return buffer.velocityZ(slot);
+    }
+
+    @Override
+    public boolean isOnGround() {
+        return hasFlag(RunBuffer.ON_GROUND);
+    }
+
+    @Override
+    public boolean isCollidedHorizontally() {
+        return hasFlag(RunBuffer.COLLIDED_HORIZONTALLY);
+    }
+
+    @Override
+    public boolean isCollidedVertically() {
+        return hasFlag(RunBuffer.COLLIDED_VERTICALLY);
+    }
+
+    @Override
+    public double playerY() {
+        return buffer.playerY(slot);
+    }
+
+    @Override
+    public boolean isInFallZone() {
+        return hasFlag(RunBuffer.IN_FALL_ZONE);
+    }
+
+    @Override
+    public int visionWidth() {
+        return buffer.gridWidth();
+    }
+
+    @Override
+    public int visionHeight() {
+        return buffer.gridHeight();
+    }
+
+    @Override
+    public float visionDistance(int row, int column) {
+        return buffer.distance(slot, row * buffer.gridWidth() + column);
+    }
+
+    @Override
+    public int visionBlockState(int row, int column) {
+        return buffer.blockState(slot, row * buffer.gridWidth() + column);
+    }
+
+    private boolean hasFlag(int flag) {
+        return (buffer.flags(slot) & flag) != 0;
+    }
 
     // Helper method to calculate height (Unchanged)
     private static int calculateVisionGridHeight() {
@@ -72,10 +183,16 @@ public record ParkourTickData(
         return Math.round(calculatedHeight);
     }
 
-    // Factory method signature remains the same
-    public static ParkourTickData capture(MinecraftClient client, int targetFallY, double lastTickVelocityY) {
+    // Cells filled by resampling rather than traced, or null when every cell is traced
+    public static boolean[][] visionInterpolatedMask() {
+        return CaptureConfig.VISION_MODE == VisionMode.FOVEATED ? FOVEATED.interpolatedMask() : null;
+    }
+
+    // Tick-thread half of the capture: reads the client and snapshots the blocks in ray range
+    public static TickCapture capture(MinecraftClient client, WorldSnapshotter snapshotter, int targetFallY, double lastTickVelocityY) {
         ClientPlayerEntity player = client.player;
-        if (player == null || client.world == null) {
+        ClientWorld world = client.world;
+        if (player == null || world == null) {
             return null;
         }
 
@@ -97,115 +214,74 @@ public record ParkourTickData(
         boolean isCollidedVertically = player.verticalCollision;
         double playerY = player.getY();
 
-        // --- Vision ---
-        // Now uses the modified performVisionRaycasts with two-stage raycasting
-        VisionResult visionResult = performVisionRaycasts(client, player);
-
         // --- Parkour Targets (Unchanged) ---
         boolean isInFallZone = velocityY <= 0.0 && isOnGround && player.getY() <= (targetFallY + 1.0);
 
-        // Constructor call remains the same
-        return new ParkourTickData(
+        // --- Vision input: eye position, shape context and the world around it ---
+        Vec3d eyePos = player.getCameraPosVec(1.0f);
+        WorldSnapshot snapshot = snapshotter.capture(world, eyePos, MAX_RAYCAST_DISTANCE);
+        BlockChanges blockChanges = BlockChangeTracker.drain();
+
+        return new TickCapture(
             inputForward, inputLeft, inputRight, inputBack, inputJump, inputSneak, inputSprint,
             yaw,
             velocityX, velocityY, velocityZ,
             isOnGround, isCollidedHorizontally, isCollidedVertically,
             playerY,
-            visionResult.distanceGrid, visionResult.blockStateGrid,
-            isInFallZone
+            isInFallZone,
+            eyePos, ShapeContext.of(player), snapshot, blockChanges
         );
     }
 
-    // Internal record for results (Unchanged)
-    private record VisionResult(float[][] distanceGrid, int[][] blockStateGrid) {}
-
-    // --- MODIFIED: performVisionRaycasts uses two-stage raycasting ---
-    private static VisionResult performVisionRaycasts(MinecraftClient client, ClientPlayerEntity player) {
-        float[][] distances = new float[VISION_GRID_HEIGHT][VISION_GRID_WIDTH];
-        int[][] blockStates = new int[VISION_GRID_HEIGHT][VISION_GRID_WIDTH];
-        ClientWorld world = client.world;
+    // Worker half of the capture: raycasts against the snapshot into the tick's grid, touches no live client state
+    static void traceVision(TickCapture capture, ParallelVisionEngine engine, VisionGrid out) {
+        // Two-stage hit rule (special OUTLINE hit, else COLLIDER) resolved in one voxel walk per ray
+        performVisionRaycasts(engine, capture.world(), capture.shapeContext(), capture.eyePos(), capture.yaw(), capture.blockChanges(), out);
+    }
 
-        if (world == null) {
-             return new VisionResult(distances, blockStates);
+    // --- performVisionRaycasts: one VoxelRaycaster walk per cell ---
+    private static void performVisionRaycasts(ParallelVisionEngine engine, WorldSnapshot world, ShapeContext shapeContext, Vec3d eyePos, float yaw, BlockChanges blockChanges, VisionGrid out) {
+        if (CaptureConfig.VISION_MODE == VisionMode.PANORAMA) {
+            PANORAMA.trace(engine, RAYCASTERS, world, shapeContext, eyePos, yaw, out);
+            return;
+        }
+        if (CaptureConfig.VISION_MODE == VisionMode.INCREMENTAL) {
+            INCREMENTAL.trace(engine, RAYCASTERS, world, shapeContext, eyePos, yaw, blockChanges, out);
+            return;
         }
 
-        Vec3d eyePos = player.getCameraPosVec(1.0f);
-        float playerYawRad = (float) Math.toRadians(player.getYaw());
-        float playerPitchRad = 0.0f; // Fixed pitch
+        // Pitch is fixed, so the precomputed directions only need rotating by the player's yaw
+        double playerYawRad = Math.toRadians(yaw);
+        double sinYaw = Math.sin(playerYawRad);
+        double cosYaw = Math.cos(playerYawRad);
+        double eyeX = eyePos.x;
+        double eyeY = eyePos.y;
+        double eyeZ = eyePos.z;
+        FoveatedLayout layout = CaptureConfig.VISION_MODE == VisionMode.FOVEATED ? FOVEATED : null;
 
-        float horizontalFovRad = (float) Math.toRadians(VISION_FOV_DEGREES);
-        float verticalFovRad = (float) Math.toRadians(VERTICAL_FOV_DEGREES);
-        float yawStepRad = horizontalFovRad / VISION_GRID_WIDTH;
-        float pitchStepRad = (VISION_GRID_HEIGHT > 0) ? (verticalFovRad / VISION_GRID_HEIGHT) : 0;
-        float startYawOffset = -horizontalFovRad / 2.0f + yawStepRad / 2.0f;
-        float startPitchOffset = -verticalFovRad / 2.0f + pitchStepRad / 2.0f;
+        // Rows are independent: each fork-join task traces whole rows with its thread's raycaster
+        engine.traceRows(VISION_GRID_HEIGHT, r -> {
+            VoxelRaycaster raycaster = RAYCASTERS.get();
+            raycaster.bind(world, shapeContext);
 
-        for (int r = 0; r < VISION_GRID_HEIGHT; r++) {
             for (int c = 0; c < VISION_GRID_WIDTH; c++) {
-                float rayYawRad = playerYawRad + startYawOffset + c * yawStepRad;
-                float rayPitchRad = playerPitchRad + startPitchOffset + r * pitchStepRad;
-                rayPitchRad = MathHelper.clamp(rayPitchRad, -(float)Math.PI / 2.0f + 0.001f, (float)Math.PI / 2.0f - 0.001f);
-
-                float cosPitch = MathHelper.cos(rayPitchRad);
-                float sinPitch = MathHelper.sin(rayPitchRad);
-                float cosYaw = MathHelper.cos(rayYawRad);
-                float sinYaw = MathHelper.sin(rayYawRad);
-
-                Vec3d direction = new Vec3d(-sinYaw * cosPitch, -sinPitch, cosYaw * cosPitch).normalize();
-                Vec3d endPos = eyePos.add(direction.multiply(MAX_RAYCAST_DISTANCE));
-
-                boolean specialBlockHit = false;
-
-                // 1. Raycast using OUTLINE shape first, including fluids
-                RaycastContext contextOutline = new RaycastContext(
-                    eyePos,
-                    endPos,
-                    RaycastContext.ShapeType.OUTLINE, // Use outline shape
-                    RaycastContext.FluidHandling.ANY,   // Detect any fluid
-                    player
-                );
-                BlockHitResult hitOutline = world.raycast(contextOutline);
-
-                if (hitOutline.getType() == HitResult.Type.BLOCK) {
-                    BlockPos blockPos = hitOutline.getBlockPos();
-                    BlockState blockState = world.getBlockState(blockPos);
-                    // Check if the hit block is one of our special types
-                    if (SPECIAL_NON_COLLIDABLE_BLOCKS.contains(blockState.getBlock())) {
-                        // It's a special block, record this hit and skip the COLLIDER check
-                        distances[r][c] = (float) hitOutline.getPos().distanceTo(eyePos);
-                        blockStates[r][c] = Block.getRawIdFromState(blockState);
-                        specialBlockHit = true;
-                        // continue; // Go to next grid cell (r, c loop)
-                    }
-                    // If it hit something but wasn't special, we'll proceed to the COLLIDER check
+                if (layout != null && !layout.isTraced(r, c)) {
+                    continue; // Filled by resampling once every row is traced
                 }
-
-                // 2. If no special block was hit by the OUTLINE raycast, perform standard COLLIDER raycast
-                if (!specialBlockHit) {
-                    RaycastContext contextCollider = new RaycastContext(
-                        eyePos,
-                        endPos,
-                        RaycastContext.ShapeType.COLLIDER, // Use standard collision shape
-                        RaycastContext.FluidHandling.NONE,    // Ignore fluids here (handled above if special)
-                        player
-                    );
-                    BlockHitResult hitCollider = world.raycast(contextCollider);
-
-                    if (hitCollider.getType() == HitResult.Type.BLOCK) {
-                        // Hit a standard collidable block
-                        BlockPos blockPos = hitCollider.getBlockPos();
-                        distances[r][c] = (float) hitCollider.getPos().distanceTo(eyePos);
-                        blockStates[r][c] = Block.getRawIdFromState(world.getBlockState(blockPos));
-                    } else {
-                        // Both OUTLINE (for special) and COLLIDER missed
-                        distances[r][c] = MAX_RAYCAST_DISTANCE;
-                        blockStates[r][c] = 0; // Air
-                    }
+                int cell = r * VISION_GRID_WIDTH + c;
+                // Single voxel walk resolving both the special OUTLINE hit and the COLLIDER fallback
+                if (raycaster.cast(eyeX, eyeY, eyeZ,
+                        RAY_DIRECTIONS.rotatedX(cell, sinYaw, cosYaw), RAY_DIRECTIONS.y(cell), RAY_DIRECTIONS.rotatedZ(cell, sinYaw, cosYaw),
+                        MAX_RAYCAST_DISTANCE)) {
+                    out.set(cell, raycaster.hitDistance(), raycaster.hitRawId());
+                } else {
+                    out.set(cell, MAX_RAYCAST_DISTANCE, 0); // Air
                 }
-                // If specialBlockHit was true, we already recorded the data and implicitly skip this COLLIDER check part.
             }
+        });
+        if (layout != null) {
+            layout.resample(out);
         }
-        return new VisionResult(distances, blockStates);
     }
 
     // Manual stepping code (findFirstSpecialBlockAlongRay, ManualHitResult) is removed.
@@ -215,12 +291,12 @@ public record ParkourTickData(
      public String toString() {
          // ... (toString code is unchanged) ...
          return "ParkourTickData{" +
-                "input=" + (inputForward?"F":"") + (inputLeft?"L":"") + (inputRight?"R":"") + (inputBack?"B":"") + (inputJump?"J":"") + (inputSneak?"N":"") + (inputSprint?"S":"") +
-                ", yaw=" + String.format("%.1f", yaw) +
-                ", vel=(" + String.format("%.2f", velocityX) + "," + String.format("%.2f", velocityY) + "," + String.format("%.2f", velocityZ) + ")" +
-                ", onGround=" + isOnGround +
-                ", playerY=" + String.format("%.2f", playerY) +
-                ", isInFallZone=" + isInFallZone +
+                "input=" + (inputForward()?"F":"") + (inputLeft()?"L":"") + (inputRight()?"R":"") + (inputBack()?"B":"") + (inputJump()?"J":"") + (inputSneak()?"N":"") + (inputSprint()?"S":"") +
+                ", yaw=" + String.format("%.1f", yaw()) +
+                ", vel=(" + String.format("%.2f", velocityX()) + "," + String.format("%.2f", velocityY()) + "," + String.format("%.2f", velocityZ()) + ")" +
+                ", onGround=" + isOnGround() +
+                ", playerY=" + String.format("%.2f", playerY()) +
+                ", isInFallZone=" + isInFallZone() +
                 '}';
      }
 }
\ No newline at end of file
@@ -1,13 +1,16 @@
 package com.firejoust.parkourcapture;
 
-import com.firejoust.parkourcapture.util.DoubleSerializer;
-import com.firejoust.parkourcapture.util.FloatSerializer;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.annotations.SerializedName;
+import com.firejoust.parkourcapture.io.RunHeader;
+import com.firejoust.parkourcapture.io.StreamingRunWriter;
+import com.firejoust.parkourcapture.vision.BlockChangeTracker;
+import com.firejoust.parkourcapture.vision.BlockShapeTable;
+import com.firejoust.parkourcapture.vision.ParallelVisionEngine;
+import com.firejoust.parkourcapture.vision.WorldSnapshotter;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.KeyBinding;
@@ -19,17 +22,21 @@ import org.lwjgl.glfw.GLFW;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap; // Use LinkedHashMap to preserve insertion order for mappings
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class RLParkourCaptureClient implements ClientModInitializer {
 
@@ -43,10 +50,16 @@ public class RLParkourCaptureClient implements ClientModInitializer {
 
     private boolean isRecording = false;
     private long recordingStartTimeMillis = 0;
-    private List<ParkourTickData> recordedData = new ArrayList<>();
+    // Vision, encoding and disk I/O for the current recording; null when not recording
+    private CapturePipeline pipeline = null;
+    // Last vision task of the previous recording; ordered vision modes start the next recording behind it
+    private CompletableFuture<?> lastVisionTail = null;
+    private final WorldSnapshotter worldSnapshotter = new WorldSnapshotter();
     private Float targetBearingYaw = null; // Will be set automatically on recording start
     private Integer fallZoneY = null;
     private double lastPlayerVelocityY = 0.0;
+    // Why vision cannot run with the current block registry, or null; recording stays off while set
+    private String visionUnavailableReason = null;
 
     // Fall zone warning
     private static final int WARNING_INTERVAL_TICKS = 100;
@@ -54,11 +67,19 @@ public class RLParkourCaptureClient implements ClientModInitializer {
     private static final double WARNING_DISTANCE_THRESHOLD = 8.0; // Was 10.0
     private long lastWarningTick = 0;
 
-    private static final Gson GSON = new GsonBuilder()
-            .registerTypeAdapter(Double.class, new DoubleSerializer())
-            .registerTypeAdapter(Float.class, new FloatSerializer())
-            // .setPrettyPrinting() // Optional: Keep for readability
-            .create();
+    // Vision raycasts run against world snapshots off the client thread, spread across cores
+    private static final ParallelVisionEngine VISION_ENGINE = new ParallelVisionEngine(
+            CaptureConfig.VISION_PARALLELISM, CaptureConfig.VISION_ROWS_PER_TASK);
+
+    // Finishing a run (draining its pipeline, writing the footer) happens here, never on the client thread
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ParkourCapture-Save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Longest the client waits on shutdown for runs that are still being saved
+    private static final long SHUTDOWN_SAVE_TIMEOUT_SECONDS = 30;
+    private final Set<CompletableFuture<Void>> pendingSaves = ConcurrentHashMap.newKeySet();
 
     private static final Path SAVE_DIR = FabricLoader.getInstance().getGameDir().resolve("parkour_data");
 
@@ -74,6 +95,16 @@ public class RLParkourCaptureClient implements ClientModInitializer {
                 "key." + MOD_ID + ".set_fall_zone_y", InputUtil.Type.KEYSYM, GLFW.GLFW_KEY_F10, KEY_CATEGORY)); // Kept F10 for Fall Zone Y
 
         ClientTickEvents.END_CLIENT_TICK.register(this::onClientTick);
+        // Raw state ids can be remapped by registry sync when joining a world
+        rebuildShapeTable();
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> {
+            rebuildShapeTable();
+            worldSnapshotter.clear();
+            if (visionUnavailableReason != null) {
+                sendMessage(client, "Recording disabled: " + visionUnavailableReason, Formatting.RED);
+            }
+        });
+        ClientLifecycleEvents.CLIENT_STOPPING.register(this::onClientStopping);
 
         try {
             Files.createDirectories(SAVE_DIR);
@@ -82,6 +113,37 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         }
     }
 
+    // A registry too large for the vision tables disables recording instead of failing the client
+    private void rebuildShapeTable() {
+        try {
+            BlockShapeTable.rebuild();
+            visionUnavailableReason = null;
+        } catch (IllegalStateException e) {
+            visionUnavailableReason = e.getMessage();
+            LOGGER.error("Parkour recording disabled: {}", e.getMessage());
+        }
+    }
+
+    // Saves the active recording and waits for every pending save before the workers go away
+    private void onClientStopping(MinecraftClient client) {
+        stopRecording(client, true);
+        if (!pendingSaves.isEmpty()) {
+            LOGGER.info("Waiting for {} parkour data save(s) to finish", pendingSaves.size());
+            try {
+                CompletableFuture.allOf(pendingSaves.toArray(CompletableFuture[]::new))
+                        .get(SHUTDOWN_SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                LOGGER.error("Gave up waiting for parkour data saves after {}s", SHUTDOWN_SAVE_TIMEOUT_SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.error("Parkour data save failed during shutdown", e.getCause());
+            }
+        }
+        SAVE_EXECUTOR.shutdown();
+        VISION_ENGINE.shutdown();
+    }
+
     private void onClientTick(MinecraftClient client) {
         if (client.player == null || client.world == null) {
             if (isRecording) {
@@ -94,12 +156,17 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         handleKeybindings(client);
 
         if (isRecording) {
-            // --- MODIFIED Call to capture ---
-            // Pass fallZoneY for calculation, pitch is handled internally in ParkourTickData
-            ParkourTickData tickData = ParkourTickData.capture(client, fallZoneY, lastPlayerVelocityY);
-            if (tickData != null) {
-                recordedData.add(tickData);
-                lastPlayerVelocityY = tickData.velocityY(); // Still need Y velocity for fall zone check logic
+            // Only the snapshot is taken here; raycasting and writing happen on the pipeline's workers
+            TickCapture capture = ParkourTickData.capture(client, worldSnapshotter, fallZoneY, lastPlayerVelocityY);
+            if (capture != null) {
+                if (!pipeline.submit(capture)) {
+                    LOGGER.warn("Capture pipeline is full; dropped a tick ({} dropped so far)", pipeline.droppedTicks());
+                }
+                lastPlayerVelocityY = capture.velocityY(); // Still need Y velocity for fall zone check logic
+                String warning = pipeline.pollNormalizationWarning();
+                if (warning != null) {
+                    sendMessage(client, "Warning: " + warning, Formatting.YELLOW);
+                }
             } else {
                  LOGGER.error("Failed to capture tick data!");
             }
@@ -129,6 +196,10 @@ public class RLParkourCaptureClient implements ClientModInitializer {
     // --- MODIFIED: Automatically set target yaw, removed check ---
     private void startRecording(MinecraftClient client) {
         // Removed check: if (targetBearingYaw == null) { ... }
+        if (visionUnavailableReason != null) {
+            sendMessage(client, "Cannot start recording: " + visionUnavailableReason, Formatting.RED);
+            return;
+        }
         if (fallZoneY == null) {
             sendMessage(client, "Cannot start recording: Fall Zone Y not set.", Formatting.RED);
             return;
@@ -143,11 +214,16 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         sendMessage(client, String.format("Target Bearing Yaw automatically set to: %.1f", targetBearingYaw), Formatting.AQUA);
         LOGGER.info("Target Bearing Yaw automatically set: {}", String.format("%.1f", targetBearingYaw));
 
+        recordingStartTimeMillis = System.currentTimeMillis();
+        if (!openPipeline(client)) {
+            targetBearingYaw = null;
+            return;
+        }
+
         isRecording = true;
-        recordedData.clear();
+        BlockChangeTracker.invalidateAll(); // Cached vision from before this recording is not trusted
         lastPlayerVelocityY = client.player.getVelocity().y;
         lastWarningTick = client.world.getTime();
-        recordingStartTimeMillis = System.currentTimeMillis();
         sendMessage(client, "Started parkour data recording.", Formatting.GREEN);
         LOGGER.info("Recording started. Target Yaw: {}, Fall Zone Y: {}", String.format("%.1f", targetBearingYaw), fallZoneY);
     }
@@ -156,16 +232,27 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         if (!isRecording) return;
 
         isRecording = false;
+        worldSnapshotter.clear();
         sendMessage(client, "Stopped parkour data recording.", Formatting.YELLOW);
-        LOGGER.info("Recording stopped. {} ticks captured.", recordedData.size());
-
-        if (saveData && !recordedData.isEmpty()) {
-            filterData();
-            saveDataToFile(client);
-        } else if (saveData && recordedData.isEmpty()) {
-             sendMessage(client, "No data recorded.", Formatting.GRAY);
+        LOGGER.info("Recording stopped. {} ticks captured.", pipeline.capturedTicks());
+
+        // The run drains and flushes on the save executor, so a new recording can start right away
+        CapturePipeline finishing = pipeline;
+        long stopTimestampMillis = System.currentTimeMillis();
+        lastVisionTail = finishing.visionTail();
+        pipeline = null;
+        Runnable save;
+        if (saveData && finishing.capturedTicks() > 0) {
+            save = () -> finishPipeline(client, finishing, stopTimestampMillis);
+        } else {
+            if (saveData) {
+                sendMessage(client, "No data recorded.", Formatting.GRAY);
+            }
+            save = finishing::abort;
         }
-        recordedData.clear();
+        CompletableFuture<Void> pendingSave = CompletableFuture.runAsync(save, SAVE_EXECUTOR);
+        pendingSaves.add(pendingSave);
+        pendingSave.whenComplete((ignored, error) -> pendingSaves.remove(pendingSave));
         recordingStartTimeMillis = 0;
         targetBearingYaw = null; // Reset auto-set yaw
     }
@@ -186,46 +273,89 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         }
     }
 
-    private void filterData() {
-        if (recordedData.isEmpty()) return;
-
-        int lastOnGroundIndex = -1;
-        for (int i = recordedData.size() - 1; i >= 0; i--) {
-            if (recordedData.get(i).isOnGround()) {
-                lastOnGroundIndex = i;
-                break;
-            }
+    // Picks the run's file name and writes its header; ticks are streamed into it while recording
+    private boolean openPipeline(MinecraftClient client) {
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(recordingStartTimeMillis));
+        String serverIp = (client.getCurrentServerEntry() != null ? client.getCurrentServerEntry().address : "Singleplayer")
+                            .replaceAll("[^a-zA-Z0-9.-]", "_");
+        String filename = String.format("%s_%s.json", serverIp, timestamp);
+        Path filePath = SAVE_DIR.resolve(filename);
+        // A run started within the same second may still be flushing under this name
+        for (int attempt = 2; Files.exists(filePath) || Files.exists(SAVE_DIR.resolve(filename + ".part")); attempt++) {
+            filename = String.format("%s_%s_%d.json", serverIp, timestamp, attempt);
+            filePath = SAVE_DIR.resolve(filename);
         }
 
-        if (lastOnGroundIndex != -1 && lastOnGroundIndex < recordedData.size() - 1) {
-            int removedCount = recordedData.size() - (lastOnGroundIndex + 1);
-            recordedData = new ArrayList<>(recordedData.subList(0, lastOnGroundIndex + 1));
-            LOGGER.info("Filtered data: Removed {} ticks after last ground contact.", removedCount);
-        } else {
-             LOGGER.info("No filtering needed or no ground contact found after start.");
+        RunHeader header = new RunHeader(
+                recordingStartTimeMillis,
+                serverIp,
+                targetBearingYaw, // Use the automatically set yaw
+                fallZoneY,
+                createKeyMappings(),
+                ParkourTickData.visionInterpolatedMask() // Omitted unless some cells are resampled
+        );
+        try {
+            pipeline = CapturePipeline.open(VISION_ENGINE, CaptureConfig.VISION_MODE.isOrdered(), lastVisionTail,
+                    filePath, header, CaptureConfig.EXPORTS, CaptureConfig.MAX_TICKS_IN_FLIGHT);
+            return true;
+        } catch (IOException e) {
+            sendMessage(client, "Cannot start recording: failed to create data file! (I/O Error)", Formatting.RED);
+            LOGGER.error("Failed to open parkour data file: {}", filePath, e);
+            return false;
         }
     }
 
-     private void saveDataToFile(MinecraftClient client) {
-        if (recordedData.isEmpty()) {
-            LOGGER.warn("Attempted to save empty dataset.");
-            sendMessage(client, "No data to save.", Formatting.GRAY);
-            return;
-        }
-        // Ensure targetBearingYaw was set (should be by startRecording)
-        if (targetBearingYaw == null) {
-             LOGGER.error("Attempted to save data but targetBearingYaw is null!");
-             sendMessage(client, "Error saving: Target Yaw was not set (Internal Error).", Formatting.RED);
-             return;
+    // Runs on the save executor: flushes the remaining ticks and the footer, then reports back on the client thread.
+    // Trailing airborne ticks are marked invalid by "dn" rather than removed
+    private void finishPipeline(MinecraftClient client, CapturePipeline finishing, long stopTimestampMillis) {
+        String filename = finishing.target().getFileName().toString();
+        try {
+            CapturePipeline.Result result = finishing.finish(stopTimestampMillis);
+            StreamingRunWriter.Summary summary = result.summary();
+            if (summary.droppedTicks() > 0) {
+                reportFromSave(client, String.format("Warning: %d ticks were dropped (%d under load, %d failed)",
+                        summary.droppedTicks(), result.droppedUnderLoad(), result.failedTicks()), Formatting.YELLOW);
+                LOGGER.warn("{} ticks dropped: {} under load, {} failed vision", summary.droppedTicks(),
+                        result.droppedUnderLoad(), result.failedTicks());
+            }
+            if (summary.validTicks() < summary.writtenTicks()) {
+                LOGGER.info("Filtered data: Marked {} ticks after last ground contact as invalid.",
+                        summary.writtenTicks() - summary.validTicks());
+            } else {
+                LOGGER.info("No filtering needed or no ground contact found after start.");
+            }
+            reportFromSave(client, "Parkour data saved to: " + filename, Formatting.GREEN);
+            LOGGER.info("Data saved successfully to {}", finishing.target());
+            for (Path exported : result.exported()) {
+                LOGGER.info("Export saved to {}", exported);
+            }
+            NormalizationMonitor.Report normalization = result.normalization();
+            if (normalization != null) {
+                LOGGER.info("Normalized {} ticks into {} training windows", normalization.ticks(), normalization.windows());
+                if (!normalization.clean()) {
+                    LOGGER.warn("Normalization issues: {}", normalization.describe());
+                    reportFromSave(client, "Warning: " + normalization.describe(), Formatting.YELLOW);
+                }
+            }
+            if (result.failedExports() > 0) {
+                reportFromSave(client, String.format("Warning: %d export file(s) could not be saved", result.failedExports()),
+                        Formatting.YELLOW);
+            }
+        } catch (IOException e) {
+            reportFromSave(client, "Error saving parkour data! (I/O Error)", Formatting.RED);
+            LOGGER.error("Failed to write parkour data to file: {}", finishing.target(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reportFromSave(client, "Saving parkour data was interrupted!", Formatting.RED);
+            LOGGER.error("Interrupted while finishing parkour data file: {}", finishing.target());
+        } catch (Exception e) {
+            reportFromSave(client, "An unexpected error occurred while saving data!", Formatting.RED);
+            LOGGER.error("Unexpected error during parkour data saving", e);
         }
+    }
 
-        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String serverIp = (client.getCurrentServerEntry() != null ? client.getCurrentServerEntry().address : "Singleplayer")
-                            .replaceAll("[^a-zA-Z0-9.-]", "_");
-        String filename = String.format("%s_%s.json", serverIp, timestamp);
-        Path filePath = SAVE_DIR.resolve(filename);
-
-        // --- Create Key Mappings (Updated) ---
+    // --- Key Mappings (short JSON key -> descriptive name), written into every run's header ---
+    private static Map<String, String> createKeyMappings() {
         Map<String, String> keyMappings = new LinkedHashMap<>(); // Use LinkedHashMap to keep order
         // Top Level Keys
         keyMappings.put("ts", "startTimestampMillis");
@@ -234,7 +364,9 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         keyMappings.put("ty", "targetBearingYaw"); // Still relevant for the run metadata
         keyMappings.put("tfy", "targetFallZoneY");
         keyMappings.put("map", "keyMappings"); // Mapping for the map itself
+        keyMappings.put("vi", "visionInterpolatedMask");
         keyMappings.put("d", "tickDataList");
+        keyMappings.put("dn", "validTickCount");
         // Tick Data Keys (Pitch removed)
         keyMappings.put("f", "inputForward");
         keyMappings.put("l", "inputLeft");
@@ -255,48 +387,9 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         keyMappings.put("vd", "visionDistanceGrid");
         keyMappings.put("vb", "visionBlockStateGrid");
         keyMappings.put("fz", "isInFallZone");
-
-
-        // --- Create Run Data Object ---
-        // ParkourRunData still includes targetBearingYaw as run metadata
-        ParkourRunData runData = new ParkourRunData(
-                recordingStartTimeMillis,
-                System.currentTimeMillis(),
-                serverIp,
-                targetBearingYaw, // Use the automatically set yaw
-                fallZoneY,
-                keyMappings, // Add the mappings
-                recordedData
-        );
-
-        try (Writer writer = new FileWriter(filePath.toFile())) {
-            GSON.toJson(runData, writer);
-            sendMessage(client, "Parkour data saved to: " + filename, Formatting.GREEN);
-            LOGGER.info("Data saved successfully to {}", filePath);
-        } catch (IOException e) {
-            sendMessage(client, "Error saving parkour data! (I/O Error)", Formatting.RED);
-            LOGGER.error("Failed to write parkour data to file: {}", filePath, e);
-        } catch (com.google.gson.JsonIOException | com.google.gson.JsonSyntaxException gsonEx) {
-             sendMessage(client, "Error saving parkour data! (JSON Error)", Formatting.RED);
-             LOGGER.error("Failed to serialize parkour data to JSON", gsonEx);
-        } catch (Exception e) {
-            sendMessage(client, "An unexpected error occurred while saving data!", Formatting.RED);
-            LOGGER.error("Unexpected error during parkour data saving", e);
-        }
+        return keyMappings;
     }
 
-    // --- ParkourRunData Record ---
-    // No changes needed here, targetBearingYaw is run metadata
-    private record ParkourRunData(
-        @SerializedName("ts") long startTimestampMillis,
-        @SerializedName("te") long stopTimestampMillis,
-        @SerializedName("ip") String serverIp,
-        @SerializedName("ty") float targetBearingYaw,
-        @SerializedName("tfy") int fallZoneY,
-        @SerializedName("map") Map<String, String> keyMappings,
-        @SerializedName("d") List<ParkourTickData> ticks // Ticks list now contains data without pitch
-    ) {}
-
 
     private void checkAndSendFallZoneWarning(MinecraftClient client) {
         if (client.player == null || client.world == null || fallZoneY == null || !isRecording) return;
@@ -315,6 +408,11 @@ public class RLParkourCaptureClient implements ClientModInitializer {
         }
     }
 
+    // Chat is only touched on the client thread
+    private void reportFromSave(MinecraftClient client, String message, Formatting color) {
+        client.execute(() -> sendMessage(client, message, color));
+    }
+
     private void sendMessage(MinecraftClient client, String message, Formatting color) {
         if (client.player != null) {
             client.player.sendMessage(Text.literal("[Parkour] ").formatted(Formatting.GOLD)
@@ -0,0 +1,208 @@
+package com.firejoust.parkourcapture;
+
+import com.firejoust.parkourcapture.vision.VisionGrid;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Struct-of-arrays store for the ticks of a recording that are between capture and disk.
+ * <p>
+ * Every scalar field has its own primitive column, the seven inputs and four state flags are
+ * packed into one {@code short} per tick, and the vision grids live in a {@link VisionArena} of
+ * {@code capacity * width * height} cells (distances as {@code float}, raw block-state ids as
+ * unsigned {@code short}), on or off the heap. A tick occupies one slot from {@link #acquire} until its
+ * {@link #release}; {@link #tick} gives the slot's {@link ParkourTickData} view and {@link #grid}
+ * the {@link VisionGrid} the vision workers write it through. Views, grids and the boxed slot
+ * ids the free-slot queue passes around are all created up front, so nothing is allocated per
+ * tick.
+ * <p>
+ * A slot is filled by the tick thread and the vision workers and read by the writer; the
+ * pipeline's hand-offs order those accesses, so the columns need no locking.
+ */
+public final class RunBuffer implements AutoCloseable {
+
+    // --- Bits of flags(slot): inputs in the normalizer's action-byte order, then state flags ---
+    public static final int INPUT_FORWARD = 1;
+    public static final int INPUT_LEFT = 1 << 1;
+    public static final int INPUT_RIGHT = 1 << 2;
+    public static final int INPUT_BACK = 1 << 3;
+    public static final int INPUT_JUMP = 1 << 4;
+    public static final int INPUT_SNEAK = 1 << 5;
+    public static final int INPUT_SPRINT = 1 << 6;
+    public static final int INPUT_MASK = 0x7F;
+    public static final int ON_GROUND = 1 << 7;
+    public static final int COLLIDED_HORIZONTALLY = 1 << 8;
+    public static final int COLLIDED_VERTICALLY = 1 << 9;
+    public static final int IN_FALL_ZONE = 1 << 10;
+
+    private final int capacity;
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int cells;
+
+    // --- Scalar columns, indexed by slot ---
+    private final long[] sequence;
+    private final float[] yaw;
+    private final double[] velocityX;
+    private final double[] velocityY;
+    private final double[] velocityZ;
+    private final double[] playerY;
+    private final short[] flags;
+
+    // --- Vision grids, slot * cells + cell ---
+    private final VisionArena arena;
+
+    private final SlotGrid[] grids;
+    private final ParkourTickData[] views;
+    private final Integer[] slotIds;
+    private final ArrayBlockingQueue<Integer> freeSlots;
+
+    public RunBuffer(int capacity, int gridWidth, int gridHeight, VisionArena.Kind arenaKind, long maxDirectArenaBytes) {
+        this.capacity = capacity;
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.cells = gridWidth * gridHeight;
+
+        this.sequence = new long[capacity];
+        this.yaw = new float[capacity];
+        this.velocityX = new double[capacity];
+        this.velocityY = new double[capacity];
+        this.velocityZ = new double[capacity];
+        this.playerY = new double[capacity];
+        this.flags = new short[capacity];
+        this.arena = VisionArena.allocate(arenaKind, capacity * cells, maxDirectArenaBytes);
+
+        this.grids = new SlotGrid[capacity];
+        this.views = new ParkourTickData[capacity];
+        this.slotIds = new Integer[capacity];
+        this.freeSlots = new ArrayBlockingQueue<>(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            grids[slot] = new SlotGrid(slot * cells);
+            views[slot] = new ParkourTickData(this, slot);
+            slotIds[slot] = slot;
+            freeSlots.add(slotIds[slot]);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int gridWidth() {
+        return gridWidth;
+    }
+
+    public int gridHeight() {
+        return gridHeight;
+    }
+
+    /** Takes a free slot, or returns -1 if every slot holds a tick that has not been released yet. */
+    public int acquire() {
+        Integer slot = freeSlots.poll();
+        return slot != null ? slot : -1;
+    }
+
+    public void release(int slot) {
+        freeSlots.add(slotIds[slot]);
+    }
+
+    /** Copies the capture's scalar state into the slot; the vision grid is filled separately. */
+    public void putState(int slot, long tickSequence, TickCapture capture) {
+        sequence[slot] = tickSequence;
+        yaw[slot] = capture.yaw();
+        velocityX[slot] = capture.velocityX();
+        velocityY[slot] = capture.velocityY();
+        velocityZ[slot] = capture.velocityZ();
+        playerY[slot] = capture.playerY();
+        int bits = 0;
+        if (capture.inputForward()) bits |= INPUT_FORWARD;
+        if (capture.inputLeft()) bits |= INPUT_LEFT;
+        if (capture.inputRight()) bits |= INPUT_RIGHT;
+        if (capture.inputBack()) bits |= INPUT_BACK;
+        if (capture.inputJump()) bits |= INPUT_JUMP;
+        if (capture.inputSneak()) bits |= INPUT_SNEAK;
+        if (capture.inputSprint()) bits |= INPUT_SPRINT;
+        if (capture.isOnGround()) bits |= ON_GROUND;
+        if (capture.isCollidedHorizontally()) bits |= COLLIDED_HORIZONTALLY;
+        if (capture.isCollidedVertically()) bits |= COLLIDED_VERTICALLY;
+        if (capture.isInFallZone()) bits |= IN_FALL_ZONE;
+        flags[slot] = (short) bits;
+    }
+
+    public VisionGrid grid(int slot) {
+        return grids[slot];
+    }
+
+    /** The slot's view; it reads whichever tick the slot currently holds. */
+    public ParkourTickData tick(int slot) {
+        return views[slot];
+    }
+
+    // --- Column accessors ---
+
+    public long sequence(int slot) {
+        return sequence[slot];
+    }
+
+    public float yaw(int slot) {
+        return yaw[slot];
+    }
+
+    public double velocityX(int slot) {
+        return velocityX[slot];
+    }
+
+    public double velocityY(int slot) {
+        return velocityY[slot];
+    }
+
+    public double velocityZ(int slot) {
+        return velocityZ[slot];
+    }
+
+    public double playerY(int slot) {
+        return playerY[slot];
+    }
+
+    public int flags(int slot) {
+        return flags[slot] & 0xFFFF;
+    }
+
+    public float distance(int slot, int cell) {
+        return arena.distance(slot * cells + cell);
+    }
+
+    public int blockState(int slot, int cell) {
+        return arena.blockState(slot * cells + cell);
+    }
+
+    /** Frees the vision arena once no slot is in use any more. */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // One slot's window into the vision arena
+    private final class SlotGrid implements VisionGrid {
+        private final int offset;
+
+        SlotGrid(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void set(int cell, float distance, int rawId) {
+            arena.set(offset + cell, distance, rawId);
+        }
+
+        @Override
+        public float distance(int cell) {
+            return arena.distance(offset + cell);
+        }
+
+        @Override
+        public int rawId(int cell) {
+            return arena.blockState(offset + cell);
+        }
+    }
+}
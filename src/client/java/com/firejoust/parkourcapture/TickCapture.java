@@ -0,0 +1,41 @@
+package com.firejoust.parkourcapture;
+
+import com.firejoust.parkourcapture.vision.BlockChanges;
+import com.firejoust.parkourcapture.vision.ParallelVisionEngine;
+import com.firejoust.parkourcapture.vision.VisionGrid;
+import com.firejoust.parkourcapture.vision.WorldSnapshot;
+import net.minecraft.block.ShapeContext;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Everything read from the client on the tick thread for one captured tick: player inputs and
+ * state plus an immutable {@link WorldSnapshot} and the block changes since the previous capture. {@link #traceVision} runs the
+ * vision raycasts on the given engine and may be called from any thread.
+ */
+public record TickCapture(
+    boolean inputForward,
+    boolean inputLeft,
+    boolean inputRight,
+    boolean inputBack,
+    boolean inputJump,
+    boolean inputSneak,
+    boolean inputSprint,
+    float yaw,
+    double velocityX,
+    double velocityY,
+    double velocityZ,
+    boolean isOnGround,
+    boolean isCollidedHorizontally,
+    boolean isCollidedVertically,
+    double playerY,
+    boolean isInFallZone,
+    Vec3d eyePos,
+    ShapeContext shapeContext,
+    WorldSnapshot world,
+    BlockChanges blockChanges
+) {
+
+    public void traceVision(ParallelVisionEngine engine, VisionGrid out) {
+        ParkourTickData.traceVision(this, engine, out);
+    }
+}
@@ -0,0 +1,164 @@
+package com.firejoust.parkourcapture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backing store for a {@link RunBuffer}'s vision grids: one float distance and one unsigned
+ * 16-bit block-state id per cell, addressed by {@code slot * cellsPerGrid + cell}.
+ * <p>
+ * {@link Kind#HEAP} keeps them in Java arrays. {@link Kind#DIRECT} keeps them off-heap in a
+ * single direct {@link ByteBuffer}, so long sessions do not grow the heap or the GC's work. All
+ * direct arenas together stay under a byte cap: an arena that would exceed it, or whose direct
+ * allocation fails, is instead backed by a memory-mapped temporary file that the OS pages to
+ * disk as needed.
+ * <p>
+ * The cap is advisory. It counts the arenas that are open, but a direct buffer's memory (or a
+ * spill file's mapping) is only given back once the closed arena's buffer is garbage collected,
+ * so actual off-heap use can run past the cap for a while after recordings end. Java 21 can
+ * only free either explicitly through the preview foreign memory API. The hard limit is the
+ * JVM's own {@code -XX:MaxDirectMemorySize}; allocations past it fail and spill as above.
+ */
+public abstract class VisionArena implements AutoCloseable {
+
+    public enum Kind {
+        HEAP,
+        DIRECT
+    }
+
+    // Direct bytes currently reserved by open arenas, checked against the configured cap
+    private static final AtomicLong DIRECT_BYTES = new AtomicLong();
+
+    public static VisionArena allocate(Kind kind, int cells, long maxDirectBytes) {
+        if (kind == Kind.HEAP) {
+            return new HeapArena(cells);
+        }
+        long bytes = (long) cells * (Float.BYTES + Short.BYTES);
+        if (DIRECT_BYTES.addAndGet(bytes) <= maxDirectBytes) {
+            try {
+                return new BufferArena(ByteBuffer.allocateDirect(Math.toIntExact(bytes)), cells, bytes, null);
+            } catch (OutOfMemoryError e) {
+                RLParkourCaptureClient.LOGGER.warn("Direct vision arena allocation of {} bytes failed; spilling to disk", bytes);
+            }
+        } else {
+            RLParkourCaptureClient.LOGGER.warn("Direct vision arenas would exceed {} bytes; spilling to disk", maxDirectBytes);
+        }
+        DIRECT_BYTES.addAndGet(-bytes);
+        return spill(cells, bytes);
+    }
+
+    private static VisionArena spill(int cells, long bytes) {
+        FileChannel channel = null;
+        try {
+            Path file = Files.createTempFile("parkourcapture-arena-", ".bin");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            return new BufferArena(mapped, cells, 0, channel);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            // Nowhere left to put it off-heap; fall back to the heap rather than fail the recording
+            RLParkourCaptureClient.LOGGER.error("Failed to create vision arena spill file; using the heap", e);
+            return new HeapArena(cells);
+        }
+    }
+
+    public abstract void set(int index, float distance, int rawId);
+
+    public abstract float distance(int index);
+
+    public abstract int blockState(int index);
+
+    /**
+     * Releases the arena's reservation against the cap and closes its spill file, which deletes
+     * it. The memory itself is freed once the buffer is collected. The arena must not be used
+     * afterwards; closing it again does nothing.
+     */
+    @Override
+    public void close() {}
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Only the temp file's deletion is lost; deleteOnClose failing is not worth surfacing
+            }
+        }
+    }
+
+    private static final class HeapArena extends VisionArena {
+        private final float[] distances;
+        private final short[] blockStates;
+
+        HeapArena(int cells) {
+            this.distances = new float[cells];
+            this.blockStates = new short[cells];
+        }
+
+        @Override
+        public void set(int index, float distance, int rawId) {
+            distances[index] = distance;
+            blockStates[index] = (short) rawId;
+        }
+
+        @Override
+        public float distance(int index) {
+            return distances[index];
+        }
+
+        @Override
+        public int blockState(int index) {
+            return blockStates[index] & 0xFFFF;
+        }
+    }
+
+    // Distances first, then block ids, in native byte order
+    private static final class BufferArena extends VisionArena {
+        // Dropped on close, so the memory goes with the next collection even if the arena is still referenced
+        private ByteBuffer buffer;
+        private final int blockOffset;
+        private final long reservedBytes;
+        private final FileChannel spillChannel;
+
+        BufferArena(ByteBuffer buffer, int cells, long reservedBytes, FileChannel spillChannel) {
+            this.buffer = buffer.order(ByteOrder.nativeOrder());
+            this.blockOffset = cells * Float.BYTES;
+            this.reservedBytes = reservedBytes;
+            this.spillChannel = spillChannel;
+        }
+
+        @Override
+        public void set(int index, float distance, int rawId) {
+            buffer.putFloat(index * Float.BYTES, distance);
+            buffer.putShort(blockOffset + index * Short.BYTES, (short) rawId);
+        }
+
+        @Override
+        public float distance(int index) {
+            return buffer.getFloat(index * Float.BYTES);
+        }
+
+        @Override
+        public int blockState(int index) {
+            return buffer.getShort(blockOffset + index * Short.BYTES) & 0xFFFF;
+        }
+
+        @Override
+        public void close() {
+            if (buffer == null) {
+                return;
+            }
+            buffer = null;
+            DIRECT_BYTES.addAndGet(-reservedBytes);
+            closeQuietly(spillChannel);
+        }
+    }
+}
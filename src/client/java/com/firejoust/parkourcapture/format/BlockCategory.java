@@ -0,0 +1,61 @@
+package com.firejoust.parkourcapture.format;
+
+import java.util.Map;
+
+/**
+ * Block categories used by the training data, mirroring {@code States} / {@code BlockTypeMap}
+ * in the data-normalizer. Every block not listed maps to {@link #DEFAULT}.
+ */
+public final class BlockCategory {
+
+    public static final byte DEFAULT = 0;
+    public static final byte LADDER = 1;
+    public static final byte VINE = 2;
+    public static final byte WATER = 3;
+    public static final byte LAVA = 4;
+    public static final byte SLIME = 5;
+    public static final byte COBWEB = 6;
+    public static final byte SOUL_SAND = 7;
+    public static final byte ICE = 8;
+    public static final byte BLUE_ICE = 9;
+    public static final byte HONEY = 10;
+
+    // Keyed by vanilla block name without namespace, as in minecraft-data
+    private static final Map<String, Byte> BY_BLOCK_NAME = Map.ofEntries(
+            Map.entry("ladder", LADDER),
+            Map.entry("vine", VINE),
+            Map.entry("twisting_vines", VINE),
+            Map.entry("twisting_vines_plant", VINE),
+            Map.entry("weeping_vines", VINE),
+            Map.entry("weeping_vines_plant", VINE),
+            Map.entry("water", WATER),
+            Map.entry("lava", LAVA),
+            Map.entry("slime_block", SLIME),
+            Map.entry("cobweb", COBWEB),
+            Map.entry("soul_sand", SOUL_SAND),
+            Map.entry("ice", ICE),
+            Map.entry("packed_ice", ICE),
+            Map.entry("blue_ice", BLUE_ICE),
+            Map.entry("honey_block", HONEY)
+    );
+
+    private BlockCategory() {}
+
+    /** Category of a vanilla block given its name without namespace, e.g. {@code "ladder"}. */
+    public static byte ofBlockName(String name) {
+        return BY_BLOCK_NAME.getOrDefault(name, DEFAULT);
+    }
+
+    /**
+     * Category of a block state given its registry string, as stored in a {@link Pkraw} palette,
+     * e.g. {@code "minecraft:ladder[facing=north,waterlogged=false]"}.
+     */
+    public static byte ofStateName(String state) {
+        int end = state.indexOf('[');
+        String block = end < 0 ? state : state.substring(0, end);
+        if (!block.startsWith("minecraft:")) {
+            return DEFAULT;
+        }
+        return ofBlockName(block.substring("minecraft:".length()));
+    }
+}
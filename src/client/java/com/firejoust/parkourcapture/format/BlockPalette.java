@@ -0,0 +1,54 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Per-run numbering of raw block-state ids in order of first appearance, written as the palette
+ * section of {@link Pkraw} and {@link Pkdelta} files.
+ */
+final class BlockPalette {
+
+    // Raw block-state id -> index + 1 (0 = not seen yet), and index -> raw id
+    private int[] indexByRawId = new int[1024];
+    private int[] rawIds = new int[256];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    int indexOf(int rawId) {
+        if (rawId >= indexByRawId.length) {
+            indexByRawId = Arrays.copyOf(indexByRawId, Math.max(rawId + 1, indexByRawId.length * 2));
+        }
+        int index = indexByRawId[rawId] - 1;
+        if (index < 0) {
+            if (size == rawIds.length) {
+                rawIds = Arrays.copyOf(rawIds, size * 2);
+            }
+            index = size++;
+            rawIds[index] = rawId;
+            indexByRawId[rawId] = index + 1;
+        }
+        return index;
+    }
+
+    /** Writes {@code u32 size}, then {@code i32 rawId, u16 nameLength, name} per entry. */
+    void write(ChecksummedOutput out, IntFunction<String> stateNames) throws IOException {
+        ByteBuffer buffer = out.buffer();
+        out.ensure(Integer.BYTES);
+        buffer.putInt(size);
+        for (int i = 0; i < size; i++) {
+            String name = stateNames.apply(rawIds[i]);
+            byte[] nameBytes = (name != null ? name : "").getBytes(StandardCharsets.UTF_8);
+            out.ensure(Integer.BYTES + Short.BYTES + nameBytes.length);
+            buffer.putInt(rawIds[i]);
+            buffer.putShort((short) nameBytes.length);
+            buffer.put(nameBytes);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Little-endian output to a file channel through one large buffer, keeping a CRC32C of every
+ * byte as the buffer is flushed. Callers {@link #ensure} room for a whole record, then put it
+ * straight into {@link #buffer}.
+ */
+final class ChecksummedOutput {
+
+    private FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+    private long flushed = 0;
+
+    ChecksummedOutput(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    FileChannel channel() {
+        return channel;
+    }
+
+    /** File offset the next byte put into the buffer will land at. */
+    long position() {
+        return flushed + buffer.position();
+    }
+
+    void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /** Zero-fills the buffer up to {@code end}, a buffer position. */
+    void padTo(int end) {
+        while (buffer.position() < end) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        flushed += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Flushes, then writes {@code length} bytes of {@code data} straight to the file, leaving them out of the CRC. */
+    void writeUnchecked(byte[] data, int length) throws IOException {
+        flush();
+        ByteBuffer wrapped = ByteBuffer.wrap(data, 0, length);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        flushed += length;
+    }
+
+    /** Flushes, then writes the CRC of everything before it and the trailer magic, and closes the channel. */
+    void finish(byte[] trailerMagic) throws IOException {
+        flush();
+        buffer.putInt((int) crc.getValue());
+        buffer.put(trailerMagic);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        channel.close();
+    }
+
+    /** Continues into a new, empty file; the CRC starts over. Anything still buffered is dropped. */
+    void restart(FileChannel newChannel) {
+        channel = newChannel;
+        buffer.clear();
+        crc.reset();
+        flushed = 0;
+    }
+
+    void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Only called on the way to deleting the file
+        }
+    }
+}
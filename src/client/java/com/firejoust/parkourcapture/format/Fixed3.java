@@ -0,0 +1,56 @@
+package com.firejoust.parkourcapture.format;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounding to three decimals as run JSON stores numbers: half-up on the shortest decimal form,
+ * which is what {@code BigDecimal.valueOf(value).setScale(3, HALF_UP)} does.
+ * <p>
+ * The JSON emitter writes numbers this way and the {@code PKDSEQ} helpers round with it before
+ * normalizing, so ticks exported live match what the data-normalizer reads back from the JSON.
+ * Rounding the binary value instead ({@code floor(|value| * 1000 + 0.5)}) is off by a thousandth
+ * next to decimal ties, where scaling by 1000 can land on the wrong side of {@code .5}; those
+ * values take the {@code BigDecimal} path and everything else stays allocation-free.
+ */
+public final class Fixed3 {
+
+    /** At or above this many thousandths the scaled value no longer fits a long exactly. */
+    public static final double MAX_UNITS = 1e15;
+    // The scaled value is off from 1000 times the shortest decimal by under two of its ulps, and
+    // an ulp is at most 2^-52 of the value, so this fraction of it covers four
+    private static final double TIE_MARGIN = 0x1p-50;
+
+    private Fixed3() {}
+
+    /**
+     * {@code |value|} in thousandths, rounded half-up. {@code value} must be finite and
+     * {@code |value| * 1000} below {@link #MAX_UNITS}.
+     */
+    public static long units(double value) {
+        double scaled = Math.abs(value) * 1000.0;
+        long whole = (long) scaled;
+        double fraction = scaled - whole;
+        // Within the margin of x.5, scaling errors could put the binary value on the other side of the tie than its decimal form
+        if (Math.abs(fraction - 0.5) <= scaled * TIE_MARGIN) {
+            return BigDecimal.valueOf(Math.abs(value)).setScale(3, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+        return fraction > 0.5 ? whole + 1 : whole;
+    }
+
+    /**
+     * {@code value} as it reads back from run JSON. NaN and infinities pass through, and zero is
+     * written unsigned, so this never returns {@code -0.0}.
+     */
+    public static double round(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        if (Math.abs(value) * 1000.0 >= MAX_UNITS) {
+            return BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP).doubleValue();
+        }
+        long units = units(value);
+        // units / 1000.0 is the double nearest the decimal, as parsing the JSON text gives
+        return units == 0 ? 0.0 : Math.copySign(units / 1000.0, value);
+    }
+}
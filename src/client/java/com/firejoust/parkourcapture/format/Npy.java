@@ -0,0 +1,206 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * NumPy {@code .npy} headers and uncompressed {@code .npz} bundles.
+ * <p>
+ * A {@code .npy} file is a magic string, a version, the length of a Python dict literal describing
+ * the array ({@code descr}, {@code fortran_order}, {@code shape}), the dict padded with spaces so the
+ * data starts on a 64-byte boundary, then the data in C order. Version 1.0 stores the dict length in
+ * a u16, 2.0 in a u32. An {@code .npz} is a zip of {@code <name>.npy} entries; stored entries are
+ * aligned to 64 bytes here as well.
+ */
+public final class Npy {
+
+    // --- dtypes, little-endian ---
+    public static final String FLOAT32 = "<f4";
+    public static final String INT32 = "<i4";
+    public static final String UINT8 = "|u1";
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private static final int ALIGNMENT = 64;
+    // Magic, version and a u16 dict length
+    private static final int V1_PREFIX = MAGIC.length + 2 + Short.BYTES;
+    private static final int V2_PREFIX = MAGIC.length + 2 + Integer.BYTES;
+
+    private static final int ZIP_LOCAL_HEADER = 30;
+    private static final int ZIP_CENTRAL_HEADER = 46;
+    private static final int ZIP_END_RECORD = 22;
+    // 1980-01-01 00:00, the earliest DOS date
+    private static final int ZIP_DOS_DATE = (1 << 5) | 1;
+    // Extra field id zipalign uses for padding
+    private static final int ZIP_PADDING_EXTRA = 0xD935;
+
+    private Npy() {}
+
+    /**
+     * A complete header for an array of {@code shape}, padded with spaces to at least
+     * {@code minLength} bytes and to a multiple of 64.
+     */
+    public static byte[] header(String descr, long[] shape, int minLength) {
+        StringBuilder dict = new StringBuilder("{'descr': '").append(descr)
+                .append("', 'fortran_order': False, 'shape': (");
+        for (int i = 0; i < shape.length; i++) {
+            dict.append(shape[i]);
+            if (i + 1 < shape.length || shape.length == 1) {
+                dict.append(',');
+            }
+            if (i + 1 < shape.length) {
+                dict.append(' ');
+            }
+        }
+        dict.append("), }");
+
+        // The dict ends in a newline, after the padding
+        int unpadded = V1_PREFIX + dict.length() + 1;
+        boolean v2 = false;
+        int length = align(Math.max(unpadded, minLength));
+        if (length - V1_PREFIX > 0xFFFF) {
+            v2 = true;
+            length = align(Math.max(V2_PREFIX + dict.length() + 1, minLength));
+        }
+        int prefix = v2 ? V2_PREFIX : V1_PREFIX;
+        ByteBuffer out = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(MAGIC);
+        out.put((byte) (v2 ? 2 : 1));
+        out.put((byte) 0);
+        if (v2) {
+            out.putInt(length - prefix);
+        } else {
+            out.putShort((short) (length - prefix));
+        }
+        out.put(dict.toString().getBytes(StandardCharsets.US_ASCII));
+        while (out.position() < length - 1) {
+            out.put((byte) ' ');
+        }
+        out.put((byte) '\n');
+        return out.array();
+    }
+
+    /**
+     * Writes {@code arrays}, complete {@code .npy} files, into an uncompressed {@code .npz} at
+     * {@code target}, as entries named after the files. Each file is read twice, for its CRC and
+     * to copy it; the copy goes through {@link FileChannel#transferTo}.
+     *
+     * @throws IOException if the bundle would need zip64, past 4 GiB
+     */
+    public static void writeNpz(Path target, List<Path> arrays) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            int centralCapacity = 0;
+            for (Path array : arrays) {
+                centralCapacity += ZIP_CENTRAL_HEADER + array.getFileName().toString().getBytes(StandardCharsets.UTF_8).length;
+            }
+            ByteBuffer central = ByteBuffer.allocate(centralCapacity).order(ByteOrder.LITTLE_ENDIAN);
+            long position = 0;
+            for (Path array : arrays) {
+                byte[] name = array.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+                try (FileChannel in = FileChannel.open(array, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    int crc = crc32(in);
+                    int unpadded = ZIP_LOCAL_HEADER + name.length;
+                    int extra = (int) (align(position + unpadded) - (position + unpadded));
+                    if (extra > 0 && extra < 4) {
+                        extra += ALIGNMENT;
+                    }
+                    if (position + unpadded + extra + size > 0xFFFFFFFFL) {
+                        throw new IOException("Bundle would pass 4 GiB; keep the .npy arrays instead");
+                    }
+
+                    ByteBuffer local = ByteBuffer.allocate(unpadded + extra).order(ByteOrder.LITTLE_ENDIAN);
+                    local.putInt(0x04034B50);
+                    putEntryFields(local, crc, size, name.length, extra);
+                    local.put(name);
+                    if (extra > 0) {
+                        local.putShort((short) ZIP_PADDING_EXTRA);
+                        local.putShort((short) (extra - 4));
+                        local.position(local.capacity());
+                    }
+                    local.flip();
+                    long localOffset = position;
+                    position += writeFully(out, local, position);
+                    for (long copied = 0; copied < size; ) {
+                        copied += in.transferTo(copied, size - copied, out.position(position + copied));
+                    }
+                    position += size;
+
+                    central.putInt(0x02014B50);
+                    central.putShort((short) 20);
+                    putEntryFields(central, crc, size, name.length, 0);
+                    central.putShort((short) 0);
+                    central.putShort((short) 0);
+                    central.putShort((short) 0);
+                    central.putInt(0);
+                    central.putInt((int) localOffset);
+                    central.put(name);
+                }
+            }
+
+            central.flip();
+            int centralSize = central.remaining();
+            long centralOffset = position;
+            position += writeFully(out, central, position);
+            ByteBuffer end = ByteBuffer.allocate(ZIP_END_RECORD).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(0x06054B50);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) arrays.size());
+            end.putShort((short) arrays.size());
+            end.putInt(centralSize);
+            end.putInt((int) centralOffset);
+            end.putShort((short) 0);
+            writeFully(out, end.flip(), position);
+        }
+    }
+
+    // Version needed through extra length, shared by local and central headers
+    private static void putEntryFields(ByteBuffer out, int crc, long size, int nameLength, int extraLength) {
+        out.putShort((short) 20);
+        out.putShort((short) 0);
+        out.putShort((short) 0);
+        out.putShort((short) 0);
+        out.putShort((short) ZIP_DOS_DATE);
+        out.putInt(crc);
+        out.putInt((int) size);
+        out.putInt((int) size);
+        out.putShort((short) nameLength);
+        out.putShort((short) extraLength);
+    }
+
+    private static int crc32(FileChannel in) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 20);
+        long position = 0;
+        int n;
+        while ((n = in.read(chunk.clear(), position)) > 0) {
+            crc.update(chunk.flip());
+            position += n;
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+        return length;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,105 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One {@code .npy} file written row by row while the row count is still unknown. Room for the
+ * header is reserved up front, sized for the largest count, and the header is filled in by
+ * {@link #finish}.
+ */
+final class NpyArrayFile {
+
+    private static final int BUFFER_SIZE = 1 << 18;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final String descr;
+    private final long[] shape;
+    private final int headerLength;
+    private final int rowBytes;
+    private long rows = 0;
+
+    /**
+     * @param rowShape shape of one row, empty for a 1-d array
+     * @param itemSize bytes per element of {@code descr}
+     */
+    NpyArrayFile(Path path, String descr, int[] rowShape, int itemSize) throws IOException {
+        this.path = path;
+        this.descr = descr;
+        this.shape = new long[rowShape.length + 1];
+        int elements = 1;
+        for (int i = 0; i < rowShape.length; i++) {
+            shape[i + 1] = rowShape[i];
+            elements *= rowShape[i];
+        }
+        this.rowBytes = elements * itemSize;
+        shape[0] = Long.MAX_VALUE;
+        this.headerLength = Npy.header(descr, shape, 0).length;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        buffer.position(headerLength);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    /** Room for one row; put exactly one row's bytes into the returned buffer, then call {@link #endRow}. */
+    ByteBuffer beginRow() throws IOException {
+        if (buffer.remaining() < rowBytes) {
+            flush();
+        }
+        return buffer;
+    }
+
+    void endRow() {
+        rows++;
+    }
+
+    /** Keeps the first {@code rows} rows. */
+    void truncate(long rows) throws IOException {
+        if (rows < this.rows) {
+            flush();
+            channel.truncate(headerLength + rows * rowBytes);
+            channel.position(headerLength + rows * rowBytes);
+            this.rows = rows;
+        }
+    }
+
+    /** Flushes the rows, writes the header with the final row count, and closes the file. */
+    void finish() throws IOException {
+        flush();
+        shape[0] = rows;
+        ByteBuffer header = ByteBuffer.wrap(Npy.header(descr, shape, headerLength));
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.close();
+    }
+
+    void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Only called on the way to deleting the file
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,79 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line export of {@link Pkraw} files to NumPy arrays, as {@link NpyRunWriter} writes them
+ * while recording:
+ * <pre>
+ * java -cp parkourcapture.jar com.firejoust.parkourcapture.format.NpyExport [--npz] run.pkraw...
+ * </pre>
+ * Each {@code <name>.pkraw} becomes a {@code <name>.arrays} directory, or {@code <name>.npz} with
+ * {@code --npz}, next to it. Block categories come from the palette's registry strings, so files
+ * recorded by any game version export alike.
+ */
+public final class NpyExport {
+
+    private NpyExport() {}
+
+    public static void main(String[] args) {
+        boolean bundle = false;
+        List<Path> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--npz")) {
+                bundle = true;
+            } else {
+                inputs.add(Path.of(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: NpyExport [--npz] <run.pkraw>...");
+            System.exit(2);
+        }
+
+        int failed = 0;
+        for (Path input : inputs) {
+            try {
+                Path target = export(input, bundle);
+                System.out.println(input + " -> " + target);
+            } catch (IOException | RuntimeException e) {
+                System.err.println(input + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /** Exports one file next to itself and returns the array directory or bundle written. */
+    public static Path export(Path input, boolean bundle) throws IOException {
+        String name = input.getFileName().toString();
+        String baseName = name.endsWith(".pkraw") ? name.substring(0, name.length() - ".pkraw".length()) : name;
+        Path target = input.resolveSibling(baseName + (bundle ? ".npz" : ".arrays"));
+        try (RunReader reader = RunReader.open(input)) {
+            int maxRawId = 0;
+            for (int i = 0; i < reader.paletteSize(); i++) {
+                maxRawId = Math.max(maxRawId, reader.paletteRawId(i));
+            }
+            byte[] categories = new byte[maxRawId + 1];
+            for (int i = 0; i < reader.paletteSize(); i++) {
+                categories[reader.paletteRawId(i)] = BlockCategory.ofStateName(reader.paletteName(i));
+            }
+
+            NpyRunWriter writer = NpyRunWriter.open(target, bundle, reader.width(), reader.height(),
+                    reader.targetYaw(), reader.fallZoneY(), rawId -> categories[rawId]);
+            try {
+                for (RunReader.Tick tick : reader) {
+                    writer.append(tick);
+                }
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            }
+            writer.finish(reader.stopTimestampMillis(), reader.validTicks());
+        }
+        return target;
+    }
+}
@@ -0,0 +1,202 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Writes a run as NumPy arrays while it is recorded, one {@code .npy} file each:
+ * <ul>
+ *   <li>{@code vision_dist} – {@code float32[T, height, width]}, distances in blocks</li>
+ *   <li>{@code vision_block} – {@code uint8[T, height, width]}, {@link BlockCategory} of each cell</li>
+ *   <li>{@code proprio} – {@code float32[T, 8]}, as {@link Pkdseq#proprio} computes it</li>
+ *   <li>{@code actions} – {@code uint8[T]}, as {@link Pkdseq#actionByte} packs it</li>
+ *   <li>{@code window_starts} – {@code int32[W]}, first tick of every {@link Pkdseq#K}-tick window
+ *       without a dropped tick in it, so K-stacked samples can be sliced without storing them</li>
+ * </ul>
+ * {@code T} is the run's valid ticks ({@code dn}); the rest are cut off by {@link #finish}. The
+ * arrays are written to {@code <name>.part/} and either moved into place as a directory or packed
+ * into an uncompressed {@code .npz}, whose entries stay 64-byte aligned.
+ * <p>
+ * Not thread-safe; ticks must be appended in run order from one thread.
+ */
+public final class NpyRunWriter implements RunExport {
+
+    public static final String VISION_DIST = "vision_dist.npy";
+    public static final String VISION_BLOCK = "vision_block.npy";
+    public static final String PROPRIO = "proprio.npy";
+    public static final String ACTIONS = "actions.npy";
+    public static final String WINDOW_STARTS = "window_starts.npy";
+
+    private final Path target;
+    private final boolean bundle;
+    private final Path partial;
+    private final int width;
+    private final int height;
+    private final float targetYaw;
+    private final int fallZoneY;
+    private final IntUnaryOperator categoryOf;
+    private final List<NpyArrayFile> arrays = new ArrayList<>();
+    private final NpyArrayFile distances;
+    private final NpyArrayFile blocks;
+    private final NpyArrayFile proprio;
+    private final NpyArrayFile actions;
+    private final float[] proprioRow = new float[Pkdseq.PROPRIO_SIZE];
+
+    // Window starts are kept in memory and written by finish, once dn is known
+    private int[] windowStarts = new int[1024];
+    private int windowCount = 0;
+    private long previousSequence = Long.MIN_VALUE;
+    private int consecutive = 0;
+    private int tickCount = 0;
+
+    private NpyRunWriter(Path target, boolean bundle, int width, int height, float targetYaw, int fallZoneY,
+                         IntUnaryOperator categoryOf) throws IOException {
+        this.target = target;
+        this.bundle = bundle;
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+        this.width = width;
+        this.height = height;
+        this.targetYaw = targetYaw;
+        this.fallZoneY = fallZoneY;
+        this.categoryOf = categoryOf;
+        Files.createDirectories(partial);
+        this.distances = add(VISION_DIST, Npy.FLOAT32, new int[]{height, width}, Float.BYTES);
+        this.blocks = add(VISION_BLOCK, Npy.UINT8, new int[]{height, width}, 1);
+        this.proprio = add(PROPRIO, Npy.FLOAT32, new int[]{Pkdseq.PROPRIO_SIZE}, Float.BYTES);
+        this.actions = add(ACTIONS, Npy.UINT8, new int[0], 1);
+    }
+
+    /**
+     * Creates the partial directory and its array files.
+     *
+     * @param target     directory to move the arrays to, or the {@code .npz} file if {@code bundle}
+     * @param categoryOf {@link BlockCategory} of a raw block-state id
+     */
+    public static NpyRunWriter open(Path target, boolean bundle, int width, int height, float targetYaw, int fallZoneY,
+                                    IntUnaryOperator categoryOf) throws IOException {
+        return new NpyRunWriter(target, bundle, width, height, targetYaw, fallZoneY, categoryOf);
+    }
+
+    @Override
+    public Path target() {
+        return target;
+    }
+
+    @Override
+    public void append(RunTick tick) throws IOException {
+        if (tick.visionWidth() != width || tick.visionHeight() != height) {
+            throw new IOException("Tick grid is " + tick.visionWidth() + "x" + tick.visionHeight()
+                    + ", file grid is " + width + "x" + height);
+        }
+        ByteBuffer out = distances.beginRow();
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                out.putFloat(tick.visionDistance(r, c));
+            }
+        }
+        distances.endRow();
+        out = blocks.beginRow();
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                out.put((byte) categoryOf.applyAsInt(tick.visionBlockState(r, c)));
+            }
+        }
+        blocks.endRow();
+        Pkdseq.proprio(tick, targetYaw, fallZoneY, proprioRow, 0);
+        out = proprio.beginRow();
+        for (float value : proprioRow) {
+            out.putFloat(value);
+        }
+        proprio.endRow();
+        actions.beginRow().put((byte) Pkdseq.actionByte(tick));
+        actions.endRow();
+
+        consecutive = tick.sequence() == previousSequence + 1 ? consecutive + 1 : 1;
+        previousSequence = tick.sequence();
+        if (consecutive >= Pkdseq.K) {
+            if (windowCount == windowStarts.length) {
+                windowStarts = Arrays.copyOf(windowStarts, windowCount * 2);
+            }
+            windowStarts[windowCount++] = tickCount - Pkdseq.K + 1;
+        }
+        tickCount++;
+    }
+
+    @Override
+    public void finish(long stopTimestampMillis, int validTicks) throws IOException {
+        try {
+            int kept = Math.min(validTicks, tickCount);
+            for (NpyArrayFile array : arrays) {
+                array.truncate(kept);
+                array.finish();
+            }
+            NpyArrayFile windows = new NpyArrayFile(partial.resolve(WINDOW_STARTS), Npy.INT32, new int[0], Integer.BYTES);
+            arrays.add(windows);
+            for (int i = 0; i < windowCount && windowStarts[i] + Pkdseq.K <= kept; i++) {
+                windows.beginRow().putInt(windowStarts[i]);
+                windows.endRow();
+            }
+            windows.finish();
+
+            if (bundle) {
+                Path zip = target.resolveSibling(target.getFileName() + ".part.npz");
+                try {
+                    Npy.writeNpz(zip, arrays.stream().map(NpyArrayFile::path).toList());
+                    Files.move(zip, target, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(zip);
+                }
+                deleteTree(partial);
+            } else {
+                Files.move(partial, target);
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort() {
+        for (NpyArrayFile array : arrays) {
+            array.closeQuietly();
+        }
+        try {
+            deleteTree(partial);
+        } catch (IOException ignored) {
+            // Leaves a stray .part directory behind, which no reader picks up
+        }
+    }
+
+    private NpyArrayFile add(String name, String descr, int[] rowShape, int itemSize) throws IOException {
+        NpyArrayFile array;
+        try {
+            array = new NpyArrayFile(partial.resolve(name), descr, rowShape, itemSize);
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        arrays.add(array);
+        return array;
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,201 @@
+package com.firejoust.parkourcapture.format;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the {@code PKDLT} format: the records of a {@link Pkraw} file with the two grids
+ * encoded against the previous tick, in independently deflated blocks. Consecutive grids are mostly
+ * identical, so a tick costs a few hundred bytes instead of a full record, at the price of fixed
+ * offsets: a tick is read by inflating its block and decoding forward from the block's first tick,
+ * a keyframe, at most {@code ticksPerBlock - 1} ticks.
+ * <pre>
+ * Header  (Pkraw header layout, with)
+ *   0  "PKDLT"            5 bytes
+ *   5  version            u8
+ *  10  ticksPerBlock      u16   every block but the last holds this many ticks
+ *  12  decodedStride      u32   stride of a decoded tick, a Pkraw record with two-byte block indices
+ *
+ * Blocks  (from headerSize on, back to back), each a zlib stream of its ticks:
+ *   0  length             u32   bytes after this field
+ *   4  kind               u8    KEYFRAME for a block's first tick, DELTA after it
+ *   5  scalars            the first 32 bytes of a Pkraw record, as is
+ *  37  distances          channel, see below; quantized as in Pkraw
+ *  ..  blocks             channel; palette indices
+ *
+ * Palette (at paletteOffset, right after the last block), as in Pkraw
+ *
+ * Block index (at indexOffset, right after the palette)
+ *      count              u32, then per block (INDEX_ENTRY_SIZE bytes):
+ *   0  firstTick          u32
+ *   4  tickCount          u32   ticks of the block that are part of the run; may be fewer than it holds
+ *   8  offset             u64
+ *  16  compressedLength   u32
+ *  20  rawLength          u32
+ *  24  crc                u32   CRC32C of the compressed bytes
+ *  28  reserved           u32
+ *
+ * Trailer (last TRAILER_SIZE bytes)
+ *   0  indexOffset        u64
+ *   8  paletteOffset      u64
+ *  16  te                 i64   stop timestamp, ms
+ *  24  tickCount          u32
+ *  28  validTicks         u32   the run's dn
+ *  32  crc                u32   CRC32C of the header, then every byte from paletteOffset up to it
+ *  36  "PKDE"             4 bytes
+ * </pre>
+ * Blocks carry their own checksums, so dropping ticks from the end only rewrites what follows the
+ * last kept block; see {@link PkdeltaWriter#truncate}.
+ * <p>
+ * A channel is the grid's cells in row-major order as varint tokens. Each cell has a reference: the
+ * same cell of the previous tick in a delta, the cell before it in a keyframe (0 for the first).
+ * A token {@code n << 1} is a run of {@code n} cells equal to their reference; {@code n << 1 | 1}
+ * is followed by {@code n} varints, one per cell: the zigzagged difference from the reference for
+ * distances, the XOR with it for block indices.
+ */
+public final class Pkdelta {
+
+    public static final byte[] MAGIC = {'P', 'K', 'D', 'L', 'T'};
+    public static final byte[] TRAILER_MAGIC = {'P', 'K', 'D', 'E'};
+    public static final int VERSION = 2;
+
+    public static final int KEYFRAME = 0;
+    public static final int DELTA = 1;
+
+    public static final int TRAILER_SIZE = 40;
+    public static final int INDEX_ENTRY_SIZE = 32;
+
+    /** Header offset of the ticks per block, Pkraw's block index width. */
+    public static final int HEADER_TICKS_PER_BLOCK = Pkraw.HEADER_BLOCK_INDEX_BYTES;
+
+    // --- Trailer offsets ---
+    public static final int TRAILER_INDEX_OFFSET = 0;
+    public static final int TRAILER_PALETTE_OFFSET = 8;
+    public static final int TRAILER_STOP_TIMESTAMP = 16;
+    public static final int TRAILER_TICK_COUNT = 24;
+    public static final int TRAILER_VALID_TICKS = 28;
+    public static final int TRAILER_CRC = 32;
+    public static final int TRAILER_MAGIC_OFFSET = 36;
+
+    // --- Index entry offsets ---
+    public static final int ENTRY_FIRST_TICK = 0;
+    public static final int ENTRY_TICK_COUNT = 4;
+    public static final int ENTRY_OFFSET = 8;
+    public static final int ENTRY_COMPRESSED_LENGTH = 16;
+    public static final int ENTRY_RAW_LENGTH = 20;
+    public static final int ENTRY_CRC = 24;
+
+    /** Offset of a tick's scalars from the start of its record. */
+    public static final int TICK_SCALARS = Integer.BYTES + 1;
+
+    private Pkdelta() {}
+
+    /** Bytes needed to encode one tick in the worst case, length field included. */
+    public static int maxTickSize(int cells) {
+        // Per channel: a varint of at most 3 bytes per cell, plus a token per run of at most 5 bytes
+        int channel = cells * 3 + (cells + 1) * 5;
+        return TICK_SCALARS + Pkraw.TICK_DISTANCES + 2 * channel;
+    }
+
+    /**
+     * Encodes {@code values} as a channel. A delta is taken against {@code previous}, a keyframe
+     * when it is null.
+     *
+     * @param xor whether literals are the XOR with the reference rather than the difference
+     */
+    public static void encodeChannel(ByteBuffer out, short[] values, short[] previous, int cells, boolean xor) {
+        int cell = 0;
+        while (cell < cells) {
+            int run = cell;
+            while (run < cells && values[run] == reference(values, previous, run)) {
+                run++;
+            }
+            if (run > cell) {
+                putVarint(out, (run - cell) << 1);
+                cell = run;
+                continue;
+            }
+            int literals = cell;
+            while (literals < cells && values[literals] != reference(values, previous, literals)) {
+                literals++;
+            }
+            putVarint(out, (literals - cell) << 1 | 1);
+            for (; cell < literals; cell++) {
+                int value = values[cell] & 0xFFFF;
+                int ref = reference(values, previous, cell) & 0xFFFF;
+                putVarint(out, xor ? value ^ ref : zigzag((short) (value - ref)));
+            }
+        }
+    }
+
+    /**
+     * Decodes a channel written by {@link #encodeChannel} into {@code values}, which must hold the
+     * previous tick's channel for a delta.
+     *
+     * @throws IllegalArgumentException if the tokens do not cover exactly {@code cells} cells
+     */
+    public static void decodeChannel(ByteBuffer in, short[] values, boolean keyframe, int cells, boolean xor) {
+        try {
+            int cell = 0;
+            while (cell < cells) {
+                int token = getVarint(in);
+                int end = cell + (token >>> 1);
+                if (end > cells || end == cell) {
+                    throw new IllegalArgumentException("Run of " + (token >>> 1) + " cells at cell " + cell);
+                }
+                if ((token & 1) == 0) {
+                    if (keyframe) {
+                        short ref = cell == 0 ? 0 : values[cell - 1];
+                        for (; cell < end; cell++) {
+                            values[cell] = ref;
+                        }
+                    }
+                    cell = end;
+                } else {
+                    for (; cell < end; cell++) {
+                        int ref = (keyframe ? (cell == 0 ? 0 : values[cell - 1]) : values[cell]) & 0xFFFF;
+                        int stored = getVarint(in);
+                        values[cell] = (short) (xor ? ref ^ stored : ref + unzigzag(stored));
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Channel ends early", e);
+        }
+    }
+
+    private static short reference(short[] values, short[] previous, int cell) {
+        if (previous != null) {
+            return previous[cell];
+        }
+        return cell == 0 ? 0 : values[cell - 1];
+    }
+
+    private static int zigzag(short value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 5 bytes");
+    }
+}
@@ -0,0 +1,344 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a {@link Pkdelta} file, decoding ticks back into {@link Pkraw} records with two-byte block
+ * indices.
+ * <p>
+ * The file is memory-mapped. Reading tick {@code n} inflates its block, checking the block's CRC,
+ * and decodes forward from the block's first tick, unless the last tick read is already on the way;
+ * reading in order inflates and decodes everything once. Not thread-safe; give each thread its own
+ * reader.
+ */
+public final class PkdeltaReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final ByteBuffer file;
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final int ticksPerBlock;
+    private final int decodedStride;
+    private final int headerSize;
+    private final long startTimestampMillis;
+    private final float targetYaw;
+    private final int fallZoneY;
+    private final float rayDistance;
+    private final String serverIp;
+    private final long stopTimestampMillis;
+    private final int tickCount;
+    private final int validTicks;
+    private final int paletteOffset;
+    private final int checksumEnd;
+    private final int checksum;
+    private final ByteBuffer index;
+    private final int blockCount;
+    private final int[] paletteRawIds;
+    private final String[] paletteNames;
+
+    // Decoder state: the inflated block, the last tick decoded, and where the one after it starts
+    private final Inflater inflater = new Inflater();
+    private byte[] raw = new byte[0];
+    private ByteBuffer rawBuffer = ByteBuffer.wrap(raw);
+    private int loadedBlock = -1;
+    private final short[] distances;
+    private final short[] blockIndices;
+    private final byte[] scalars = new byte[Pkraw.TICK_DISTANCES];
+    private int decoded = -1;
+    private int next;
+
+    private PkdeltaReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File of " + size + " bytes is too large to map");
+        }
+        if (size < Pkraw.HEADER_SERVER_IP + Short.BYTES + Pkdelta.TRAILER_SIZE) {
+            throw new IOException("File of " + size + " bytes is too short");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        this.file = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        byte[] magic = new byte[Pkdelta.MAGIC.length];
+        file.get(0, magic);
+        if (!Arrays.equals(magic, Pkdelta.MAGIC) || file.get(Pkdelta.MAGIC.length) != Pkdelta.VERSION) {
+            throw new IOException("Not a PKDLT v" + Pkdelta.VERSION + " file");
+        }
+        int trailer = (int) size - Pkdelta.TRAILER_SIZE;
+        byte[] trailerMagic = new byte[Pkdelta.TRAILER_MAGIC.length];
+        file.get(trailer + Pkdelta.TRAILER_MAGIC_OFFSET, trailerMagic);
+        if (!Arrays.equals(trailerMagic, Pkdelta.TRAILER_MAGIC)) {
+            throw new IOException("Missing trailer; the file was not finished");
+        }
+
+        this.width = Short.toUnsignedInt(file.getShort(Pkraw.HEADER_GRID_WIDTH));
+        this.height = Short.toUnsignedInt(file.getShort(Pkraw.HEADER_GRID_HEIGHT));
+        this.cells = width * height;
+        this.ticksPerBlock = Short.toUnsignedInt(file.getShort(Pkdelta.HEADER_TICKS_PER_BLOCK));
+        this.decodedStride = file.getInt(Pkraw.HEADER_TICK_STRIDE);
+        this.startTimestampMillis = file.getLong(Pkraw.HEADER_START_TIMESTAMP);
+        this.targetYaw = file.getFloat(Pkraw.HEADER_TARGET_YAW);
+        this.fallZoneY = file.getInt(Pkraw.HEADER_FALL_ZONE_Y);
+        this.rayDistance = file.getFloat(Pkraw.HEADER_RAY_DISTANCE);
+        this.headerSize = file.getInt(Pkraw.HEADER_SIZE_FIELD);
+        byte[] ip = new byte[Short.toUnsignedInt(file.getShort(Pkraw.HEADER_SERVER_IP))];
+        file.get(Pkraw.HEADER_SERVER_IP + Short.BYTES, ip);
+        this.serverIp = new String(ip, StandardCharsets.UTF_8);
+
+        long indexOffset = file.getLong(trailer + Pkdelta.TRAILER_INDEX_OFFSET);
+        long paletteOffset = file.getLong(trailer + Pkdelta.TRAILER_PALETTE_OFFSET);
+        this.stopTimestampMillis = file.getLong(trailer + Pkdelta.TRAILER_STOP_TIMESTAMP);
+        this.tickCount = file.getInt(trailer + Pkdelta.TRAILER_TICK_COUNT);
+        this.validTicks = file.getInt(trailer + Pkdelta.TRAILER_VALID_TICKS);
+        this.checksum = file.getInt(trailer + Pkdelta.TRAILER_CRC);
+        this.checksumEnd = trailer + Pkdelta.TRAILER_CRC;
+        if (ticksPerBlock == 0 || headerSize > paletteOffset || paletteOffset > indexOffset
+                || indexOffset + Integer.BYTES > trailer) {
+            throw new IOException("Corrupt header or trailer");
+        }
+        this.paletteOffset = (int) paletteOffset;
+
+        this.blockCount = file.getInt((int) indexOffset);
+        if (blockCount != (tickCount + ticksPerBlock - 1) / ticksPerBlock
+                || indexOffset + Integer.BYTES + (long) blockCount * Pkdelta.INDEX_ENTRY_SIZE != trailer) {
+            throw new IOException(blockCount + " blocks indexed for " + tickCount + " ticks");
+        }
+        this.index = file.slice((int) indexOffset + Integer.BYTES, blockCount * Pkdelta.INDEX_ENTRY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer palette = file.slice(this.paletteOffset, (int) (indexOffset - paletteOffset)).order(ByteOrder.LITTLE_ENDIAN);
+        int paletteSize = palette.getInt();
+        this.paletteRawIds = new int[paletteSize];
+        this.paletteNames = new String[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            paletteRawIds[i] = palette.getInt();
+            byte[] name = new byte[Short.toUnsignedInt(palette.getShort())];
+            palette.get(name);
+            paletteNames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        this.distances = new short[cells];
+        this.blockIndices = new short[cells];
+    }
+
+    public static PkdeltaReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PkdeltaReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Whether the stored CRC32Cs match the file, the trailer's and every block's. Reads the whole file. */
+    public boolean verifyChecksums() {
+        CRC32C crc = new CRC32C();
+        crc.update(file.slice(0, headerSize));
+        crc.update(file.slice(paletteOffset, checksumEnd - paletteOffset));
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+        for (int block = 0; block < blockCount; block++) {
+            if (!blockChecksumMatches(block)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes tick {@code index} into {@code record} at its position, as a {@link Pkraw} record
+     * of {@link #decodedStride} bytes with two-byte block indices, and advances the position.
+     *
+     * @throws IOException if the tick's block fails its checksum or its encoding is corrupt
+     */
+    public void readTick(int index, ByteBuffer record) throws IOException {
+        if (index < 0 || index >= tickCount) {
+            throw new IndexOutOfBoundsException("Tick " + index + " of " + tickCount);
+        }
+        int block = index / ticksPerBlock;
+        if (block != loadedBlock) {
+            loadBlock(block);
+        }
+        if (decoded < 0 || index < decoded) {
+            decoded = block * ticksPerBlock - 1;
+            next = 0;
+        }
+        while (decoded < index) {
+            decodeNext(next == 0);
+        }
+
+        ByteOrder order = record.order();
+        record.order(ByteOrder.LITTLE_ENDIAN);
+        int start = record.position();
+        record.put(scalars);
+        for (int cell = 0; cell < cells; cell++) {
+            record.putShort(distances[cell]);
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            record.putShort(blockIndices[cell]);
+        }
+        while (record.position() < start + decodedStride) {
+            record.put((byte) 0);
+        }
+        record.order(order);
+    }
+
+    private boolean blockChecksumMatches(int block) {
+        int entry = block * Pkdelta.INDEX_ENTRY_SIZE;
+        long offset = index.getLong(entry + Pkdelta.ENTRY_OFFSET);
+        int length = index.getInt(entry + Pkdelta.ENTRY_COMPRESSED_LENGTH);
+        if (offset < headerSize || length < 0 || offset + length > paletteOffset) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(file.slice((int) offset, length));
+        return (int) crc.getValue() == index.getInt(entry + Pkdelta.ENTRY_CRC);
+    }
+
+    private void loadBlock(int block) throws IOException {
+        loadedBlock = -1;
+        decoded = -1;
+        if (!blockChecksumMatches(block)) {
+            throw new IOException("Block " + block + " fails its checksum");
+        }
+        int entry = block * Pkdelta.INDEX_ENTRY_SIZE;
+        int offset = (int) index.getLong(entry + Pkdelta.ENTRY_OFFSET);
+        int length = index.getInt(entry + Pkdelta.ENTRY_COMPRESSED_LENGTH);
+        int rawLength = index.getInt(entry + Pkdelta.ENTRY_RAW_LENGTH);
+        if (rawLength < 0) {
+            throw new IOException("Block " + block + " has a bad length");
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+            rawBuffer = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        inflater.reset();
+        inflater.setInput(file.slice(offset, length));
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != rawLength) {
+                throw new IOException("Block " + block + " inflates to " + inflated + " bytes, expected " + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " is corrupt", e);
+        }
+        rawBuffer.limit(rawLength);
+        loadedBlock = block;
+    }
+
+    private void decodeNext(boolean expectKeyframe) throws IOException {
+        int length = next + Integer.BYTES <= rawBuffer.limit() ? rawBuffer.getInt(next) : -1;
+        if (length < Pkdelta.TICK_SCALARS - Integer.BYTES + scalars.length
+                || next + Integer.BYTES + length > rawBuffer.limit()) {
+            throw new IOException("Tick " + (decoded + 1) + " has a bad length");
+        }
+        ByteBuffer tick = rawBuffer.slice(next + Integer.BYTES, length).order(ByteOrder.LITTLE_ENDIAN);
+        int kind = tick.get();
+        if (kind != (expectKeyframe ? Pkdelta.KEYFRAME : Pkdelta.DELTA)) {
+            throw new IOException("Tick " + (decoded + 1) + " has kind " + kind);
+        }
+        tick.get(scalars);
+        try {
+            Pkdelta.decodeChannel(tick, distances, expectKeyframe, cells, false);
+            Pkdelta.decodeChannel(tick, blockIndices, expectKeyframe, cells, true);
+        } catch (IllegalArgumentException e) {
+            int failed = decoded + 1;
+            // The grids are half-decoded; the next read starts over from the block's keyframe
+            decoded = -1;
+            throw new IOException("Tick " + failed + " is corrupt", e);
+        }
+        next += Integer.BYTES + length;
+        decoded++;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /** Ticks per block, the most a random read decodes. */
+    public int ticksPerBlock() {
+        return ticksPerBlock;
+    }
+
+    /** Size of a record written by {@link #readTick}. */
+    public int decodedStride() {
+        return decodedStride;
+    }
+
+    public long startTimestampMillis() {
+        return startTimestampMillis;
+    }
+
+    public long stopTimestampMillis() {
+        return stopTimestampMillis;
+    }
+
+    public String serverIp() {
+        return serverIp;
+    }
+
+    public float targetYaw() {
+        return targetYaw;
+    }
+
+    public int fallZoneY() {
+        return fallZoneY;
+    }
+
+    public float rayDistance() {
+        return rayDistance;
+    }
+
+    public int tickCount() {
+        return tickCount;
+    }
+
+    public int validTicks() {
+        return validTicks;
+    }
+
+    public int paletteSize() {
+        return paletteRawIds.length;
+    }
+
+    /** Registry string of palette entry {@code index}. */
+    public String paletteName(int index) {
+        return paletteNames[index];
+    }
+
+    /** Raw block-state id palette entry {@code index} had in the game that recorded the run. */
+    public int paletteRawId(int index) {
+        return paletteRawIds[index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+}
@@ -0,0 +1,351 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a run as a {@link Pkdelta} file while it is recorded.
+ * <p>
+ * Keeps the previous tick's quantized distances and palette indices to encode the next one
+ * against, starting over from a keyframe with every block. A full block is handed to the
+ * compression executor and written once it comes back, in order; up to {@link #MAX_PENDING_BLOCKS}
+ * are compressed at once, so the writer thread only encodes. Otherwise written like
+ * {@link PkrawWriter}: one buffer, CRC taken as it is flushed, {@code <name>.part} until
+ * {@link #finish}.
+ * <p>
+ * Not thread-safe; ticks must be appended in run order from one thread.
+ */
+public final class PkdeltaWriter implements RunExport {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Blocks handed to the executor and not yet written; past this, appending waits for the oldest
+    private static final int MAX_PENDING_BLOCKS = 8;
+
+    private record Block(int firstTick, int tickCount, byte[] compressed, int compressedLength, int rawLength,
+                         int crc, ByteBuffer raw) {}
+
+    private final Path target;
+    private final Path partial;
+    private final ChecksummedOutput out;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final float rayDistance;
+    private final int ticksPerBlock;
+    private final int deflateLevel;
+    private final Executor compressor;
+    private final IntFunction<String> stateNames;
+    private final int maxTickSize;
+    private final BlockPalette palette = new BlockPalette();
+
+    private short[] distances;
+    private short[] blockIndices;
+    private short[] previousDistances;
+    private short[] previousBlockIndices;
+    private int tickCount = 0;
+
+    // The block being filled, and raw buffers of written blocks to fill again
+    private ByteBuffer block;
+    private int blockTicks = 0;
+    private final ArrayDeque<ByteBuffer> spareBlocks = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<Block>> pending = new ArrayDeque<>();
+
+    // Block index, one entry per written block
+    private ByteBuffer indexEntries = ByteBuffer.allocate(64 * Pkdelta.INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private int blockCount = 0;
+
+    private PkdeltaWriter(Path target, int width, int height, float rayDistance, int ticksPerBlock, int deflateLevel,
+                          Executor compressor, IntFunction<String> stateNames) throws IOException {
+        this.target = target;
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+        this.width = width;
+        this.height = height;
+        this.cells = width * height;
+        this.rayDistance = rayDistance;
+        this.ticksPerBlock = ticksPerBlock;
+        this.deflateLevel = deflateLevel;
+        this.compressor = compressor;
+        this.stateNames = stateNames;
+        this.maxTickSize = Pkdelta.maxTickSize(cells);
+        this.distances = new short[cells];
+        this.blockIndices = new short[cells];
+        this.previousDistances = new short[cells];
+        this.previousBlockIndices = new short[cells];
+        this.out = new ChecksummedOutput(PkrawWriter.openPartial(partial), BUFFER_SIZE);
+        this.buffer = out.buffer();
+    }
+
+    /**
+     * Creates {@code target}'s partial file and writes the header.
+     *
+     * @param rayDistance   distance recorded for rays that hit nothing, the largest a grid can hold
+     * @param ticksPerBlock ticks compressed together, the most a random read decodes
+     * @param deflateLevel  {@link Deflater} level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param compressor    runs block compression, preferably on several threads
+     * @param stateNames    registry string of a raw block-state id, stored in the palette
+     */
+    public static PkdeltaWriter open(Path target, long startTimestampMillis, String serverIp, float targetYaw,
+                                     int fallZoneY, int width, int height, float rayDistance, int ticksPerBlock,
+                                     int deflateLevel, Executor compressor, IntFunction<String> stateNames) throws IOException {
+        if (ticksPerBlock < 1 || ticksPerBlock > 0xFFFF) {
+            throw new IllegalArgumentException("Ticks per block must be in [1, 65535], got " + ticksPerBlock);
+        }
+        if (deflateLevel != Deflater.DEFAULT_COMPRESSION && (deflateLevel < 0 || deflateLevel > 9)) {
+            throw new IllegalArgumentException("Deflate level must be in [0, 9] or -1, got " + deflateLevel);
+        }
+        PkdeltaWriter writer = new PkdeltaWriter(target, width, height, rayDistance, ticksPerBlock, deflateLevel,
+                compressor, stateNames);
+        try {
+            Pkraw.writeHeader(writer.out, Pkdelta.MAGIC, Pkdelta.VERSION, width, height, ticksPerBlock,
+                    Pkraw.tickStride(width, height, 2), startTimestampMillis, serverIp, targetYaw, fallZoneY,
+                    rayDistance);
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        return writer;
+    }
+
+    @Override
+    public Path target() {
+        return target;
+    }
+
+    @Override
+    public void append(RunTick tick) throws IOException {
+        if (tick.visionWidth() != width || tick.visionHeight() != height) {
+            throw new IOException("Tick grid is " + tick.visionWidth() + "x" + tick.visionHeight()
+                    + ", file grid is " + width + "x" + height);
+        }
+        for (int r = 0, cell = 0; r < height; r++) {
+            for (int c = 0; c < width; c++, cell++) {
+                distances[cell] = Pkraw.quantizeDistance(tick.visionDistance(r, c), rayDistance);
+                blockIndices[cell] = (short) palette.indexOf(tick.visionBlockState(r, c));
+            }
+        }
+
+        if (block == null) {
+            block = spareBlocks.isEmpty()
+                    ? ByteBuffer.allocate(8 * maxTickSize).order(ByteOrder.LITTLE_ENDIAN)
+                    : spareBlocks.poll();
+        }
+        if (block.remaining() < maxTickSize) {
+            ByteBuffer grown = ByteBuffer.allocate(block.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            block = grown.put(block.flip());
+        }
+        boolean keyframe = blockTicks == 0;
+        int start = block.position();
+        block.putInt(0);
+        block.put((byte) (keyframe ? Pkdelta.KEYFRAME : Pkdelta.DELTA));
+        Pkraw.putScalars(block, tick);
+        Pkdelta.encodeChannel(block, distances, keyframe ? null : previousDistances, cells, false);
+        Pkdelta.encodeChannel(block, blockIndices, keyframe ? null : previousBlockIndices, cells, true);
+        block.putInt(start, block.position() - start - Integer.BYTES);
+
+        short[] swap = previousDistances;
+        previousDistances = distances;
+        distances = swap;
+        swap = previousBlockIndices;
+        previousBlockIndices = blockIndices;
+        blockIndices = swap;
+        tickCount++;
+        if (++blockTicks == ticksPerBlock) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void finish(long stopTimestampMillis, int validTicks) throws IOException {
+        try {
+            if (blockTicks > 0) {
+                submitBlock();
+            }
+            writeCompleted(0);
+            long paletteOffset = out.position();
+            palette.write(out, stateNames);
+            long indexOffset = out.position();
+            out.ensure(Integer.BYTES);
+            buffer.putInt(blockCount);
+            indexEntries.flip();
+            while (indexEntries.hasRemaining()) {
+                out.ensure(Pkdelta.INDEX_ENTRY_SIZE);
+                buffer.put(indexEntries.slice(indexEntries.position(), Pkdelta.INDEX_ENTRY_SIZE));
+                indexEntries.position(indexEntries.position() + Pkdelta.INDEX_ENTRY_SIZE);
+            }
+            out.ensure(Pkdelta.TRAILER_SIZE);
+            buffer.putLong(indexOffset);
+            buffer.putLong(paletteOffset);
+            buffer.putLong(stopTimestampMillis);
+            buffer.putInt(tickCount);
+            buffer.putInt(validTicks);
+            out.finish(Pkdelta.TRAILER_MAGIC);
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort() {
+        // Blocks still compressing finish on their own and are dropped
+        pending.clear();
+        out.closeQuietly();
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException ignored) {
+            // Leaves a stray .part file behind, which no reader picks up
+        }
+    }
+
+    /**
+     * Cuts a finished file down to its first {@code ticks} ticks. Blocks are kept as they are, the
+     * last one partly; only the palette, index and trailer after it are rewritten, and the file is
+     * shortened. The run's {@code dn} is capped at {@code ticks}. Does nothing if the file has no
+     * more ticks than that.
+     */
+    public static void truncate(Path file, int ticks) throws IOException {
+        if (ticks < 0) {
+            throw new IllegalArgumentException("Cannot keep " + ticks + " ticks");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer trailer = readFully(channel, size - Pkdelta.TRAILER_SIZE, Pkdelta.TRAILER_SIZE);
+            byte[] magic = new byte[Pkdelta.TRAILER_MAGIC.length];
+            trailer.get(Pkdelta.TRAILER_MAGIC_OFFSET, magic);
+            if (!Arrays.equals(magic, Pkdelta.TRAILER_MAGIC)) {
+                throw new IOException("Missing trailer; the file was not finished");
+            }
+            int tickCount = trailer.getInt(Pkdelta.TRAILER_TICK_COUNT);
+            if (ticks >= tickCount) {
+                return;
+            }
+            int ticksPerBlock = Short.toUnsignedInt(readFully(channel, Pkdelta.HEADER_TICKS_PER_BLOCK, Short.BYTES).getShort(0));
+            int headerSize = readFully(channel, Pkraw.HEADER_SIZE_FIELD, Integer.BYTES).getInt(0);
+            long paletteOffset = trailer.getLong(Pkdelta.TRAILER_PALETTE_OFFSET);
+            long indexOffset = trailer.getLong(Pkdelta.TRAILER_INDEX_OFFSET);
+            if (ticksPerBlock == 0 || paletteOffset < headerSize || indexOffset < paletteOffset
+                    || indexOffset + Integer.BYTES > size - Pkdelta.TRAILER_SIZE) {
+                throw new IOException("Corrupt header or trailer");
+            }
+            ByteBuffer palette = readFully(channel, paletteOffset, (int) (indexOffset - paletteOffset));
+            int keptBlocks = (ticks + ticksPerBlock - 1) / ticksPerBlock;
+            ByteBuffer entries = readFully(channel, indexOffset + Integer.BYTES, keptBlocks * Pkdelta.INDEX_ENTRY_SIZE);
+
+            long newPaletteOffset = headerSize;
+            if (keptBlocks > 0) {
+                int last = (keptBlocks - 1) * Pkdelta.INDEX_ENTRY_SIZE;
+                entries.putInt(last + Pkdelta.ENTRY_TICK_COUNT, ticks - (keptBlocks - 1) * ticksPerBlock);
+                newPaletteOffset = entries.getLong(last + Pkdelta.ENTRY_OFFSET)
+                        + Integer.toUnsignedLong(entries.getInt(last + Pkdelta.ENTRY_COMPRESSED_LENGTH));
+            }
+            long newIndexOffset = newPaletteOffset + palette.capacity();
+            ByteBuffer tail = ByteBuffer.allocate(palette.capacity() + Integer.BYTES + entries.capacity() + Pkdelta.TRAILER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            tail.put(palette);
+            tail.putInt(keptBlocks);
+            tail.put(entries);
+            tail.putLong(newIndexOffset);
+            tail.putLong(newPaletteOffset);
+            tail.putLong(trailer.getLong(Pkdelta.TRAILER_STOP_TIMESTAMP));
+            tail.putInt(ticks);
+            tail.putInt(Math.min(trailer.getInt(Pkdelta.TRAILER_VALID_TICKS), ticks));
+
+            CRC32C crc = new CRC32C();
+            crc.update(readFully(channel, 0, headerSize));
+            crc.update(tail.array(), 0, tail.position());
+            tail.putInt((int) crc.getValue());
+            tail.put(Pkdelta.TRAILER_MAGIC);
+            tail.flip();
+            long position = newPaletteOffset;
+            while (tail.hasRemaining()) {
+                position += channel.write(tail, position);
+            }
+            channel.truncate(position);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("File ends at " + (position + buffer.position()) + ", expected " + (position + length));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void submitBlock() throws IOException {
+        ByteBuffer raw = block;
+        int firstTick = tickCount - blockTicks;
+        int ticks = blockTicks;
+        block = null;
+        blockTicks = 0;
+        pending.add(CompletableFuture.supplyAsync(() -> compress(raw, firstTick, ticks), compressor));
+        writeCompleted(MAX_PENDING_BLOCKS);
+    }
+
+    // Writes finished blocks from the front of the queue, waiting while more than maxPending remain
+    private void writeCompleted(int maxPending) throws IOException {
+        while (!pending.isEmpty() && (pending.size() > maxPending || pending.peek().isDone())) {
+            Block done;
+            try {
+                done = pending.poll().join();
+            } catch (CompletionException e) {
+                throw new IOException("Failed to compress a block", e.getCause());
+            }
+            if (indexEntries.remaining() < Pkdelta.INDEX_ENTRY_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(indexEntries.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                indexEntries = grown.put(indexEntries.flip());
+            }
+            indexEntries.putInt(done.firstTick());
+            indexEntries.putInt(done.tickCount());
+            indexEntries.putLong(out.position());
+            indexEntries.putInt(done.compressedLength());
+            indexEntries.putInt(done.rawLength());
+            indexEntries.putInt(done.crc());
+            indexEntries.putInt(0);
+            out.writeUnchecked(done.compressed(), done.compressedLength());
+            blockCount++;
+            spareBlocks.add(done.raw().clear());
+        }
+    }
+
+    // Runs on the compression executor
+    private Block compress(ByteBuffer raw, int firstTick, int ticks) {
+        Deflater deflater = new Deflater(deflateLevel);
+        try {
+            int rawLength = raw.position();
+            deflater.setInput(raw.array(), 0, rawLength);
+            deflater.finish();
+            byte[] compressed = new byte[Math.max(256, rawLength / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(compressed, 0, length);
+            return new Block(firstTick, ticks, compressed, length, rawLength, (int) crc.getValue(), raw);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.firejoust.parkourcapture.format;
+
+/**
+ * Constants and per-tick normalization of the {@code PKDSEQ} training format, kept in step with
+ * the data-normalizer's {@code index.js}.
+ * <p>
+ * A file is a 20-byte header ({@code "PKDSEQ"}, u8 version, u16 width, u16 height, u8 K, u32
+ * sequence count, u32 reserved; all big-endian) followed by the sequences. Each sequence is a
+ * window of {@link #K} consecutive ticks: K distance grids (uint8, tenths of a block), K block
+ * category grids (uint8 {@link BlockCategory}), K proprio vectors of {@link #PROPRIO_SIZE}
+ * big-endian floats, and the window's last tick's action byte.
+ * <p>
+ * Version 2 stores every tick once instead of K times. The header's sequence count is the window
+ * count and its reserved field the tick count. Ticks follow, {@link #tickSize} bytes each: the
+ * distance grid, the category grid, the proprio vector and the action byte. Last comes a u32 per
+ * window, the index of its first tick; window {@code i} is ticks {@code start[i]} to
+ * {@code start[i] + K - 1} and reads back exactly as the version 1 sequence would.
+ * <p>
+ * The normalizer reads values back from run JSON, which holds three decimals. The helpers here
+ * round with {@link Fixed3} first so that files produced from live ticks match it byte for byte.
+ */
+public final class Pkdseq {
+
+    public static final byte[] MAGIC = {'P', 'K', 'D', 'S', 'E', 'Q'};
+    /** One sequence per window, as the normalizer writes it. */
+    public static final int VERSION_WINDOWS = 1;
+    /** Ticks stored once, plus a table of window starts. */
+    public static final int VERSION_INDEXED = 2;
+    public static final int HEADER_SIZE = 20;
+
+    // --- Header offsets ---
+    public static final int HEADER_VERSION = 6;
+    public static final int HEADER_GRID_WIDTH = 7;
+    public static final int HEADER_GRID_HEIGHT = 9;
+    public static final int HEADER_K = 11;
+    public static final int HEADER_SEQUENCE_COUNT = 12;
+    public static final int HEADER_TICK_COUNT = 16;
+
+    /** Ticks per sequence. */
+    public static final int K = 4;
+    public static final double MAX_VELOCITY = 1.0;
+    public static final double MAX_REL_HEIGHT = 10.0;
+    public static final int MAX_DISTANCE_UNITS = 255;
+    public static final double MAX_DISTANCE_BLOCKS = 25.5;
+    public static final int PROPRIO_SIZE = 8;
+
+    // --- Bits of the action byte ---
+    public static final int ACTION_FORWARD = 1;
+    public static final int ACTION_LEFT = 1 << 1;
+    public static final int ACTION_RIGHT = 1 << 2;
+    public static final int ACTION_BACK = 1 << 3;
+    public static final int ACTION_JUMP = 1 << 4;
+    public static final int ACTION_SNEAK = 1 << 5;
+    public static final int ACTION_SPRINT = 1 << 6;
+
+    private Pkdseq() {}
+
+    /** Bytes of one sequence for a {@code width x height} grid. */
+    public static int sequenceSize(int width, int height) {
+        return K * width * height * 2 + K * PROPRIO_SIZE * Float.BYTES + 1;
+    }
+
+    /** Bytes of one version 2 tick for a {@code width x height} grid. */
+    public static int tickSize(int width, int height) {
+        return width * height * 2 + PROPRIO_SIZE * Float.BYTES + 1;
+    }
+
+    /** Distance in blocks to uint8 tenths of a block, saturating at {@link #MAX_DISTANCE_BLOCKS}. */
+    public static byte quantizeDistance(float distance) {
+        double blocks = clamp(Fixed3.round(distance), 0.0, MAX_DISTANCE_BLOCKS);
+        return (byte) (int) clamp(Math.round(blocks * 10.0), 0, MAX_DISTANCE_UNITS);
+    }
+
+    /** Fills {@code out[offset..offset + 8)} with the tick's proprio vector. */
+    public static void proprio(RunTick tick, float targetYaw, int fallZoneY, float[] out, int offset) {
+        out[offset] = (float) clamp(Fixed3.round(tick.velocityX()) / MAX_VELOCITY, -1.0, 1.0);
+        out[offset + 1] = (float) clamp(Fixed3.round(tick.velocityY()) / MAX_VELOCITY, -1.0, 1.0);
+        out[offset + 2] = (float) clamp(Fixed3.round(tick.velocityZ()) / MAX_VELOCITY, -1.0, 1.0);
+        out[offset + 3] = (float) (normalizeAngle(Fixed3.round(tick.yaw()) - Fixed3.round(targetYaw)) / 180.0);
+        out[offset + 4] = tick.isOnGround() ? 1.0f : 0.0f;
+        out[offset + 5] = tick.isCollidedHorizontally() ? 1.0f : 0.0f;
+        out[offset + 6] = tick.isCollidedVertically() ? 1.0f : 0.0f;
+        out[offset + 7] = (float) clamp((Fixed3.round(tick.playerY()) - fallZoneY) / MAX_REL_HEIGHT, -1.0, 1.0);
+    }
+
+    public static int actionByte(RunTick tick) {
+        int action = 0;
+        if (tick.inputForward()) action |= ACTION_FORWARD;
+        if (tick.inputLeft()) action |= ACTION_LEFT;
+        if (tick.inputRight()) action |= ACTION_RIGHT;
+        if (tick.inputBack()) action |= ACTION_BACK;
+        if (tick.inputJump()) action |= ACTION_JUMP;
+        if (tick.inputSneak()) action |= ACTION_SNEAK;
+        if (tick.inputSprint()) action |= ACTION_SPRINT;
+        return action;
+    }
+
+    /** Angle in degrees to {@code (-180, 180]}. */
+    public static double normalizeAngle(double angle) {
+        double normalized = angle % 360.0;
+        if (normalized > 180.0) normalized -= 360.0;
+        else if (normalized <= -180.0) normalized += 360.0;
+        return normalized;
+    }
+
+    // Same argument order and NaN behaviour as the normalizer's Math.max(min, Math.min(value, max))
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(value, max));
+    }
+}
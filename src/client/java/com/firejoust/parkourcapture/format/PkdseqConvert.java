@@ -0,0 +1,183 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Command line conversion between the two {@link Pkdseq} versions:
+ * <pre>
+ * java -cp parkourcapture.jar com.firejoust.parkourcapture.format.PkdseqConvert in.pkdseq out.pkdseq
+ * </pre>
+ * The output is the other version from the input. Converting version 2 to 1 writes every window out
+ * through {@link PkdseqReader}. Converting version 1 to 2 recovers the ticks: a window whose first
+ * {@code K - 1} ticks are the previous window's last {@code K - 1} adds only its last tick, any
+ * other window adds all of its ticks. Version 1 keeps only each window's last action, so ticks that
+ * were never last in a window get action 0; no window reads it, and converting back gives the
+ * original file byte for byte.
+ */
+public final class PkdseqConvert {
+
+    private static final int BUFFER_SIZE = 1 << 18;
+
+    private PkdseqConvert() {}
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: PkdseqConvert <in.pkdseq> <out.pkdseq>");
+            System.exit(2);
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        try {
+            int version = convert(input, output);
+            System.out.println(input + " -> " + output + " (v" + version + ")");
+        } catch (IOException | RuntimeException e) {
+            System.err.println(input + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Writes {@code input} to {@code output} as the other version and returns the version written. */
+    public static int convert(Path input, Path output) throws IOException {
+        try (PkdseqReader reader = PkdseqReader.open(input)) {
+            if (reader.version() == Pkdseq.VERSION_WINDOWS) {
+                toIndexed(reader, output);
+                return Pkdseq.VERSION_INDEXED;
+            }
+            toWindows(reader, output);
+            return Pkdseq.VERSION_WINDOWS;
+        }
+    }
+
+    /** Writes every window of {@code reader} out in full, as version 1. */
+    public static void toWindows(PkdseqReader reader, Path output) throws IOException {
+        try (Output out = new Output(output, reader.sequenceSize())) {
+            for (int i = 0; i < reader.windowCount(); i++) {
+                reader.readWindow(i, out.room(reader.sequenceSize()));
+            }
+            out.finish(header(Pkdseq.VERSION_WINDOWS, reader.width(), reader.height(), reader.windowCount(), 0));
+        }
+    }
+
+    /** Writes the ticks of {@code reader}'s windows once each, plus their start table, as version 2. */
+    public static void toIndexed(PkdseqReader reader, Path output) throws IOException {
+        int cells = reader.width() * reader.height();
+        int proprioSize = Pkdseq.PROPRIO_SIZE * Float.BYTES;
+        int tickSize = reader.tickSize();
+        ByteBuffer current = ByteBuffer.allocate(reader.sequenceSize());
+        ByteBuffer previous = ByteBuffer.allocate(reader.sequenceSize());
+        int[] starts = new int[reader.windowCount()];
+        int ticks = 0;
+
+        try (Output out = new Output(output, tickSize)) {
+            for (int i = 0; i < reader.windowCount(); i++) {
+                reader.readWindow(i, current.clear());
+                byte[] window = current.array();
+                boolean continues = i > 0;
+                for (int t = 0; continues && t < Pkdseq.K - 1; t++) {
+                    continues = sameTick(window, t, previous.array(), t + 1, cells, proprioSize);
+                }
+
+                int first = continues ? Pkdseq.K - 1 : 0;
+                starts[i] = continues ? ticks - (Pkdseq.K - 1) : ticks;
+                for (int t = first; t < Pkdseq.K; t++) {
+                    ByteBuffer tick = out.room(tickSize);
+                    tick.put(window, t * cells, cells);
+                    tick.put(window, (Pkdseq.K + t) * cells, cells);
+                    tick.put(window, Pkdseq.K * cells * 2 + t * proprioSize, proprioSize);
+                    tick.put(t == Pkdseq.K - 1 ? window[window.length - 1] : 0);
+                    ticks++;
+                }
+
+                ByteBuffer swap = previous;
+                previous = current;
+                current = swap;
+            }
+            for (int start : starts) {
+                out.room(Integer.BYTES).putInt(start);
+            }
+            out.finish(header(Pkdseq.VERSION_INDEXED, reader.width(), reader.height(), reader.windowCount(), ticks));
+        }
+    }
+
+    // Grids and proprio of tick a of window a against tick b of window b
+    private static boolean sameTick(byte[] a, int tickA, byte[] b, int tickB, int cells, int proprioSize) {
+        int proprioStart = Pkdseq.K * cells * 2;
+        return Arrays.equals(a, tickA * cells, (tickA + 1) * cells, b, tickB * cells, (tickB + 1) * cells)
+                && Arrays.equals(a, (Pkdseq.K + tickA) * cells, (Pkdseq.K + tickA + 1) * cells,
+                        b, (Pkdseq.K + tickB) * cells, (Pkdseq.K + tickB + 1) * cells)
+                && Arrays.equals(a, proprioStart + tickA * proprioSize, proprioStart + (tickA + 1) * proprioSize,
+                        b, proprioStart + tickB * proprioSize, proprioStart + (tickB + 1) * proprioSize);
+    }
+
+    private static ByteBuffer header(int version, int width, int height, int windowCount, int tickCount) {
+        ByteBuffer header = ByteBuffer.allocate(Pkdseq.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.put(Pkdseq.MAGIC);
+        header.put((byte) version);
+        header.putShort((short) width);
+        header.putShort((short) height);
+        header.put((byte) Pkdseq.K);
+        header.putInt(windowCount);
+        header.putInt(tickCount);
+        return header.flip();
+    }
+
+    /** Buffered output to {@code <name>.part}, moved into place with its header by {@link #finish}. */
+    private static final class Output implements AutoCloseable {
+
+        private final Path target;
+        private final Path partial;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean finished = false;
+
+        Output(Path target, int recordSize) throws IOException {
+            this.target = target;
+            this.partial = target.resolveSibling(target.getFileName() + ".part");
+            this.channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, recordSize)).order(ByteOrder.BIG_ENDIAN);
+            channel.position(Pkdseq.HEADER_SIZE);
+        }
+
+        ByteBuffer room(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void finish(ByteBuffer header) throws IOException {
+            flush();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.close();
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(partial);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
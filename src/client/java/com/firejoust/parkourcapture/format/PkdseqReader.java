@@ -0,0 +1,206 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads windows from a {@link Pkdseq} file of either version, always as version 1 sequences: a
+ * version 2 window is put together from its {@link Pkdseq#K} ticks on the fly, so training code
+ * sees the same bytes whichever version was written.
+ * <p>
+ * Reads are positional, so files of any size open without mapping them. Not thread-safe; give each
+ * thread its own reader.
+ */
+public final class PkdseqReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final int version;
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final int windowCount;
+    private final int tickCount;
+    private final int sequenceSize;
+    private final int tickSize;
+    // Version 2 only: first tick of each window, and room for one window's ticks
+    private final int[] windowStarts;
+    private final ByteBuffer ticks;
+
+    private PkdseqReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(Pkdseq.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        readFully(header, 0);
+        byte[] magic = new byte[Pkdseq.MAGIC.length];
+        header.get(0, magic);
+        this.version = header.get(Pkdseq.HEADER_VERSION);
+        if (!Arrays.equals(magic, Pkdseq.MAGIC)
+                || (version != Pkdseq.VERSION_WINDOWS && version != Pkdseq.VERSION_INDEXED)) {
+            throw new IOException("Not a PKDSEQ v" + Pkdseq.VERSION_WINDOWS + " or v" + Pkdseq.VERSION_INDEXED + " file");
+        }
+        if (header.get(Pkdseq.HEADER_K) != Pkdseq.K) {
+            throw new IOException("Windows of " + header.get(Pkdseq.HEADER_K) + " ticks, expected " + Pkdseq.K);
+        }
+        this.width = Short.toUnsignedInt(header.getShort(Pkdseq.HEADER_GRID_WIDTH));
+        this.height = Short.toUnsignedInt(header.getShort(Pkdseq.HEADER_GRID_HEIGHT));
+        this.cells = width * height;
+        this.windowCount = header.getInt(Pkdseq.HEADER_SEQUENCE_COUNT);
+        this.sequenceSize = Pkdseq.sequenceSize(width, height);
+        this.tickSize = Pkdseq.tickSize(width, height);
+
+        if (version == Pkdseq.VERSION_WINDOWS) {
+            this.tickCount = 0;
+            this.windowStarts = null;
+            this.ticks = null;
+            if (windowCount < 0 || size != Pkdseq.HEADER_SIZE + (long) windowCount * sequenceSize) {
+                throw new IOException("File of " + size + " bytes does not hold " + windowCount + " windows");
+            }
+            return;
+        }
+
+        this.tickCount = header.getInt(Pkdseq.HEADER_TICK_COUNT);
+        long tableOffset = Pkdseq.HEADER_SIZE + (long) tickCount * tickSize;
+        if (windowCount < 0 || tickCount < 0 || size != tableOffset + (long) windowCount * Integer.BYTES) {
+            throw new IOException("File of " + size + " bytes does not hold " + tickCount + " ticks and "
+                    + windowCount + " windows");
+        }
+        ByteBuffer table = ByteBuffer.allocate(windowCount * Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+        readFully(table, tableOffset);
+        this.windowStarts = new int[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            int start = table.getInt(i * Integer.BYTES);
+            if (start < 0 || start > tickCount - Pkdseq.K) {
+                throw new IOException("Window " + i + " starts at tick " + start + " of " + tickCount);
+            }
+            windowStarts[i] = start;
+        }
+        this.ticks = ByteBuffer.allocate(Pkdseq.K * tickSize);
+    }
+
+    public static PkdseqReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PkdseqReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // --- Accessors ---
+
+    public int version() {
+        return version;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int windowCount() {
+        return windowCount;
+    }
+
+    /** Ticks stored in a version 2 file; 0 for version 1, which stores windows only. */
+    public int tickCount() {
+        return tickCount;
+    }
+
+    /** Bytes {@link #readWindow} puts, a version 1 sequence. */
+    public int sequenceSize() {
+        return sequenceSize;
+    }
+
+    /** Bytes {@link #readTick} puts. */
+    public int tickSize() {
+        return tickSize;
+    }
+
+    /** First tick of window {@code index} in a version 2 file. */
+    public int windowStart(int index) {
+        requireIndexed();
+        return windowStarts[index];
+    }
+
+    // --- Reading ---
+
+    /**
+     * Puts window {@code index} into {@code out} at its position, as the version 1 sequence of
+     * {@link #sequenceSize} bytes, and advances the position past it.
+     */
+    public void readWindow(int index, ByteBuffer out) throws IOException {
+        if (index < 0 || index >= windowCount) {
+            throw new IndexOutOfBoundsException("Window " + index + " of " + windowCount);
+        }
+        if (out.remaining() < sequenceSize) {
+            throw new IllegalArgumentException("Needs " + sequenceSize + " bytes, " + out.remaining() + " left");
+        }
+        if (version == Pkdseq.VERSION_WINDOWS) {
+            readFully(out.slice(out.position(), sequenceSize), Pkdseq.HEADER_SIZE + (long) index * sequenceSize);
+            out.position(out.position() + sequenceSize);
+            return;
+        }
+
+        ticks.clear();
+        readFully(ticks, Pkdseq.HEADER_SIZE + (long) windowStarts[index] * tickSize);
+        byte[] window = ticks.array();
+        int proprioSize = Pkdseq.PROPRIO_SIZE * Float.BYTES;
+        for (int t = 0; t < Pkdseq.K; t++) {
+            out.put(window, t * tickSize, cells);
+        }
+        for (int t = 0; t < Pkdseq.K; t++) {
+            out.put(window, t * tickSize + cells, cells);
+        }
+        for (int t = 0; t < Pkdseq.K; t++) {
+            out.put(window, t * tickSize + cells * 2, proprioSize);
+        }
+        out.put(window[Pkdseq.K * tickSize - 1]);
+    }
+
+    /**
+     * Puts tick {@code index} of a version 2 file into {@code out}: {@link #tickSize} bytes laid out
+     * as {@link Pkdseq} describes.
+     */
+    public void readTick(int index, ByteBuffer out) throws IOException {
+        requireIndexed();
+        if (index < 0 || index >= tickCount) {
+            throw new IndexOutOfBoundsException("Tick " + index + " of " + tickCount);
+        }
+        if (out.remaining() < tickSize) {
+            throw new IllegalArgumentException("Needs " + tickSize + " bytes, " + out.remaining() + " left");
+        }
+        readFully(out.slice(out.position(), tickSize), Pkdseq.HEADER_SIZE + (long) index * tickSize);
+        out.position(out.position() + tickSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void requireIndexed() {
+        if (version != Pkdseq.VERSION_INDEXED) {
+            throw new IllegalStateException("Version " + version + " files store windows, not ticks");
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("File ends at " + position);
+            }
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Writes a {@link Pkdseq} file straight from a run's ticks as they are recorded, producing the
+ * same bytes the data-normalizer would produce from the run's JSON.
+ * <p>
+ * Ticks are normalized by a {@link SequenceNormalizer}; each appended tick completes one window,
+ * which is kept unless it spans a dropped tick (a sequence gap) or a tick whose
+ * grid size differs from the file's. Version 1 writes each kept window out in full; version 2
+ * writes every tick once as it comes and only notes where kept windows start. The file is written
+ * as {@code <name>.part}; {@link #finish} drops the windows that end past the run's valid ticks,
+ * fills in the header's counts and moves it into place.
+ * <p>
+ * Not thread-safe; ticks must be appended in run order from one thread.
+ */
+public final class PkdseqWriter implements RunExport {
+
+    private final Path target;
+    private final Path partial;
+    private final FileChannel channel;
+    private final int version;
+    private final int width;
+    private final int height;
+    private final SequenceNormalizer normalizer;
+
+    // A whole window for version 1, one tick for version 2
+    private final ByteBuffer sequence;
+    // Index of the last tick of every written window, ascending
+    private int[] windowEnds = new int[1024];
+    private int windows = 0;
+    private int sequenceCount = 0;
+
+    private PkdseqWriter(Path target, int version, int width, int height, float targetYaw, int fallZoneY,
+                         IntUnaryOperator categoryOf) throws IOException {
+        this.target = target;
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+        this.version = version;
+        this.width = width;
+        this.height = height;
+        this.normalizer = new SequenceNormalizer(width, height, targetYaw, fallZoneY, categoryOf);
+        this.sequence = ByteBuffer.allocate(version == Pkdseq.VERSION_WINDOWS
+                ? Pkdseq.sequenceSize(width, height) : Pkdseq.tickSize(width, height)).order(ByteOrder.BIG_ENDIAN);
+        this.channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Creates {@code target}'s partial file for a {@code width x height} grid.
+     *
+     * @param version    {@link Pkdseq#VERSION_WINDOWS} or {@link Pkdseq#VERSION_INDEXED}
+     * @param categoryOf maps a raw block-state id to its {@link BlockCategory}
+     */
+    public static PkdseqWriter open(Path target, int version, int width, int height, float targetYaw, int fallZoneY,
+                                    IntUnaryOperator categoryOf) throws IOException {
+        if (version != Pkdseq.VERSION_WINDOWS && version != Pkdseq.VERSION_INDEXED) {
+            throw new IllegalArgumentException("Unknown PKDSEQ version " + version);
+        }
+        PkdseqWriter writer = new PkdseqWriter(target, version, width, height, targetYaw, fallZoneY, categoryOf);
+        try {
+            writer.writeHeader(0, 0);
+            writer.channel.position(Pkdseq.HEADER_SIZE);
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+        return writer;
+    }
+
+    @Override
+    public Path target() {
+        return target;
+    }
+
+    /** Sequences in the finished file. */
+    public int sequenceCount() {
+        return sequenceCount;
+    }
+
+    /** Normalizes the next tick of the run and writes it or the window it completes. */
+    @Override
+    public void append(RunTick tick) throws IOException {
+        boolean completesWindow = normalizer.push(tick);
+        if (version == Pkdseq.VERSION_INDEXED) {
+            // A tick of another grid size is kept as zeros; no window includes it
+            sequence.clear();
+            normalizer.putTick(sequence);
+            write(sequence.flip());
+        }
+        if (completesWindow) {
+            if (version == Pkdseq.VERSION_WINDOWS) {
+                sequence.clear();
+                normalizer.putWindow(sequence);
+                write(sequence.flip());
+            }
+            if (windows == windowEnds.length) {
+                windowEnds = Arrays.copyOf(windowEnds, windows * 2);
+            }
+            windowEnds[windows++] = normalizer.tickCount() - 1;
+        }
+    }
+
+    /**
+     * Keeps the windows that end within the first {@code validTicks} ticks, completes the header
+     * and moves the file into place. A run without a single window leaves no file.
+     */
+    @Override
+    public void finish(long stopTimestampMillis, int validTicks) throws IOException {
+        int kept = 0;
+        while (kept < windows && windowEnds[kept] < validTicks) {
+            kept++;
+        }
+        try {
+            if (kept == 0) {
+                abort();
+                return;
+            }
+            if (version == Pkdseq.VERSION_WINDOWS) {
+                channel.truncate(Pkdseq.HEADER_SIZE + (long) kept * sequence.capacity());
+                writeHeader(kept, 0);
+            } else {
+                // Ticks past the last kept window are not needed by any of them
+                int keptTicks = windowEnds[kept - 1] + 1;
+                long tableOffset = Pkdseq.HEADER_SIZE + (long) keptTicks * sequence.capacity();
+                channel.truncate(tableOffset);
+                ByteBuffer table = ByteBuffer.allocate(kept * Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+                for (int i = 0; i < kept; i++) {
+                    table.putInt(windowEnds[i] - Pkdseq.K + 1);
+                }
+                table.flip();
+                while (table.hasRemaining()) {
+                    tableOffset += channel.write(table, tableOffset);
+                }
+                writeHeader(kept, keptTicks);
+            }
+            channel.force(false);
+            channel.close();
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            sequenceCount = kept;
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already failed; the file is deleted below anyway
+        }
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException ignored) {
+            // Leaves a stray .part file behind, which no reader picks up
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void writeHeader(int sequenceCount, int tickCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Pkdseq.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.put(Pkdseq.MAGIC);
+        header.put((byte) version);
+        header.putShort((short) width);
+        header.putShort((short) height);
+        header.put((byte) Pkdseq.K);
+        header.putInt(sequenceCount);
+        header.putInt(tickCount); // Reserved in version 1
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the {@code PKRAW} raw capture format: every recorded value of a run in fixed-size,
+ * little-endian records, so tick {@code n} starts at {@code headerSize + n * tickStride} and the
+ * file can be memory-mapped as is.
+ * <pre>
+ * Header  (headerSize bytes, padded to a multiple of 8)
+ *   0  "PKRAW"            5 bytes
+ *   5  version            u8
+ *   6  gridWidth          u16
+ *   8  gridHeight         u16
+ *  10  blockIndexBytes    u16   1 or 2, width of a palette index
+ *  12  tickStride         u32
+ *  16  ts                 i64   start timestamp, ms
+ *  24  ty                 f32   target bearing yaw
+ *  28  tfy                i32   fall zone Y
+ *  32  rayDistance        f32   distance of a miss; the scale of quantized distances
+ *  36  headerSize         u32
+ *  40  ipLength           u16, then the server address in UTF-8
+ *
+ * Tick    (tickStride bytes, a multiple of 8)
+ *   0  py                 f64   player Y
+ *   8  sequence           u32   capture order, counting dropped ticks
+ *  12  y                  f32
+ *  16  vx, vy, vz         f32 x3
+ *  28  flags              u16   see FLAG_*
+ *  30  reserved           u16
+ *  32  distances          u16 x cells, row-major, distance / rayDistance * 65535
+ *  ..  blocks             u8 or u16 x cells (blockIndexBytes), indices into the palette
+ *
+ * Palette (at paletteOffset), one entry per distinct block state of the run, in order of first appearance
+ *      size               u32, then per entry:
+ *      rawId              i32   raw block-state id in the game that recorded the run
+ *      nameLength         u16, then the state's registry string in UTF-8, e.g. "minecraft:ladder[facing=north,waterlogged=false]"
+ *
+ * Trailer (last TRAILER_SIZE bytes)
+ *   0  paletteOffset      u64
+ *   8  te                 i64   stop timestamp, ms
+ *  16  tickCount          u32
+ *  20  validTicks         u32   the run's dn
+ *  24  crc                u32   CRC32C of every byte before it
+ *  28  "PKRE"             4 bytes
+ * </pre>
+ * Raw ids change between game versions; the registry strings do not, so readers should map
+ * palette entries by name.
+ */
+public final class Pkraw {
+
+    public static final byte[] MAGIC = {'P', 'K', 'R', 'A', 'W'};
+    public static final byte[] TRAILER_MAGIC = {'P', 'K', 'R', 'E'};
+    public static final int VERSION = 2;
+
+    // --- Header offsets ---
+    public static final int HEADER_GRID_WIDTH = 6;
+    public static final int HEADER_GRID_HEIGHT = 8;
+    public static final int HEADER_BLOCK_INDEX_BYTES = 10;
+    public static final int HEADER_TICK_STRIDE = 12;
+    public static final int HEADER_START_TIMESTAMP = 16;
+    public static final int HEADER_TARGET_YAW = 24;
+    public static final int HEADER_FALL_ZONE_Y = 28;
+    public static final int HEADER_RAY_DISTANCE = 32;
+    public static final int HEADER_SIZE_FIELD = 36;
+    public static final int HEADER_SERVER_IP = 40;
+
+    // --- Tick offsets ---
+    public static final int TICK_PLAYER_Y = 0;
+    public static final int TICK_SEQUENCE = 8;
+    public static final int TICK_YAW = 12;
+    public static final int TICK_VELOCITY_X = 16;
+    public static final int TICK_VELOCITY_Y = 20;
+    public static final int TICK_VELOCITY_Z = 24;
+    public static final int TICK_FLAGS = 28;
+    public static final int TICK_DISTANCES = 32;
+
+    public static final int TRAILER_SIZE = 32;
+
+    /** Palettes up to this size are written with one-byte indices. */
+    public static final int MAX_NARROW_PALETTE = 256;
+
+    // --- Bits of a tick's flags; inputs share the PKDSEQ action byte's order ---
+    public static final int FLAG_FORWARD = 1;
+    public static final int FLAG_LEFT = 1 << 1;
+    public static final int FLAG_RIGHT = 1 << 2;
+    public static final int FLAG_BACK = 1 << 3;
+    public static final int FLAG_JUMP = 1 << 4;
+    public static final int FLAG_SNEAK = 1 << 5;
+    public static final int FLAG_SPRINT = 1 << 6;
+    public static final int FLAG_ON_GROUND = 1 << 7;
+    public static final int FLAG_COLLIDED_HORIZONTALLY = 1 << 8;
+    public static final int FLAG_COLLIDED_VERTICALLY = 1 << 9;
+    public static final int FLAG_IN_FALL_ZONE = 1 << 10;
+
+    private static final int MAX_QUANTIZED = 0xFFFF;
+
+    private Pkraw() {}
+
+    public static int tickStride(int width, int height, int blockIndexBytes) {
+        return align8(TICK_DISTANCES + width * height * (Short.BYTES + blockIndexBytes));
+    }
+
+    /** Offset of a tick's block indices from the start of its record. */
+    public static int blocksOffset(int width, int height) {
+        return TICK_DISTANCES + width * height * Short.BYTES;
+    }
+
+    public static int align8(int size) {
+        return (size + 7) & ~7;
+    }
+
+    public static int flags(RunTick tick) {
+        int flags = 0;
+        if (tick.inputForward()) flags |= FLAG_FORWARD;
+        if (tick.inputLeft()) flags |= FLAG_LEFT;
+        if (tick.inputRight()) flags |= FLAG_RIGHT;
+        if (tick.inputBack()) flags |= FLAG_BACK;
+        if (tick.inputJump()) flags |= FLAG_JUMP;
+        if (tick.inputSneak()) flags |= FLAG_SNEAK;
+        if (tick.inputSprint()) flags |= FLAG_SPRINT;
+        if (tick.isOnGround()) flags |= FLAG_ON_GROUND;
+        if (tick.isCollidedHorizontally()) flags |= FLAG_COLLIDED_HORIZONTALLY;
+        if (tick.isCollidedVertically()) flags |= FLAG_COLLIDED_VERTICALLY;
+        if (tick.isInFallZone()) flags |= FLAG_IN_FALL_ZONE;
+        return flags;
+    }
+
+    /** Distance in blocks to an unsigned 16-bit fraction of {@code rayDistance}, about 0.001 blocks at 64. */
+    public static short quantizeDistance(float distance, float rayDistance) {
+        float clamped = Math.max(0.0f, Math.min(distance, rayDistance));
+        return (short) Math.round(clamped / rayDistance * MAX_QUANTIZED);
+    }
+
+    public static float dequantizeDistance(short quantized, float rayDistance) {
+        return (quantized & 0xFFFF) * rayDistance / MAX_QUANTIZED;
+    }
+
+    /**
+     * Writes the header above with the given magic and version, and returns its size. Also used
+     * by formats that share the layout, with {@code layoutField} and {@code stride} standing for
+     * their own offset-10 and offset-12 fields.
+     */
+    static int writeHeader(ChecksummedOutput out, byte[] magic, int version, int width, int height, int layoutField,
+                           int stride, long startTimestampMillis, String serverIp, float targetYaw, int fallZoneY,
+                           float rayDistance) throws IOException {
+        byte[] ip = serverIp.getBytes(StandardCharsets.UTF_8);
+        int headerSize = align8(HEADER_SERVER_IP + Short.BYTES + ip.length);
+        out.ensure(headerSize);
+        ByteBuffer buffer = out.buffer();
+        int start = buffer.position();
+        buffer.put(magic);
+        buffer.put((byte) version);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putShort((short) layoutField);
+        buffer.putInt(stride);
+        buffer.putLong(startTimestampMillis);
+        buffer.putFloat(targetYaw);
+        buffer.putInt(fallZoneY);
+        buffer.putFloat(rayDistance);
+        buffer.putInt(headerSize);
+        buffer.putShort((short) ip.length);
+        buffer.put(ip);
+        out.padTo(start + headerSize);
+        return headerSize;
+    }
+
+    /** Writes the first {@link #TICK_DISTANCES} bytes of a tick record. */
+    static void putScalars(ByteBuffer buffer, RunTick tick) {
+        buffer.putDouble(tick.playerY());
+        buffer.putInt((int) tick.sequence());
+        buffer.putFloat(tick.yaw());
+        buffer.putFloat((float) tick.velocityX());
+        buffer.putFloat((float) tick.velocityY());
+        buffer.putFloat((float) tick.velocityZ());
+        buffer.putShort((short) Pkraw.flags(tick));
+        buffer.putShort((short) 0);
+    }
+}
@@ -0,0 +1,207 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Writes a run as a {@link Pkraw} file while it is recorded.
+ * <p>
+ * Records go through one large buffer; every byte is fed to the CRC as the buffer is flushed, so
+ * the file is never read back for it. Block states are numbered in order of first appearance into a
+ * per-run palette, appended after the last tick together with each state's registry string.
+ * Indices start out one byte wide; the first tick that brings the palette past
+ * {@link Pkraw#MAX_NARROW_PALETTE} states has the ticks written so far rewritten with two-byte
+ * indices, once. The file is written as {@code <name>.part} and only moved into place by
+ * {@link #finish}.
+ * <p>
+ * Not thread-safe; ticks must be appended in run order from one thread.
+ */
+public final class PkrawWriter implements RunExport {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path target;
+    private Path partial;
+    private final ChecksummedOutput out;
+    private final ByteBuffer buffer;
+    private final long startTimestampMillis;
+    private final String serverIp;
+    private final float targetYaw;
+    private final int fallZoneY;
+    private final int width;
+    private final int height;
+    private final float rayDistance;
+    private final IntFunction<String> stateNames;
+
+    private int blockIndexBytes = 1;
+    private int stride;
+    private int headerSize;
+    // One tick's palette indices, resolved before its record is written
+    private final int[] blockIndices;
+    private final BlockPalette palette = new BlockPalette();
+
+    private int tickCount = 0;
+
+    private PkrawWriter(Path target, long startTimestampMillis, String serverIp, float targetYaw, int fallZoneY,
+                        int width, int height, float rayDistance, IntFunction<String> stateNames) throws IOException {
+        this.target = target;
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+        this.startTimestampMillis = startTimestampMillis;
+        this.serverIp = serverIp;
+        this.targetYaw = targetYaw;
+        this.fallZoneY = fallZoneY;
+        this.width = width;
+        this.height = height;
+        this.rayDistance = rayDistance;
+        this.stateNames = stateNames;
+        this.stride = Pkraw.tickStride(width, height, blockIndexBytes);
+        this.blockIndices = new int[width * height];
+        this.out = new ChecksummedOutput(openPartial(partial), BUFFER_SIZE);
+        this.buffer = out.buffer();
+    }
+
+    /**
+     * Creates {@code target}'s partial file and writes the header.
+     *
+     * @param rayDistance distance recorded for rays that hit nothing, the largest a grid can hold
+     * @param stateNames  registry string of a raw block-state id, stored in the palette
+     */
+    public static PkrawWriter open(Path target, long startTimestampMillis, String serverIp, float targetYaw, int fallZoneY,
+                                   int width, int height, float rayDistance, IntFunction<String> stateNames) throws IOException {
+        PkrawWriter writer = new PkrawWriter(target, startTimestampMillis, serverIp, targetYaw, fallZoneY,
+                width, height, rayDistance, stateNames);
+        try {
+            writer.writeHeader();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        return writer;
+    }
+
+    @Override
+    public Path target() {
+        return target;
+    }
+
+    @Override
+    public void append(RunTick tick) throws IOException {
+        if (tick.visionWidth() != width || tick.visionHeight() != height) {
+            throw new IOException("Tick grid is " + tick.visionWidth() + "x" + tick.visionHeight()
+                    + ", file grid is " + width + "x" + height);
+        }
+        for (int r = 0, cell = 0; r < height; r++) {
+            for (int c = 0; c < width; c++, cell++) {
+                blockIndices[cell] = palette.indexOf(tick.visionBlockState(r, c));
+            }
+        }
+        if (blockIndexBytes == 1 && palette.size() > Pkraw.MAX_NARROW_PALETTE) {
+            widen();
+        }
+
+        out.ensure(stride);
+        int start = buffer.position();
+        Pkraw.putScalars(buffer, tick);
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                buffer.putShort(Pkraw.quantizeDistance(tick.visionDistance(r, c), rayDistance));
+            }
+        }
+        if (blockIndexBytes == 1) {
+            for (int index : blockIndices) {
+                buffer.put((byte) index);
+            }
+        } else {
+            for (int index : blockIndices) {
+                buffer.putShort((short) index);
+            }
+        }
+        out.padTo(start + stride);
+        tickCount++;
+    }
+
+    @Override
+    public void finish(long stopTimestampMillis, int validTicks) throws IOException {
+        try {
+            long paletteOffset = out.position();
+            palette.write(out, stateNames);
+            out.ensure(Pkraw.TRAILER_SIZE);
+            buffer.putLong(paletteOffset);
+            buffer.putLong(stopTimestampMillis);
+            buffer.putInt(tickCount);
+            buffer.putInt(validTicks);
+            out.finish(Pkraw.TRAILER_MAGIC);
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void abort() {
+        out.closeQuietly();
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException ignored) {
+            // Leaves a stray .part file behind, which no reader picks up
+        }
+    }
+
+    static FileChannel openPartial(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void writeHeader() throws IOException {
+        headerSize = Pkraw.writeHeader(out, Pkraw.MAGIC, Pkraw.VERSION, width, height, blockIndexBytes, stride,
+                startTimestampMillis, serverIp, targetYaw, fallZoneY, rayDistance);
+    }
+
+    // Copies the ticks written so far into a new partial file with two-byte block indices
+    private void widen() throws IOException {
+        out.flush();
+        FileChannel narrow = out.channel();
+        Path narrowPath = partial;
+        int narrowStride = stride;
+        int cells = width * height;
+        int blocksOffset = Pkraw.blocksOffset(width, height);
+
+        try {
+            partial = target.resolveSibling(target.getFileName() + ".wide.part");
+            out.restart(openPartial(partial));
+            blockIndexBytes = 2;
+            stride = Pkraw.tickStride(width, height, blockIndexBytes);
+            writeHeader();
+
+            ByteBuffer record = ByteBuffer.allocate(narrowStride).order(ByteOrder.LITTLE_ENDIAN);
+            for (int tick = 0; tick < tickCount; tick++) {
+                record.clear();
+                long offset = headerSize + (long) tick * narrowStride;
+                while (record.hasRemaining()) {
+                    if (narrow.read(record, offset + record.position()) < 0) {
+                        throw new EOFException("Partial file ends inside tick " + tick);
+                    }
+                }
+                out.ensure(stride);
+                int start = buffer.position();
+                buffer.put(record.array(), 0, blocksOffset);
+                for (int cell = 0; cell < cells; cell++) {
+                    buffer.putShort((short) (record.get(blocksOffset + cell) & 0xFF));
+                }
+                out.padTo(start + stride);
+            }
+        } finally {
+            narrow.close();
+            Files.deleteIfExists(narrowPath);
+        }
+    }
+}
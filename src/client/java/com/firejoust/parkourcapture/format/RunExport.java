@@ -0,0 +1,25 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A file written alongside a run's JSON from the same ticks, in run order, on one thread.
+ * Implementations write to a partial file and only move it to {@link #target} in {@link #finish}.
+ */
+public interface RunExport {
+
+    Path target();
+
+    void append(RunTick tick) throws IOException;
+
+    /**
+     * Completes the file and moves it into place.
+     *
+     * @param validTicks number of leading ticks that are valid (the run's {@code dn})
+     */
+    void finish(long stopTimestampMillis, int validTicks) throws IOException;
+
+    /** Closes and deletes the partial file. */
+    void abort();
+}
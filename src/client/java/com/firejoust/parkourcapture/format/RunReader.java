@@ -0,0 +1,457 @@
+package com.firejoust.parkourcapture.format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped reader of a finished {@link Pkraw} file.
+ * <p>
+ * Ticks are read through {@link Tick} views: a view points at one record of the mapping and is
+ * moved with {@link Tick#moveTo}, so iterating allocates nothing per tick and no grid is copied to
+ * the heap. Files larger than one mapping are mapped in segments of whole ticks.
+ * <p>
+ * The reader and its mappings may be shared between threads; views may not.
+ */
+public final class RunReader implements Iterable<RunReader.Tick>, AutoCloseable {
+
+    // Largest mapping; segments hold as many whole ticks as fit in it
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final int blockIndexBytes;
+    private final int stride;
+    private final int headerSize;
+    private final long startTimestampMillis;
+    private final float targetYaw;
+    private final int fallZoneY;
+    private final float rayDistance;
+    private final String serverIp;
+    private final long stopTimestampMillis;
+    private final int tickCount;
+    private final int validTicks;
+    private final int[] paletteRawIds;
+    private final String[] paletteNames;
+    private final int ticksPerSegment;
+    private final ByteBuffer[] segments;
+
+    private RunReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        if (fileSize < Pkraw.HEADER_SERVER_IP + Short.BYTES + Pkraw.TRAILER_SIZE) {
+            throw new IOException("File of " + fileSize + " bytes is too short");
+        }
+        ByteBuffer header = read(0, Pkraw.HEADER_SERVER_IP + Short.BYTES);
+        byte[] magic = new byte[Pkraw.MAGIC.length];
+        header.get(0, magic);
+        if (!Arrays.equals(magic, Pkraw.MAGIC) || header.get(Pkraw.MAGIC.length) != Pkraw.VERSION) {
+            throw new IOException("Not a PKRAW v" + Pkraw.VERSION + " file");
+        }
+        ByteBuffer trailer = read(fileSize - Pkraw.TRAILER_SIZE, Pkraw.TRAILER_SIZE);
+        byte[] trailerMagic = new byte[Pkraw.TRAILER_MAGIC.length];
+        trailer.get(Pkraw.TRAILER_SIZE - trailerMagic.length, trailerMagic);
+        if (!Arrays.equals(trailerMagic, Pkraw.TRAILER_MAGIC)) {
+            throw new IOException("Missing trailer; the file was not finished");
+        }
+
+        this.width = Short.toUnsignedInt(header.getShort(Pkraw.HEADER_GRID_WIDTH));
+        this.height = Short.toUnsignedInt(header.getShort(Pkraw.HEADER_GRID_HEIGHT));
+        this.cells = width * height;
+        this.blockIndexBytes = Short.toUnsignedInt(header.getShort(Pkraw.HEADER_BLOCK_INDEX_BYTES));
+        this.stride = header.getInt(Pkraw.HEADER_TICK_STRIDE);
+        this.startTimestampMillis = header.getLong(Pkraw.HEADER_START_TIMESTAMP);
+        this.targetYaw = header.getFloat(Pkraw.HEADER_TARGET_YAW);
+        this.fallZoneY = header.getInt(Pkraw.HEADER_FALL_ZONE_Y);
+        this.rayDistance = header.getFloat(Pkraw.HEADER_RAY_DISTANCE);
+        this.headerSize = header.getInt(Pkraw.HEADER_SIZE_FIELD);
+        ByteBuffer ip = read(Pkraw.HEADER_SERVER_IP + Short.BYTES, Short.toUnsignedInt(header.getShort(Pkraw.HEADER_SERVER_IP)));
+        this.serverIp = StandardCharsets.UTF_8.decode(ip).toString();
+
+        long paletteOffset = trailer.getLong(0);
+        this.stopTimestampMillis = trailer.getLong(8);
+        this.tickCount = trailer.getInt(16);
+        this.validTicks = trailer.getInt(20);
+        if ((blockIndexBytes != 1 && blockIndexBytes != 2) || stride != Pkraw.tickStride(width, height, blockIndexBytes)
+                || tickCount < 0 || paletteOffset != headerSize + (long) tickCount * stride
+                || paletteOffset + Integer.BYTES > fileSize - Pkraw.TRAILER_SIZE) {
+            throw new IOException("Corrupt header or trailer");
+        }
+
+        ByteBuffer palette = read(paletteOffset, (int) (fileSize - Pkraw.TRAILER_SIZE - paletteOffset));
+        int paletteSize = palette.getInt();
+        this.paletteRawIds = new int[paletteSize];
+        this.paletteNames = new String[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            paletteRawIds[i] = palette.getInt();
+            byte[] name = new byte[Short.toUnsignedInt(palette.getShort())];
+            palette.get(name);
+            paletteNames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        this.ticksPerSegment = (int) Math.max(1, Math.min(Integer.MAX_VALUE, MAX_SEGMENT_BYTES / stride));
+        this.segments = new ByteBuffer[(tickCount + ticksPerSegment - 1) / ticksPerSegment];
+        for (int segment = 0; segment < segments.length; segment++) {
+            int ticks = Math.min(ticksPerSegment, tickCount - segment * ticksPerSegment);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    headerSize + (long) segment * ticksPerSegment * stride, (long) ticks * stride)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    public static RunReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path);
+        try {
+            return new RunReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** A view not yet pointing at any tick; {@link Tick#moveTo} it before reading. */
+    public Tick newView() {
+        return new Tick();
+    }
+
+    /** A new view of tick {@code index}. */
+    public Tick tick(int index) {
+        return new Tick().moveTo(index);
+    }
+
+    /** Iterates every tick with one view, which is moved on each step. */
+    @Override
+    public Iterator<Tick> iterator() {
+        return slice(0, tickCount).iterator();
+    }
+
+    /** Ticks {@code [from, to)}. */
+    public Range slice(int from, int to) {
+        if (from < 0 || to > tickCount || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + tickCount + " ticks");
+        }
+        return new Range(from, to);
+    }
+
+    /** Ticks of the run that are valid, the first {@link #validTicks}. */
+    public Range validRange() {
+        return slice(0, Math.min(validTicks, tickCount));
+    }
+
+    /** Whether the stored CRC32C matches the file. Reads the whole file. */
+    public boolean verifyChecksum() throws IOException {
+        CRC32C crc = new CRC32C();
+        long end = fileSize - Integer.BYTES - Pkraw.TRAILER_MAGIC.length;
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 20);
+        for (long position = 0; position < end; ) {
+            chunk.clear().limit((int) Math.min(chunk.capacity(), end - position));
+            int n = channel.read(chunk, position);
+            if (n < 0) {
+                throw new IOException("File ends at " + position);
+            }
+            crc.update(chunk.flip());
+            position += n;
+        }
+        return (int) crc.getValue() == read(end, Integer.BYTES).getInt(0);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /** Width of a palette index in {@link Tick#blockIndices}, 1 or 2 bytes. */
+    public int blockIndexBytes() {
+        return blockIndexBytes;
+    }
+
+    public long startTimestampMillis() {
+        return startTimestampMillis;
+    }
+
+    public long stopTimestampMillis() {
+        return stopTimestampMillis;
+    }
+
+    public String serverIp() {
+        return serverIp;
+    }
+
+    public float targetYaw() {
+        return targetYaw;
+    }
+
+    public int fallZoneY() {
+        return fallZoneY;
+    }
+
+    /** Distance of a miss, the scale of quantized distances. */
+    public float rayDistance() {
+        return rayDistance;
+    }
+
+    public int tickCount() {
+        return tickCount;
+    }
+
+    public int validTicks() {
+        return validTicks;
+    }
+
+    public int paletteSize() {
+        return paletteRawIds.length;
+    }
+
+    /** Registry string of palette entry {@code index}. */
+    public String paletteName(int index) {
+        return paletteNames[index];
+    }
+
+    /** Raw block-state id palette entry {@code index} had in the game that recorded the run. */
+    public int paletteRawId(int index) {
+        return paletteRawIds[index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("File ends at " + (position + buffer.position()) + ", expected " + (position + length));
+            }
+        }
+        return buffer.flip();
+    }
+
+    /** A contiguous range of ticks. */
+    public final class Range implements Iterable<Tick> {
+
+        private final int from;
+        private final int to;
+
+        private Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public int from() {
+            return from;
+        }
+
+        public int to() {
+            return to;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        /** Ticks {@code [from, to)} of this range, counted from its start. */
+        public Range slice(int from, int to) {
+            if (from < 0 || to > size() || from > to) {
+                throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + size() + " ticks");
+            }
+            return new Range(this.from + from, this.from + to);
+        }
+
+        /** Iterates the range with one view, which is moved on each step. */
+        @Override
+        public Iterator<Tick> iterator() {
+            Tick view = new Tick();
+            return new Iterator<>() {
+                private int next = from;
+
+                @Override
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                @Override
+                public Tick next() {
+                    if (next >= to) {
+                        throw new NoSuchElementException();
+                    }
+                    return view.moveTo(next++);
+                }
+            };
+        }
+    }
+
+    /**
+     * Flyweight view of one tick record. Grid accessors return views into the mapping; they stay
+     * valid after the view moves on, until the reader is closed.
+     */
+    public final class Tick implements RunTick {
+
+        private int index = -1;
+        private ByteBuffer segment;
+        private int offset;
+
+        private Tick() {}
+
+        /** Points this view at tick {@code index} and returns it. */
+        public Tick moveTo(int index) {
+            if (index < 0 || index >= tickCount) {
+                throw new IndexOutOfBoundsException("Tick " + index + " of " + tickCount);
+            }
+            this.index = index;
+            this.segment = segments[index / ticksPerSegment];
+            this.offset = (index % ticksPerSegment) * stride;
+            return this;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public int flags() {
+            return Short.toUnsignedInt(segment.getShort(offset + Pkraw.TICK_FLAGS));
+        }
+
+        /** Quantized distances, row-major; see {@link Pkraw#dequantizeDistance}. */
+        public ShortBuffer distances() {
+            return segment.slice(offset + Pkraw.TICK_DISTANCES, cells * Short.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        }
+
+        /** Palette indices, row-major, {@link #blockIndexBytes} each. */
+        public ByteBuffer blockIndices() {
+            return segment.slice(offset + Pkraw.blocksOffset(width, height), cells * blockIndexBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        public short quantizedDistance(int row, int column) {
+            return segment.getShort(offset + Pkraw.TICK_DISTANCES + (row * width + column) * Short.BYTES);
+        }
+
+        public int blockIndex(int row, int column) {
+            int at = offset + Pkraw.blocksOffset(width, height) + (row * width + column) * blockIndexBytes;
+            return blockIndexBytes == 1 ? Byte.toUnsignedInt(segment.get(at)) : Short.toUnsignedInt(segment.getShort(at));
+        }
+
+        @Override
+        public long sequence() {
+            return Integer.toUnsignedLong(segment.getInt(offset + Pkraw.TICK_SEQUENCE));
+        }
+
+        @Override
+        public boolean inputForward() {
+            return (flags() & Pkraw.FLAG_FORWARD) != 0;
+        }
+
+        @Override
+        public boolean inputLeft() {
+            return (flags() & Pkraw.FLAG_LEFT) != 0;
+        }
+
+        @Override
+        public boolean inputRight() {
+            return (flags() & Pkraw.FLAG_RIGHT) != 0;
+        }
+
+        @Override
+        public boolean inputBack() {
+            return (flags() & Pkraw.FLAG_BACK) != 0;
+        }
+
+        @Override
+        public boolean inputJump() {
+            return (flags() & Pkraw.FLAG_JUMP) != 0;
+        }
+
+        @Override
+        public boolean inputSneak() {
+            return (flags() & Pkraw.FLAG_SNEAK) != 0;
+        }
+
+        @Override
+        public boolean inputSprint() {
+            return (flags() & Pkraw.FLAG_SPRINT) != 0;
+        }
+
+        @Override
+        public float yaw() {
+            return segment.getFloat(offset + Pkraw.TICK_YAW);
+        }
+
+        @Override
+        public double velocityX() {
+            return segment.getFloat(offset + Pkraw.TICK_VELOCITY_X);
+        }
+
+        @Override
+        public double velocityY() {
+            return segment.getFloat(offset + Pkraw.TICK_VELOCITY_Y);
+        }
+
+        @Override
+        public double velocityZ() {
+            return segment.getFloat(offset + Pkraw.TICK_VELOCITY_Z);
+        }
+
+        @Override
+        public boolean isOnGround() {
+            return (flags() & Pkraw.FLAG_ON_GROUND) != 0;
+        }
+
+        @Override
+        public boolean isCollidedHorizontally() {
+            return (flags() & Pkraw.FLAG_COLLIDED_HORIZONTALLY) != 0;
+        }
+
+        @Override
+        public boolean isCollidedVertically() {
+            return (flags() & Pkraw.FLAG_COLLIDED_VERTICALLY) != 0;
+        }
+
+        @Override
+        public double playerY() {
+            return segment.getDouble(offset + Pkraw.TICK_PLAYER_Y);
+        }
+
+        @Override
+        public boolean isInFallZone() {
+            return (flags() & Pkraw.FLAG_IN_FALL_ZONE) != 0;
+        }
+
+        @Override
+        public int visionWidth() {
+            return width;
+        }
+
+        @Override
+        public int visionHeight() {
+            return height;
+        }
+
+        /** Dequantized, so within about 0.001 blocks of the recorded distance. */
+        @Override
+        public float visionDistance(int row, int column) {
+            return Pkraw.dequantizeDistance(quantizedDistance(row, column), rayDistance);
+        }
+
+        /** The raw id in the game that recorded the run; map {@link #blockIndex} by name across versions. */
+        @Override
+        public int visionBlockState(int row, int column) {
+            return paletteRawIds[blockIndex(row, column)];
+        }
+    }
+}
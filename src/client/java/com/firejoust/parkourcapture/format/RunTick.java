@@ -0,0 +1,52 @@
+package com.firejoust.parkourcapture.format;
+
+/**
+ * Read access to one recorded tick, independent of where it is stored. The accessors mirror the
+ * run file's tick keys; grids are addressed by {@code row} (0 is straight up) and {@code column}.
+ */
+public interface RunTick {
+
+    /** Capture order within the recording, counting dropped ticks. */
+    long sequence();
+
+    boolean inputForward();
+
+    boolean inputLeft();
+
+    boolean inputRight();
+
+    boolean inputBack();
+
+    boolean inputJump();
+
+    boolean inputSneak();
+
+    boolean inputSprint();
+
+    float yaw();
+
+    double velocityX();
+
+    double velocityY();
+
+    double velocityZ();
+
+    boolean isOnGround();
+
+    boolean isCollidedHorizontally();
+
+    boolean isCollidedVertically();
+
+    double playerY();
+
+    boolean isInFallZone();
+
+    int visionWidth();
+
+    int visionHeight();
+
+    float visionDistance(int row, int column);
+
+    /** Raw block-state id of the block the ray hit. */
+    int visionBlockState(int row, int column);
+}
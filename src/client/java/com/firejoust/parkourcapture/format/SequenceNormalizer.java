@@ -0,0 +1,165 @@
+package com.firejoust.parkourcapture.format;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Normalizes a run's ticks one at a time as {@link Pkdseq} does, keeping the last {@link Pkdseq#K}
+ * in a ring. Memory stays at K ticks however long the run gets.
+ * <p>
+ * Each {@link #push} normalizes a tick and says whether it completes a training window: K
+ * consecutive captured ticks, none dropped in between, all with the expected grid size. The newest
+ * tick and window can then be put into a buffer in either {@link Pkdseq} layout, or the newest
+ * tick's values read directly; both stay valid until the next push.
+ * <p>
+ * Not thread-safe; ticks must be pushed in run order from one thread.
+ */
+public final class SequenceNormalizer {
+
+    private final int width;
+    private final int height;
+    private final float targetYaw;
+    private final int fallZoneY;
+    private final IntUnaryOperator categoryOf;
+
+    // --- Ring of the last K normalized ticks, indexed by tick index % K ---
+    private final byte[][] distances;
+    private final byte[][] categories;
+    private final float[][] proprio;
+    private final int[] actions;
+    private final long[] sequences;
+    private final boolean[] gridMatches;
+    private int ticks = 0;
+
+    /** @param categoryOf maps a raw block-state id to its {@link BlockCategory} */
+    public SequenceNormalizer(int width, int height, float targetYaw, int fallZoneY, IntUnaryOperator categoryOf) {
+        this.width = width;
+        this.height = height;
+        this.targetYaw = targetYaw;
+        this.fallZoneY = fallZoneY;
+        this.categoryOf = categoryOf;
+        int cells = width * height;
+        this.distances = new byte[Pkdseq.K][cells];
+        this.categories = new byte[Pkdseq.K][cells];
+        this.proprio = new float[Pkdseq.K][Pkdseq.PROPRIO_SIZE];
+        this.actions = new int[Pkdseq.K];
+        this.sequences = new long[Pkdseq.K];
+        this.gridMatches = new boolean[Pkdseq.K];
+    }
+
+    /**
+     * Normalizes the run's next tick into the ring.
+     *
+     * @return whether the tick completes a window
+     */
+    public boolean push(RunTick tick) {
+        int slot = ticks++ % Pkdseq.K;
+        sequences[slot] = tick.sequence();
+        actions[slot] = Pkdseq.actionByte(tick);
+        gridMatches[slot] = tick.visionWidth() == width && tick.visionHeight() == height;
+        if (gridMatches[slot]) {
+            byte[] tickDistances = distances[slot];
+            byte[] tickCategories = categories[slot];
+            for (int r = 0, cell = 0; r < height; r++) {
+                for (int c = 0; c < width; c++, cell++) {
+                    tickDistances[cell] = Pkdseq.quantizeDistance(tick.visionDistance(r, c));
+                    tickCategories[cell] = (byte) categoryOf.applyAsInt(tick.visionBlockState(r, c));
+                }
+            }
+            Pkdseq.proprio(tick, targetYaw, fallZoneY, proprio[slot], 0);
+        }
+        return ticks >= Pkdseq.K && windowIsValid();
+    }
+
+    /** Ticks pushed so far; the newest is tick {@code tickCount() - 1}. */
+    public int tickCount() {
+        return ticks;
+    }
+
+    // --- Newest tick, valid until the next push ---
+
+    /** Whether the newest tick has the expected grid size; if not, its grids and proprio are stale. */
+    public boolean gridMatches() {
+        return gridMatches[newest()];
+    }
+
+    /** Distances in tenths of a block, row-major. */
+    public byte[] distances() {
+        return distances[newest()];
+    }
+
+    /** {@link BlockCategory} of each cell, row-major. */
+    public byte[] categories() {
+        return categories[newest()];
+    }
+
+    public float[] proprio() {
+        return proprio[newest()];
+    }
+
+    public int action() {
+        return actions[newest()];
+    }
+
+    // --- Output ---
+
+    /**
+     * Puts the newest tick into {@code out} as a version 2 tick, {@link Pkdseq#tickSize} bytes; all
+     * zeros if its grid size is wrong. {@code out} must be big-endian.
+     */
+    public void putTick(ByteBuffer out) {
+        int slot = newest();
+        if (gridMatches[slot]) {
+            out.put(distances[slot]);
+            out.put(categories[slot]);
+            for (float value : proprio[slot]) {
+                out.putFloat(value);
+            }
+            out.put((byte) actions[slot]);
+        } else {
+            // Rare enough that a byte at a time will do
+            for (int i = Pkdseq.tickSize(width, height); i > 0; i--) {
+                out.put((byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Puts the window ending at the newest tick into {@code out} as a version 1 sequence,
+     * {@link Pkdseq#sequenceSize} bytes. Only meaningful when the last push returned {@code true}.
+     * {@code out} must be big-endian.
+     */
+    public void putWindow(ByteBuffer out) {
+        int first = ticks - Pkdseq.K;
+        for (int offset = 0; offset < Pkdseq.K; offset++) {
+            out.put(distances[(first + offset) % Pkdseq.K]);
+        }
+        for (int offset = 0; offset < Pkdseq.K; offset++) {
+            out.put(categories[(first + offset) % Pkdseq.K]);
+        }
+        for (int offset = 0; offset < Pkdseq.K; offset++) {
+            for (float value : proprio[(first + offset) % Pkdseq.K]) {
+                out.putFloat(value);
+            }
+        }
+        out.put((byte) actions[newest()]);
+    }
+
+    private int newest() {
+        return (ticks - 1) % Pkdseq.K;
+    }
+
+    // Windows must be K consecutive captured ticks, all with the expected grid size
+    private boolean windowIsValid() {
+        int first = (ticks - Pkdseq.K) % Pkdseq.K;
+        if (sequences[newest()] - sequences[first] != Pkdseq.K - 1) {
+            return false;
+        }
+        for (boolean matches : gridMatches) {
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,285 @@
+package com.firejoust.parkourcapture.io;
+
+import com.firejoust.parkourcapture.format.Fixed3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Minimal streaming JSON writer for run files, encoding straight into a large byte buffer that
+ * is flushed to a {@link FileChannel}.
+ * <p>
+ * Output matches Gson's compact {@code JsonWriter}: no whitespace, the same string escapes.
+ * Numbers are written by {@link #fixed3}, which formats like the old {@code BigDecimal}
+ * serializers ({@code setScale(3, HALF_UP)}, so always three decimals and never {@code -0.000}),
+ * allocating only for values next to a rounding tie. Only the subset of JSON the run format
+ * needs is supported, and the caller is trusted to nest names and values correctly.
+ * <p>
+ * Not thread-safe.
+ */
+final class JsonEmitter implements Closeable {
+
+    private static final int MAX_DEPTH = 16;
+    // Sign, 12 integer digits below Fixed3.MAX_UNITS, the point and three decimals
+    private static final int MAX_FIXED3_LENGTH = 17;
+    private static final int MAX_LONG_LENGTH = 20;
+    // "000" to "999", three bytes each
+    private static final byte[] THOUSANDS = new byte[3000];
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (int i = 0; i < 1000; i++) {
+            THOUSANDS[i * 3] = (byte) ('0' + i / 100);
+            THOUSANDS[i * 3 + 1] = (byte) ('0' + i / 10 % 10);
+            THOUSANDS[i * 3 + 2] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private final FileChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer view;
+    private int position = 0;
+
+    // Per open container: whether the next element needs a leading comma
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    // Set between a name and its value, which must not get a comma
+    private boolean afterName = false;
+
+    JsonEmitter(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.buffer = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    // --- Structure ---
+
+    JsonEmitter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonEmitter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonEmitter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonEmitter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonEmitter name(String name) throws IOException {
+        separate();
+        quoted(name);
+        put(':');
+        afterName = true;
+        return this;
+    }
+
+    // --- Values ---
+
+    JsonEmitter value(boolean value) throws IOException {
+        separate();
+        put(value ? TRUE : FALSE);
+        return this;
+    }
+
+    JsonEmitter value(long value) throws IOException {
+        separate();
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+        ensure(MAX_LONG_LENGTH);
+        int pos = position;
+        if (value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        position = digits(buffer, pos, value);
+        return this;
+    }
+
+    JsonEmitter value(String value) throws IOException {
+        separate();
+        quoted(value);
+        return this;
+    }
+
+    /**
+     * Writes {@code value} rounded half-up to exactly three decimals by {@link Fixed3}, as
+     * {@code BigDecimal.valueOf(value).setScale(3, HALF_UP)} does. NaN and infinities become
+     * strings, as they did before.
+     */
+    JsonEmitter fixed3(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value(Double.toString(value));
+        }
+        separate();
+        if (Math.abs(value) * 1000.0 >= Fixed3.MAX_UNITS) {
+            put(BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP).toPlainString()
+                    .getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+        long units = Fixed3.units(value);
+        ensure(MAX_FIXED3_LENGTH);
+        byte[] buffer = this.buffer;
+        int pos = position;
+        if (units != 0 && value < 0) {
+            buffer[pos++] = '-';
+        }
+        long whole = units / 1000;
+        pos = digits(buffer, pos, whole);
+        int fraction = (int) (units - whole * 1000) * 3;
+        buffer[pos] = '.';
+        buffer[pos + 1] = THOUSANDS[fraction];
+        buffer[pos + 2] = THOUSANDS[fraction + 1];
+        buffer[pos + 3] = THOUSANDS[fraction + 2];
+        position = pos + 4;
+        return this;
+    }
+
+    /** Writes out everything buffered so far and closes the file. */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // --- Encoding ---
+
+    private JsonEmitter open(char bracket) throws IOException {
+        separate();
+        put(bracket);
+        needsComma[++depth] = false;
+        return this;
+    }
+
+    private JsonEmitter close(char bracket) throws IOException {
+        depth--;
+        put(bracket);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (needsComma[depth]) {
+            put(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    // Writes a non-negative value at pos, which the caller has made room for, and returns the end
+    private static int digits(byte[] buffer, int pos, long value) {
+        if (value >= 1000) {
+            long rest = value / 1000;
+            pos = digits(buffer, pos, rest);
+            int group = (int) (value - rest * 1000) * 3;
+            buffer[pos] = THOUSANDS[group];
+            buffer[pos + 1] = THOUSANDS[group + 1];
+            buffer[pos + 2] = THOUSANDS[group + 2];
+            return pos + 3;
+        }
+        // Leading digits of the last group, without its zero padding
+        int group = (int) value * 3;
+        if (value >= 100) {
+            buffer[pos++] = THOUSANDS[group];
+        }
+        if (value >= 10) {
+            buffer[pos++] = THOUSANDS[group + 1];
+        }
+        buffer[pos++] = THOUSANDS[group + 2];
+        return pos;
+    }
+
+    // Same escapes as Gson's JsonWriter without HTML-safe mode
+    private void quoted(String value) throws IOException {
+        put('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> put('\\', '"');
+                case '\\' -> put('\\', '\\');
+                case '\t' -> put('\\', 't');
+                case '\b' -> put('\\', 'b');
+                case '\n' -> put('\\', 'n');
+                case '\r' -> put('\\', 'r');
+                case '\f' -> put('\\', 'f');
+                case '\u2028', '\u2029' -> unicodeEscape(c);
+                default -> {
+                    if (c < 0x20) {
+                        unicodeEscape(c);
+                    } else if (c < 0x80) {
+                        put(c);
+                    } else {
+                        int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+                        put(value.substring(i, end).getBytes(StandardCharsets.UTF_8));
+                        i = end - 1;
+                    }
+                }
+            }
+        }
+        put('"');
+    }
+
+    private void unicodeEscape(char c) throws IOException {
+        ensure(6);
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[c >> 12 & 0xF];
+        buffer[position++] = HEX[c >> 8 & 0xF];
+        buffer[position++] = HEX[c >> 4 & 0xF];
+        buffer[position++] = HEX[c & 0xF];
+    }
+
+    private void put(char c) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void put(char first, char second) throws IOException {
+        ensure(2);
+        buffer[position++] = (byte) first;
+        buffer[position++] = (byte) second;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            ensure(1);
+            int count = Math.min(bytes.length - offset, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, count);
+            position += count;
+            offset += count;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.length - position < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        view.clear().limit(position);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+        position = 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.firejoust.parkourcapture.io;
+
+import java.util.Map;
+
+/**
+ * Run metadata known when a recording starts, written ahead of the ticks.
+ *
+ * @param visionInterpolatedMask {@code [row][column]} cells filled by resampling, or {@code null} if every cell is traced
+ */
+public record RunHeader(
+    long startTimestampMillis,
+    String serverIp,
+    float targetBearingYaw,
+    int fallZoneY,
+    Map<String, String> keyMappings,
+    boolean[][] visionInterpolatedMask
+) {}
@@ -0,0 +1,276 @@
+package com.firejoust.parkourcapture.io;
+
+import com.firejoust.parkourcapture.ParkourTickData;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Streams a run to disk as it is recorded instead of buffering every tick until the end.
+ * <p>
+ * Ticks go through a bounded queue to a dedicated writer thread, which serializes them into
+ * the run's {@code d} array straight from their {@link ParkourTickData} views through a
+ * {@link JsonEmitter}. Every float and double, in the header and in the vision grid alike, is
+ * written with exactly three decimals. A full queue blocks the producer, so memory stays bounded
+ * no matter how long the run is. The file is written as {@code <name>.part} and only moved into place by
+ * {@link #finish}, which appends the footer:
+ * <ul>
+ *   <li>{@code te} – stop timestamp</li>
+ *   <li>{@code dn} – number of leading ticks that are valid, i.e. up to and including the last
+ *       one on the ground. Trailing airborne ticks stay in {@code d} and readers drop them.</li>
+ *   <li>{@code dt} – capture sequence numbers of ticks that never reached the writer (dropped
+ *       under back-pressure or failed). Omitted when there are none. Ticks in {@code d} before
+ *       a gap and after it are not consecutive.</li>
+ * </ul>
+ * Ticks must be appended in increasing sequence order, one call at a time.
+ */
+public final class StreamingRunWriter {
+
+    // How often the writer thread re-checks for the end of the run while the queue is empty
+    private static final long POLL_MILLIS = 50;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Tick counts of a finished run. */
+    public record Summary(int writtenTicks, int validTicks, int droppedTicks) {}
+
+    private final Path target;
+    private final Path partial;
+    private final JsonEmitter json;
+    private final BlockingQueue<ParkourTickData> queue;
+    private final Thread thread;
+    private final Consumer<ParkourTickData> onTickWritten;
+
+    private volatile boolean finishing = false;
+    private volatile IOException failure = null;
+    // Only touched by the writer thread until it is joined
+    private int writtenTicks = 0;
+    private int lastOnGroundIndex = -1;
+    private long nextSequence = 0;
+    private final LongArrayList droppedSequences = new LongArrayList();
+
+    private StreamingRunWriter(Path target, int queueCapacity, Consumer<ParkourTickData> onTickWritten) throws IOException {
+        this.target = target;
+        this.partial = target.resolveSibling(target.getFileName() + ".part");
+        this.json = new JsonEmitter(partial, BUFFER_SIZE);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.onTickWritten = onTickWritten;
+        this.thread = new Thread(this::drain, "ParkourCapture-Writer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Creates {@code target}'s partial file, writes the header and starts the writer thread.
+     * {@code onTickWritten} runs on the writer thread once per appended tick, once the writer is
+     * done reading its view, even if writing it failed. Should it throw, the writer thread carries
+     * on and {@link #finish} reports the run as failed.
+     */
+    public static StreamingRunWriter open(Path target, RunHeader header, int queueCapacity,
+                                          Consumer<ParkourTickData> onTickWritten) throws IOException {
+        StreamingRunWriter writer = new StreamingRunWriter(target, queueCapacity, onTickWritten);
+        try {
+            writer.writeHeader(header);
+        } catch (IOException | RuntimeException e) {
+            writer.json.close();
+            Files.deleteIfExists(writer.partial);
+            throw e;
+        }
+        writer.thread.start();
+        return writer;
+    }
+
+    public Path target() {
+        return target;
+    }
+
+    /** Queues a tick for writing, blocking while the queue is full. */
+    public void append(ParkourTickData tick) throws InterruptedException {
+        queue.put(tick);
+    }
+
+    /**
+     * Writes the remaining ticks and the footer, then moves the file into place.
+     *
+     * @param capturedTicks how many sequence numbers were handed out, written or not
+     */
+    public Summary finish(long stopTimestampMillis, long capturedTicks) throws IOException, InterruptedException {
+        stopThread();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            recordGap(capturedTicks);
+            int validTicks = lastOnGroundIndex >= 0 ? lastOnGroundIndex + 1 : writtenTicks;
+            json.endArray();
+            json.name("te").value(stopTimestampMillis);
+            json.name("dn").value(validTicks);
+            if (!droppedSequences.isEmpty()) {
+                json.name("dt").beginArray();
+                for (int i = 0; i < droppedSequences.size(); i++) {
+                    json.value(droppedSequences.getLong(i));
+                }
+                json.endArray();
+            }
+            json.endObject();
+            json.close();
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            return new Summary(writtenTicks, validTicks, droppedSequences.size());
+        } catch (IOException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /** Stops writing and deletes the partial file. */
+    public void abort() {
+        try {
+            stopThread();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        discard();
+    }
+
+    private void stopThread() throws InterruptedException {
+        finishing = true;
+        thread.join();
+    }
+
+    private void discard() {
+        try {
+            json.close();
+        } catch (IOException ignored) {
+            // Already failed; the file is deleted below anyway
+        }
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException ignored) {
+            // Leaves a stray .part file behind, which no reader picks up
+        }
+    }
+
+    private void writeHeader(RunHeader header) throws IOException {
+        json.beginObject();
+        json.name("ts").value(header.startTimestampMillis());
+        json.name("ip").value(header.serverIp());
+        json.name("ty").fixed3(header.targetBearingYaw());
+        json.name("tfy").value(header.fallZoneY());
+        json.name("map").beginObject();
+        for (Map.Entry<String, String> entry : header.keyMappings().entrySet()) {
+            json.name(entry.getKey()).value(entry.getValue());
+        }
+        json.endObject();
+        if (header.visionInterpolatedMask() != null) {
+            json.name("vi").beginArray();
+            for (boolean[] row : header.visionInterpolatedMask()) {
+                json.beginArray();
+                for (boolean interpolated : row) {
+                    json.value(interpolated);
+                }
+                json.endArray();
+            }
+            json.endArray();
+        }
+        json.name("d").beginArray();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                ParkourTickData tick = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (tick == null) {
+                    // The producer sets finishing only after its last append
+                    if (finishing && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                // After a failure keep draining so the producer never blocks on a dead writer
+                if (failure == null) {
+                    write(tick);
+                }
+                try {
+                    onTickWritten.accept(tick);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = new IOException("Tick callback failed for tick " + tick.sequence(), e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(ParkourTickData tick) {
+        recordGap(tick.sequence());
+        nextSequence = tick.sequence() + 1;
+        try {
+            writeTick(tick);
+        } catch (IOException e) {
+            failure = e;
+            return;
+        } catch (RuntimeException e) {
+            failure = new IOException("Failed to write tick " + tick.sequence(), e);
+            return;
+        }
+        if (tick.isOnGround()) {
+            lastOnGroundIndex = writtenTicks;
+        }
+        writtenTicks++;
+    }
+
+    // Same keys and order as Gson's reflective output for the former tick record
+    private void writeTick(ParkourTickData tick) throws IOException {
+        json.beginObject();
+        json.name("f").value(tick.inputForward());
+        json.name("l").value(tick.inputLeft());
+        json.name("r").value(tick.inputRight());
+        json.name("b").value(tick.inputBack());
+        json.name("j").value(tick.inputJump());
+        json.name("n").value(tick.inputSneak());
+        json.name("s").value(tick.inputSprint());
+        json.name("y").fixed3(tick.yaw());
+        json.name("vx").fixed3(tick.velocityX());
+        json.name("vy").fixed3(tick.velocityY());
+        json.name("vz").fixed3(tick.velocityZ());
+        json.name("g").value(tick.isOnGround());
+        json.name("ch").value(tick.isCollidedHorizontally());
+        json.name("cv").value(tick.isCollidedVertically());
+        json.name("py").fixed3(tick.playerY());
+        json.name("vd").beginArray();
+        for (int r = 0; r < tick.visionHeight(); r++) {
+            json.beginArray();
+            for (int c = 0; c < tick.visionWidth(); c++) {
+                json.fixed3(tick.visionDistance(r, c));
+            }
+            json.endArray();
+        }
+        json.endArray();
+        json.name("vb").beginArray();
+        for (int r = 0; r < tick.visionHeight(); r++) {
+            json.beginArray();
+            for (int c = 0; c < tick.visionWidth(); c++) {
+                json.value(tick.visionBlockState(r, c));
+            }
+            json.endArray();
+        }
+        json.endArray();
+        json.name("fz").value(tick.isInFallZone());
+        json.endObject();
+    }
+
+    // Every sequence number skipped between the last written tick and this one was dropped
+    private void recordGap(long sequence) {
+        for (long missing = nextSequence; missing < sequence; missing++) {
+            droppedSequences.add(missing);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.firejoust.parkourcapture.vision;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects client-side block changes and chunk (un)loads reported by the world mixins, so
+ * cached vision results can be invalidated precisely. Fed and drained on the client thread.
+ * <p>
+ * A drained change list only reaches the caches if its tick is traced, so a capture the pipeline
+ * drops hands its changes back with {@link #restore}, and a tick whose vision fails on a worker
+ * asks for a full invalidation with {@link #requestInvalidateAll}.
+ */
+public final class BlockChangeTracker {
+
+    // Past this many pending changes a full invalidation is cheaper than testing each one
+    private static final int MAX_TRACKED_CHANGES = 256;
+
+    private static final LongArrayList CHANGED_BLOCKS = new LongArrayList();
+    private static final LongArrayList CHANGED_CHUNKS = new LongArrayList();
+    private static boolean invalidateAll = true;
+    // The only state written off the client thread
+    private static final AtomicBoolean INVALIDATE_REQUESTED = new AtomicBoolean();
+
+    private BlockChangeTracker() {}
+
+    public static void onBlockChanged(BlockPos pos) {
+        record(CHANGED_BLOCKS, pos.asLong());
+    }
+
+    public static void onChunkChanged(ChunkPos pos) {
+        record(CHANGED_CHUNKS, pos.toLong());
+    }
+
+    /** Forces the next drain to invalidate everything, e.g. when a recording starts. */
+    public static void invalidateAll() {
+        CHANGED_BLOCKS.clear();
+        CHANGED_CHUNKS.clear();
+        invalidateAll = true;
+    }
+
+    /** Like {@link #invalidateAll}, but safe to call from any thread. */
+    public static void requestInvalidateAll() {
+        INVALIDATE_REQUESTED.set(true);
+    }
+
+    /**
+     * Puts drained changes back, so the next drain reports them together with any recorded since.
+     * Used for a capture that was dropped before its vision was traced.
+     */
+    public static void restore(BlockChanges changes) {
+        if (changes.invalidateAll()) {
+            invalidateAll();
+            return;
+        }
+        for (long packed : changes.positions()) {
+            record(CHANGED_BLOCKS, packed);
+        }
+        for (long packed : changes.chunks()) {
+            record(CHANGED_CHUNKS, packed);
+        }
+    }
+
+    /** Returns and clears the changes recorded since the previous drain. */
+    public static BlockChanges drain() {
+        BlockChanges changes;
+        if (INVALIDATE_REQUESTED.getAndSet(false) || invalidateAll) {
+            changes = BlockChanges.ALL;
+        } else if (CHANGED_BLOCKS.isEmpty() && CHANGED_CHUNKS.isEmpty()) {
+            changes = BlockChanges.NONE;
+        } else {
+            changes = new BlockChanges(CHANGED_BLOCKS.toLongArray(), CHANGED_CHUNKS.toLongArray(), false);
+        }
+        CHANGED_BLOCKS.clear();
+        CHANGED_CHUNKS.clear();
+        invalidateAll = false;
+        return changes;
+    }
+
+    private static void record(LongArrayList list, long packed) {
+        if (invalidateAll) {
+            return;
+        }
+        if (CHANGED_BLOCKS.size() + CHANGED_CHUNKS.size() >= MAX_TRACKED_CHANGES) {
+            invalidateAll();
+            return;
+        }
+        list.add(packed);
+    }
+}
@@ -0,0 +1,18 @@
+package com.firejoust.parkourcapture.vision;
+
+/**
+ * World changes since the previous capture: block positions (packed with
+ * {@link net.minecraft.util.math.BlockPos#asLong}) and whole chunk columns that were loaded or
+ * unloaded (packed with {@link net.minecraft.util.math.ChunkPos#toLong}). {@code invalidateAll}
+ * is set when individual entries are not enough, e.g. at the start of a recording or when too
+ * many changes piled up.
+ */
+public record BlockChanges(long[] positions, long[] chunks, boolean invalidateAll) {
+
+    public static final BlockChanges NONE = new BlockChanges(new long[0], new long[0], false);
+    public static final BlockChanges ALL = new BlockChanges(new long[0], new long[0], true);
+
+    public boolean isEmpty() {
+        return !invalidateAll && positions.length == 0 && chunks.length == 0;
+    }
+}
@@ -0,0 +1,189 @@
+package com.firejoust.parkourcapture.vision;
+
+import com.firejoust.parkourcapture.format.BlockCategory;
+import com.google.common.collect.ImmutableSet;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.LightBlock;
+import net.minecraft.block.PowderSnowBlock;
+import net.minecraft.block.ScaffoldingBlock;
+import net.minecraft.block.ShapeContext;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.shape.VoxelShape;
+import net.minecraft.util.shape.VoxelShapes;
+import net.minecraft.world.EmptyBlockView;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Flat per-{@link BlockState} lookup table indexed by {@link Block#getRawIdFromState raw state id}.
+ * <p>
+ * Each entry holds classification flags, the normalizer's {@link BlockCategory} and, for states
+ * whose shapes do not depend on position, player or neighbours, the outline and collider boxes
+ * flattened to {@code {minX, minY, minZ, maxX, maxY, maxZ}*}. The raycaster's inner loop can then
+ * decide almost every voxel from array loads alone; {@link #DYNAMIC} and {@link #HAS_FLUID}
+ * states still go through the block API.
+ * <p>
+ * Built at client start and rebuilt whenever raw ids may have been remapped (joining a world).
+ * World snapshots and vision arenas store raw ids as unsigned 16-bit values, so building fails
+ * if the registry holds more than {@link #MAX_STATE_IDS} states rather than let ids wrap; the
+ * client then keeps recording disabled.
+ */
+public final class BlockShapeTable {
+
+    public static final int SPECIAL = 1;
+    public static final int OUTLINE_EMPTY = 1 << 1;
+    public static final int OUTLINE_FULL = 1 << 2;
+    public static final int COLLIDER_EMPTY = 1 << 3;
+    public static final int COLLIDER_FULL = 1 << 4;
+    public static final int HAS_FLUID = 1 << 5;
+    /** Shapes depend on position, the player or the world; ask the block every time. */
+    public static final int DYNAMIC = 1 << 6;
+    /** No outline, collider or fluid: rays pass straight through. Air, cave air, void air and the like. */
+    public static final int EMPTY = 1 << 7;
+
+    /** Raw state ids must fit an unsigned {@code short}. */
+    public static final int MAX_STATE_IDS = 1 << 16;
+
+    // --- Set of Special Blocks to Check After Outline Hit ---
+    // These are the blocks we prioritize if hit by the OUTLINE stage of the raycaster.
+    private static final Set<Block> SPECIAL_NON_COLLIDABLE_BLOCKS = ImmutableSet.of(
+            Blocks.LADDER,
+            Blocks.VINE,
+            Blocks.TWISTING_VINES,
+            Blocks.TWISTING_VINES_PLANT,
+            Blocks.WEEPING_VINES,
+            Blocks.WEEPING_VINES_PLANT,
+            Blocks.WATER,
+            Blocks.LAVA,
+            Blocks.COBWEB
+            // Slime, Soul Sand, Ice, Honey have collision, COLLIDER should hit them.
+    );
+
+    private static volatile BlockShapeTable current;
+
+    private final BlockState[] states;
+    private final byte[] flags;
+    private final byte[] categories;
+    private final double[][] outlineBoxes;
+    private final double[][] colliderBoxes;
+
+    private BlockShapeTable(int size) {
+        this.states = new BlockState[size];
+        this.flags = new byte[size];
+        this.categories = new byte[size];
+        this.outlineBoxes = new double[size][];
+        this.colliderBoxes = new double[size][];
+    }
+
+    public static BlockShapeTable get() {
+        BlockShapeTable table = current;
+        return table != null ? table : rebuild();
+    }
+
+    public static synchronized BlockShapeTable rebuild() {
+        int stateCount = Block.STATE_IDS.size();
+        if (stateCount > MAX_STATE_IDS) {
+            throw new IllegalStateException("too many block states for vision (" + stateCount
+                    + ", at most " + MAX_STATE_IDS + ")");
+        }
+        BlockShapeTable table = new BlockShapeTable(stateCount);
+        for (BlockState state : Block.STATE_IDS) {
+            table.classify(Block.getRawIdFromState(state), state);
+        }
+        current = table;
+        return table;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    public BlockState state(int rawId) {
+        return states[rawId];
+    }
+
+    public int flags(int rawId) {
+        return flags[rawId] & 0xFF;
+    }
+
+    public byte category(int rawId) {
+        return categories[rawId];
+    }
+
+    /** Flattened outline boxes; only meaningful for non-{@link #DYNAMIC} states. */
+    public double[] outlineBoxes(int rawId) {
+        return outlineBoxes[rawId];
+    }
+
+    /** Flattened collider boxes; only meaningful for non-{@link #DYNAMIC} states. */
+    public double[] colliderBoxes(int rawId) {
+        return colliderBoxes[rawId];
+    }
+
+    private void classify(int rawId, BlockState state) {
+        states[rawId] = state;
+        Block block = state.getBlock();
+        Identifier id = Registries.BLOCK.getId(block);
+        categories[rawId] = Identifier.DEFAULT_NAMESPACE.equals(id.getNamespace())
+                ? BlockCategory.ofBlockName(id.getPath()) : BlockCategory.DEFAULT;
+
+        int entry = 0;
+        if (SPECIAL_NON_COLLIDABLE_BLOCKS.contains(block)) entry |= SPECIAL;
+        if (!state.getFluidState().isEmpty()) entry |= HAS_FLUID;
+
+        if (isDynamic(state)) {
+            flags[rawId] = (byte) (entry | DYNAMIC);
+            return;
+        }
+        try {
+            VoxelShape outline = state.getOutlineShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN, ShapeContext.absent());
+            VoxelShape collider = state.getCollisionShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN, ShapeContext.absent());
+            entry |= shapeFlags(outline, OUTLINE_EMPTY, OUTLINE_FULL);
+            entry |= shapeFlags(collider, COLLIDER_EMPTY, COLLIDER_FULL);
+            outlineBoxes[rawId] = flatten(outline);
+            colliderBoxes[rawId] = flatten(collider);
+        } catch (RuntimeException e) {
+            // Some block needs a real world to answer; leave it to the per-voxel path
+            entry |= DYNAMIC;
+        }
+        if ((entry & (OUTLINE_EMPTY | COLLIDER_EMPTY | HAS_FLUID | DYNAMIC)) == (OUTLINE_EMPTY | COLLIDER_EMPTY)) {
+            entry |= EMPTY;
+        }
+        flags[rawId] = (byte) entry;
+    }
+
+    // Shapes that vary with position (model offsets), the player (context) or block entities
+    private static boolean isDynamic(BlockState state) {
+        Block block = state.getBlock();
+        return state.hasDynamicBounds() || state.hasModelOffset()
+                || block instanceof ScaffoldingBlock || block instanceof PowderSnowBlock || block instanceof LightBlock;
+    }
+
+    private static int shapeFlags(VoxelShape shape, int emptyFlag, int fullFlag) {
+        if (shape.isEmpty()) return emptyFlag;
+        if (shape == VoxelShapes.fullCube()) return fullFlag;
+        return 0;
+    }
+
+    /** Flattens a shape's boxes to {@code {minX, minY, minZ, maxX, maxY, maxZ}*}. */
+    static double[] flatten(VoxelShape shape) {
+        List<Box> list = shape.getBoundingBoxes();
+        double[] boxes = new double[list.size() * 6];
+        for (int i = 0; i < list.size(); i++) {
+            Box box = list.get(i);
+            boxes[i * 6] = box.minX;
+            boxes[i * 6 + 1] = box.minY;
+            boxes[i * 6 + 2] = box.minZ;
+            boxes[i * 6 + 3] = box.maxX;
+            boxes[i * 6 + 4] = box.maxY;
+            boxes[i * 6 + 5] = box.maxZ;
+        }
+        return boxes;
+    }
+}
@@ -0,0 +1,135 @@
+package com.firejoust.parkourcapture.vision;
+
+/**
+ * Non-uniform sampling layout for the vision grid.
+ * <p>
+ * Every cell inside the fovea rectangle (rows {@code top..bottom}, columns {@code left..right},
+ * inclusive) is traced. Outside it, only cells on a sparse lattice are: rows and columns that
+ * are multiples of the stride, plus the last row and column so every cell has anchors on all
+ * sides. {@link #resample} then fills the remaining cells so downstream consumers still get the
+ * full fixed-size grid: distances bilinearly from the four surrounding lattice anchors, block
+ * ids from the nearest one (ties go to the upper-left anchor). Which cells were filled that way
+ * is fixed by the layout and exposed as {@link #interpolatedMask()}.
+ * <p>
+ * Immutable once built; safe to share between threads.
+ */
+public final class FoveatedLayout {
+
+    private final int width;
+    private final int height;
+    private final boolean[] traced;
+    private final int tracedCount;
+
+    // Per untraced cell, in row-major order: the four anchor cells and the row/column weights
+    private final int[] fillCells;
+    private final int[] anchor00, anchor01, anchor10, anchor11;
+    private final float[] rowWeight, columnWeight;
+    private final int[] nearestAnchor;
+
+    public FoveatedLayout(int width, int height, int top, int bottom, int left, int right, int stride) {
+        this.width = width;
+        this.height = height;
+        this.traced = new boolean[width * height];
+        stride = Math.max(1, stride);
+
+        int count = 0;
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                boolean inFovea = r >= top && r <= bottom && c >= left && c <= right;
+                if (inFovea || (isAnchor(r, height, stride) && isAnchor(c, width, stride))) {
+                    traced[r * width + c] = true;
+                    count++;
+                }
+            }
+        }
+        this.tracedCount = count;
+
+        int fills = width * height - count;
+        this.fillCells = new int[fills];
+        this.anchor00 = new int[fills];
+        this.anchor01 = new int[fills];
+        this.anchor10 = new int[fills];
+        this.anchor11 = new int[fills];
+        this.rowWeight = new float[fills];
+        this.columnWeight = new float[fills];
+        this.nearestAnchor = new int[fills];
+
+        int i = 0;
+        for (int r = 0; r < height; r++) {
+            int r0 = anchorAtOrBefore(r, stride);
+            int r1 = anchorAtOrAfter(r, height, stride);
+            float wr = r1 == r0 ? 0.0f : (float) (r - r0) / (r1 - r0);
+            for (int c = 0; c < width; c++) {
+                int cell = r * width + c;
+                if (traced[cell]) {
+                    continue;
+                }
+                int c0 = anchorAtOrBefore(c, stride);
+                int c1 = anchorAtOrAfter(c, width, stride);
+                float wc = c1 == c0 ? 0.0f : (float) (c - c0) / (c1 - c0);
+                fillCells[i] = cell;
+                anchor00[i] = r0 * width + c0;
+                anchor01[i] = r0 * width + c1;
+                anchor10[i] = r1 * width + c0;
+                anchor11[i] = r1 * width + c1;
+                rowWeight[i] = wr;
+                columnWeight[i] = wc;
+                nearestAnchor[i] = (wr > 0.5f ? r1 : r0) * width + (wc > 0.5f ? c1 : c0);
+                i++;
+            }
+        }
+    }
+
+    private static boolean isAnchor(int index, int size, int stride) {
+        return index % stride == 0 || index == size - 1;
+    }
+
+    private static int anchorAtOrBefore(int index, int stride) {
+        return index - index % stride;
+    }
+
+    private static int anchorAtOrAfter(int index, int size, int stride) {
+        return index % stride == 0 ? index : Math.min(size - 1, index - index % stride + stride);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /** Number of cells actually raycast per grid. */
+    public int tracedCount() {
+        return tracedCount;
+    }
+
+    public boolean isTraced(int row, int column) {
+        return traced[row * width + column];
+    }
+
+    /** Fills every untraced cell of the grid from its lattice anchors, which must already be traced. */
+    public void resample(VisionGrid grid) {
+        for (int i = 0; i < fillCells.length; i++) {
+            float wr = rowWeight[i];
+            float wc = columnWeight[i];
+            float top = lerp(grid.distance(anchor00[i]), grid.distance(anchor01[i]), wc);
+            float bottom = lerp(grid.distance(anchor10[i]), grid.distance(anchor11[i]), wc);
+            grid.set(fillCells[i], lerp(top, bottom, wr), grid.rawId(nearestAnchor[i]));
+        }
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /** {@code [row][column]} mask of the cells {@link #resample} fills instead of tracing. */
+    public boolean[][] interpolatedMask() {
+        boolean[][] mask = new boolean[height][width];
+        for (int cell : fillCells) {
+            mask[cell / width][cell % width] = true;
+        }
+        return mask;
+    }
+}
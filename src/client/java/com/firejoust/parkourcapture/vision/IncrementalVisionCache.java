@@ -0,0 +1,176 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.block.ShapeContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.Arrays;
+
+/**
+ * Temporal-coherence cache for the vision grid.
+ * <p>
+ * Each cell keeps its last result together with the ray it was traced along and how far that
+ * traversal walked. A cell is reused while the yaw is unchanged, the eye moved no more than the
+ * reuse epsilon, and none of the tick's {@link BlockChanges} touches a voxel within the walked
+ * part of its ray. With an epsilon of 0 the output is bit-for-bit what a full recompute gives;
+ * with a larger epsilon a reused cell was traced from an eye at most that far away. Shapes that
+ * depend on the player rather than the world (scaffolding, powder snow) are assumed not to
+ * change between reuses.
+ * <p>
+ * Change lists are deltas between consecutive captures, so ticks must be traced in capture
+ * order; a whole {@link #trace} runs under the cache's lock.
+ */
+public final class IncrementalVisionCache {
+
+    // Voxels are widened slightly so rays grazing a changed voxel's face are invalidated too
+    private static final double VOXEL_MARGIN = 1.0E-4;
+
+    private final int width;
+    private final int height;
+    private final float maxDistance;
+    private final double epsilonSquared;
+    private final RayDirectionTable directions;
+
+    private final float[] distances;
+    private final int[] blockStates;
+    private final boolean[] valid;
+    private final float[] yaw;
+    private final double[] eyeX, eyeY, eyeZ;
+    private final double[] dirX, dirY, dirZ;
+    private final double[] walked;
+
+    // Scratch segment range for the slab test; only used under the lock
+    private double clipEnter;
+    private double clipExit;
+
+    public IncrementalVisionCache(RayDirectionTable directions, float maxDistance, double reuseEpsilon) {
+        this.directions = directions;
+        this.width = directions.width();
+        this.height = directions.height();
+        this.maxDistance = maxDistance;
+        this.epsilonSquared = reuseEpsilon * reuseEpsilon;
+
+        int cells = width * height;
+        this.distances = new float[cells];
+        this.blockStates = new int[cells];
+        this.valid = new boolean[cells];
+        this.yaw = new float[cells];
+        this.eyeX = new double[cells];
+        this.eyeY = new double[cells];
+        this.eyeZ = new double[cells];
+        this.dirX = new double[cells];
+        this.dirY = new double[cells];
+        this.dirZ = new double[cells];
+        this.walked = new double[cells];
+    }
+
+    public synchronized void trace(ParallelVisionEngine engine, ThreadLocal<VoxelRaycaster> raycasters,
+                                   WorldSnapshot world, ShapeContext shapeContext, Vec3d eyePos, float playerYaw,
+                                   BlockChanges changes, VisionGrid out) {
+        try {
+            traceCells(engine, raycasters, world, shapeContext, eyePos, playerYaw, changes, out);
+        } catch (RuntimeException e) {
+            // Cells may be half-updated and this tick's changes half-applied; later ticks start over
+            Arrays.fill(valid, false);
+            throw e;
+        }
+    }
+
+    private void traceCells(ParallelVisionEngine engine, ThreadLocal<VoxelRaycaster> raycasters,
+                            WorldSnapshot world, ShapeContext shapeContext, Vec3d eyePos, float playerYaw,
+                            BlockChanges changes, VisionGrid out) {
+        invalidate(changes);
+
+        double playerYawRad = Math.toRadians(playerYaw);
+        double sinYaw = Math.sin(playerYawRad);
+        double cosYaw = Math.cos(playerYawRad);
+
+        engine.traceRows(height, r -> {
+            VoxelRaycaster raycaster = raycasters.get();
+            raycaster.bind(world, shapeContext);
+            for (int c = 0; c < width; c++) {
+                int cell = r * width + c;
+                if (!isReusable(cell, eyePos, playerYaw)) {
+                    double rayX = directions.rotatedX(cell, sinYaw, cosYaw);
+                    double rayY = directions.y(cell);
+                    double rayZ = directions.rotatedZ(cell, sinYaw, cosYaw);
+                    if (raycaster.cast(eyePos.x, eyePos.y, eyePos.z, rayX, rayY, rayZ, maxDistance)) {
+                        distances[cell] = raycaster.hitDistance();
+                        blockStates[cell] = raycaster.hitRawId();
+                    } else {
+                        distances[cell] = maxDistance;
+                        blockStates[cell] = 0; // Air
+                    }
+                    valid[cell] = true;
+                    yaw[cell] = playerYaw;
+                    eyeX[cell] = eyePos.x;
+                    eyeY[cell] = eyePos.y;
+                    eyeZ[cell] = eyePos.z;
+                    dirX[cell] = rayX;
+                    dirY[cell] = rayY;
+                    dirZ[cell] = rayZ;
+                    walked[cell] = raycaster.walkedDistance();
+                }
+                out.set(cell, distances[cell], blockStates[cell]);
+            }
+        });
+    }
+
+    private boolean isReusable(int cell, Vec3d eyePos, float playerYaw) {
+        if (!valid[cell] || yaw[cell] != playerYaw) {
+            return false;
+        }
+        double dx = eyePos.x - eyeX[cell];
+        double dy = eyePos.y - eyeY[cell];
+        double dz = eyePos.z - eyeZ[cell];
+        return dx * dx + dy * dy + dz * dz <= epsilonSquared;
+    }
+
+    private void invalidate(BlockChanges changes) {
+        if (changes.invalidateAll()) {
+            Arrays.fill(valid, false);
+            return;
+        }
+        for (long packed : changes.positions()) {
+            int x = BlockPos.unpackLongX(packed);
+            int y = BlockPos.unpackLongY(packed);
+            int z = BlockPos.unpackLongZ(packed);
+            invalidateBox(x, y, z, x + 1, y + 1, z + 1);
+        }
+        for (long packed : changes.chunks()) {
+            int minX = ChunkPos.getPackedX(packed) << 4;
+            int minZ = ChunkPos.getPackedZ(packed) << 4;
+            invalidateBox(minX, Integer.MIN_VALUE, minZ, minX + 16, Integer.MAX_VALUE, minZ + 16);
+        }
+    }
+
+    private void invalidateBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        for (int cell = 0; cell < valid.length; cell++) {
+            if (valid[cell] && segmentTouches(cell, minX - VOXEL_MARGIN, minY - VOXEL_MARGIN, minZ - VOXEL_MARGIN,
+                    maxX + VOXEL_MARGIN, maxY + VOXEL_MARGIN, maxZ + VOXEL_MARGIN)) {
+                valid[cell] = false;
+            }
+        }
+    }
+
+    // Slab test of the cell's walked ray segment against the box
+    private boolean segmentTouches(int cell, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        clipEnter = 0.0;
+        clipExit = walked[cell];
+        return clip(eyeX[cell], dirX[cell], minX, maxX)
+                && clip(eyeY[cell], dirY[cell], minY, maxY)
+                && clip(eyeZ[cell], dirZ[cell], minZ, maxZ);
+    }
+
+    private boolean clip(double origin, double dir, double min, double max) {
+        if (dir == 0.0) {
+            return origin >= min && origin <= max;
+        }
+        double t0 = (min - origin) / dir;
+        double t1 = (max - origin) / dir;
+        clipEnter = Math.max(clipEnter, Math.min(t0, t1));
+        clipExit = Math.min(clipExit, Math.max(t0, t1));
+        return clipEnter <= clipExit;
+    }
+}
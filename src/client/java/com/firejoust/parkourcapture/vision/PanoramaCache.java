@@ -0,0 +1,117 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.block.ShapeContext;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Full 360° cylindrical panorama of vision columns around the eye.
+ * <p>
+ * Azimuths sit on a fixed world-aligned lattice with the vision grid's column step, so a tick
+ * whose player only turned cuts its window out of columns that are already traced. Each
+ * column remembers the eye position and {@link WorldSnapshot#revision()} it was traced from;
+ * only window columns that are stale for the current tick are recast. Columns outside the
+ * window are left alone until the player looks at them again.
+ * <p>
+ * The pipeline traces panorama ticks one after another ({@link VisionMode#isOrdered}), so no
+ * pool worker ever waits on the cache's lock while another tick fans its stale columns out; the
+ * lock only publishes the column state from one tick's thread to the next.
+ */
+public final class PanoramaCache {
+
+    private final int windowWidth;
+    private final int height;
+    private final int columns;
+    private final float maxDistance;
+    private final double stepDegrees;
+    private final double halfFovDegrees;
+    private final double epsilonSquared;
+    private final RayDirectionTable directions;
+
+    private final float[][] distances;
+    private final int[][] blockStates;
+    private final boolean[] valid;
+    private final double[] eyeX;
+    private final double[] eyeY;
+    private final double[] eyeZ;
+    private final long[] revision;
+    private final int[] stale;
+
+    public PanoramaCache(int windowWidth, int height, float horizontalFovDegrees, float verticalFovDegrees,
+                         float maxDistance, double reuseEpsilon) {
+        this.windowWidth = windowWidth;
+        this.height = height;
+        this.maxDistance = maxDistance;
+        this.stepDegrees = (double) horizontalFovDegrees / windowWidth;
+        this.halfFovDegrees = horizontalFovDegrees / 2.0;
+        this.columns = (int) Math.round(360.0 / stepDegrees);
+        this.epsilonSquared = reuseEpsilon * reuseEpsilon;
+        // Column k looks along azimuth -180° + (k + 0.5) * step
+        this.directions = new RayDirectionTable(columns, height, 360.0f, verticalFovDegrees);
+
+        this.distances = new float[height][columns];
+        this.blockStates = new int[height][columns];
+        this.valid = new boolean[columns];
+        this.eyeX = new double[columns];
+        this.eyeY = new double[columns];
+        this.eyeZ = new double[columns];
+        this.revision = new long[columns];
+        this.stale = new int[windowWidth];
+    }
+
+    /** Fills {@code out} with the window at {@code yaw}, recasting stale columns. */
+    public synchronized void trace(ParallelVisionEngine engine, ThreadLocal<VoxelRaycaster> raycasters,
+                                   WorldSnapshot world, ShapeContext shapeContext, Vec3d eyePos, float yaw,
+                                   VisionGrid out) {
+        int firstColumn = Math.floorMod((int) Math.round((yaw - halfFovDegrees + 180.0) / stepDegrees), columns);
+
+        int staleCount = 0;
+        for (int c = 0; c < windowWidth; c++) {
+            int k = (firstColumn + c) % columns;
+            if (!valid[k] || revision[k] != world.revision() || eyeMoved(k, eyePos)) {
+                stale[staleCount++] = k;
+            }
+        }
+
+        // Stale columns are independent of each other, so they fan out like rows do
+        int[] staleColumns = stale;
+        engine.traceRows(staleCount, i -> traceColumn(raycasters.get(), world, shapeContext, eyePos, staleColumns[i]));
+        for (int i = 0; i < staleCount; i++) {
+            int k = stale[i];
+            valid[k] = true;
+            revision[k] = world.revision();
+            eyeX[k] = eyePos.x;
+            eyeY[k] = eyePos.y;
+            eyeZ[k] = eyePos.z;
+        }
+
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < windowWidth; c++) {
+                int k = (firstColumn + c) % columns;
+                out.set(r * windowWidth + c, distances[r][k], blockStates[r][k]);
+            }
+        }
+    }
+
+    private boolean eyeMoved(int k, Vec3d eyePos) {
+        double dx = eyePos.x - eyeX[k];
+        double dy = eyePos.y - eyeY[k];
+        double dz = eyePos.z - eyeZ[k];
+        return dx * dx + dy * dy + dz * dz > epsilonSquared;
+    }
+
+    private void traceColumn(VoxelRaycaster raycaster, WorldSnapshot world, ShapeContext shapeContext, Vec3d eyePos, int k) {
+        raycaster.bind(world, shapeContext);
+        for (int r = 0; r < height; r++) {
+            int cell = r * columns + k;
+            if (raycaster.cast(eyePos.x, eyePos.y, eyePos.z,
+                    directions.rotatedX(cell, 0.0, 1.0), directions.y(cell), directions.rotatedZ(cell, 0.0, 1.0),
+                    maxDistance)) {
+                distances[r][k] = raycaster.hitDistance();
+                blockStates[r][k] = raycaster.hitRawId();
+            } else {
+                distances[r][k] = maxDistance;
+                blockStates[r][k] = 0; // Air
+            }
+        }
+    }
+}
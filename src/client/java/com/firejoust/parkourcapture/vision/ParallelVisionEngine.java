@@ -0,0 +1,84 @@
+package com.firejoust.parkourcapture.vision;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedicated fork-join pool that evaluates the vision grid row by row.
+ * <p>
+ * The grid is split recursively into row ranges down to {@code rowsPerTask} rows per leaf.
+ * Each row is written only by the task that owns it, so the output layout is identical to a
+ * sequential evaluation regardless of scheduling. Row tracers must only read thread-safe
+ * state such as a {@link WorldSnapshot}.
+ */
+public final class ParallelVisionEngine {
+
+    @FunctionalInterface
+    public interface RowTracer {
+        void traceRow(int row);
+    }
+
+    private final ForkJoinPool pool;
+    private final int rowsPerTask;
+
+    public ParallelVisionEngine(int parallelism, int rowsPerTask) {
+        this.rowsPerTask = rowsPerTask;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ParkourCapture-Vision-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /** The pool the engine runs on; whole ticks may be submitted to it as well. */
+    public ForkJoinPool pool() {
+        return pool;
+    }
+
+    /** Traces rows {@code [0, rows)} in parallel and returns once all of them are done. */
+    public void traceRows(int rows, RowTracer tracer) {
+        RowRangeTask task = new RowRangeTask(tracer, 0, rows);
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class RowRangeTask extends RecursiveAction {
+        private final RowTracer tracer;
+        private final int from;
+        private final int to;
+
+        RowRangeTask(RowTracer tracer, int from, int to) {
+            this.tracer = tracer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rowsPerTask) {
+                for (int row = from; row < to; row++) {
+                    tracer.traceRow(row);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RowRangeTask(tracer, from, mid), new RowRangeTask(tracer, mid, to));
+        }
+    }
+}
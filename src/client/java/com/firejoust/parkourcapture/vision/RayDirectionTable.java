@@ -0,0 +1,68 @@
+package com.firejoust.parkourcapture.vision;
+
+/**
+ * Unit ray directions for every vision grid cell at yaw 0, computed once per grid configuration.
+ * <p>
+ * Pitch is fixed, so a tick's directions are these rotated about the Y axis by the player's
+ * yaw: callers compute the yaw's sine and cosine once and apply {@link #rotatedX}/{@link #rotatedZ}
+ * per cell. Cells are stored row-major ({@code row * width + column}).
+ */
+public final class RayDirectionTable {
+
+    // Rows are clamped just short of straight up/down, as the original per-cell computation did
+    private static final double PITCH_LIMIT = Math.PI / 2.0 - 0.001;
+
+    private final int width;
+    private final int height;
+    private final double[] dirX;
+    private final double[] dirY;
+    private final double[] dirZ;
+
+    public RayDirectionTable(int width, int height, float horizontalFovDegrees, float verticalFovDegrees) {
+        this.width = width;
+        this.height = height;
+        this.dirX = new double[width * height];
+        this.dirY = new double[width * height];
+        this.dirZ = new double[width * height];
+
+        double horizontalFovRad = Math.toRadians(horizontalFovDegrees);
+        double verticalFovRad = Math.toRadians(verticalFovDegrees);
+        double yawStepRad = horizontalFovRad / width;
+        double pitchStepRad = height > 0 ? verticalFovRad / height : 0;
+        double startYawOffset = -horizontalFovRad / 2.0 + yawStepRad / 2.0;
+        double startPitchOffset = -verticalFovRad / 2.0 + pitchStepRad / 2.0;
+
+        for (int r = 0; r < height; r++) {
+            double pitch = Math.max(-PITCH_LIMIT, Math.min(PITCH_LIMIT, startPitchOffset + r * pitchStepRad));
+            double cosPitch = Math.cos(pitch);
+            double sinPitch = Math.sin(pitch);
+            for (int c = 0; c < width; c++) {
+                double yawOffset = startYawOffset + c * yawStepRad;
+                int i = r * width + c;
+                dirX[i] = -Math.sin(yawOffset) * cosPitch;
+                dirY[i] = -sinPitch;
+                dirZ[i] = Math.cos(yawOffset) * cosPitch;
+            }
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public double rotatedX(int cell, double sinYaw, double cosYaw) {
+        return dirX[cell] * cosYaw - dirZ[cell] * sinYaw;
+    }
+
+    public double y(int cell) {
+        return dirY[cell];
+    }
+
+    public double rotatedZ(int cell, double sinYaw, double cosYaw) {
+        return dirX[cell] * sinYaw + dirZ[cell] * cosYaw;
+    }
+}
@@ -0,0 +1,11 @@
+package com.firejoust.parkourcapture.vision;
+
+/**
+ * Implemented on {@link net.minecraft.world.chunk.ChunkSection} by mixin. The version is bumped
+ * whenever the section's block states change, so snapshots can tell a reused section apart
+ * from a modified one without comparing contents.
+ */
+public interface VersionedChunkSection {
+
+    int parkourcapture$getVersion();
+}
@@ -0,0 +1,15 @@
+package com.firejoust.parkourcapture.vision;
+
+/**
+ * Destination of one tick's vision results, addressed by row-major cell index
+ * ({@code row * width + column}). Cells are written by whichever vision worker owns them, each
+ * at most once per trace, so implementations need no synchronization of their own.
+ */
+public interface VisionGrid {
+
+    void set(int cell, float distance, int rawId);
+
+    float distance(int cell);
+
+    int rawId(int cell);
+}
@@ -0,0 +1,33 @@
+package com.firejoust.parkourcapture.vision;
+
+/** How the vision grid is produced each tick. */
+public enum VisionMode {
+    /** Trace every cell from scratch. */
+    FULL,
+    /**
+     * Keep a 360° panorama of per-azimuth columns and cut the view window out of it. Columns
+     * are only recast when they are stale for the current eye position or world revision. The
+     * window is snapped to the panorama's column lattice, so yaw is quantized to one column step.
+     * Ticks are traced one after another.
+     */
+    PANORAMA,
+    /**
+     * Reuse each cell's previous result while the eye stays within the reuse epsilon and no
+     * block along its ray changed. Ticks must be traced in capture order.
+     */
+    INCREMENTAL,
+    /**
+     * Trace every cell of the fovea (the forward-down landing area by default) and only a sparse
+     * lattice elsewhere, then resample to the full grid; see {@link FoveatedLayout}.
+     */
+    FOVEATED;
+
+    /**
+     * Whether ticks must be traced one after another: their cache either depends on the previous
+     * tick or is locked for a whole trace, where concurrent ticks would only queue up inside pool
+     * workers.
+     */
+    public boolean isOrdered() {
+        return this == PANORAMA || this == INCREMENTAL;
+    }
+}
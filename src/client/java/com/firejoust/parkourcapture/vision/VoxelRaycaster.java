@@ -0,0 +1,369 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.ShapeContext;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.shape.VoxelShape;
+import net.minecraft.util.shape.VoxelShapes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.COLLIDER_EMPTY;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.COLLIDER_FULL;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.DYNAMIC;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.EMPTY;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.HAS_FLUID;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.OUTLINE_EMPTY;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.OUTLINE_FULL;
+import static com.firejoust.parkourcapture.vision.BlockShapeTable.SPECIAL;
+
+/**
+ * Single-pass Amanatides–Woo voxel traversal for the vision grid.
+ * <p>
+ * The vision grid used to cast every ray twice: an OUTLINE pass (fluids included) to find
+ * special non-collidable blocks, then a COLLIDER pass for everything else. This walks the
+ * voxels along the ray once and evaluates both rules per voxel, stopping as soon as the
+ * outcome of the two-stage rule is known.
+ * <p>
+ * Voxels are read as raw state ids from a {@link WorldSnapshot} and classified through the
+ * {@link BlockShapeTable}: empty and full-cube shapes are decided from the flags alone, other
+ * static shapes from their precomputed boxes. Only dynamic and fluid states go through the
+ * block API. Empty voxels are looked up in the snapshot's occupancy hierarchy, and the ray
+ * jumps straight across the empty brick or section around them instead of stepping voxel by
+ * voxel. The kernel works on primitive doubles and a reused {@link BlockPos.Mutable}, so a
+ * cast through static shapes allocates nothing. Boxes of dynamic shapes are cached by shape the
+ * first time they are seen; shapes that are not cached (offset shapes, or past the cache's
+ * bound) are read into a reused scratch array. Only what vanilla allocates to produce a dynamic
+ * or fluid shape remains. The result is left in {@link #hitDistance()} / {@link #hitRawId()}.
+ * Instances are not thread-safe; keep one per thread and {@link #bind} it to the world being
+ * traced.
+ */
+public final class VoxelRaycaster {
+
+    // Same nudge VoxelShape.raycast uses to detect a ray starting inside the shape
+    private static final double INSIDE_PROBE_T = 0.001;
+    private static final double FACE_EPSILON = 1.0E-7;
+    private static final int MAX_CACHED_SHAPES = 4096;
+    private static final double[] FULL_CUBE_BOXES = {0.0, 0.0, 0.0, 1.0, 1.0, 1.0};
+
+    // Flattened boxes of dynamic shapes, keyed by shape identity
+    private static final ConcurrentHashMap<VoxelShape, double[]> SHAPE_BOXES = new ConcurrentHashMap<>();
+
+    // Off only to measure what crossing empty cells in one step saves over plain voxel stepping
+    private final boolean skipEmptyCells;
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+    // Boxes of the current uncached shape, filled by collectBox
+    private double[] scratchBoxes = new double[6 * 8];
+    private int scratchLength;
+    private final VoxelShapes.BoxConsumer collectBox = this::collectBox;
+    private WorldSnapshot world;
+    private ShapeContext shapeContext;
+    private BlockShapeTable table;
+
+    // Current ray: origin and start-to-end delta, parameterised by t in [0, 1]
+    private double ox, oy, oz;
+    private double dx, dy, dz;
+    private double length;
+
+    private float hitDistance;
+    private int hitRawId;
+    private double walkedDistance;
+
+    public VoxelRaycaster() {
+        this(true);
+    }
+
+    VoxelRaycaster(boolean skipEmptyCells) {
+        this.skipEmptyCells = skipEmptyCells;
+    }
+
+    public void bind(WorldSnapshot world, ShapeContext shapeContext) {
+        this.world = world;
+        this.shapeContext = shapeContext;
+        this.table = BlockShapeTable.get();
+    }
+
+    public float hitDistance() {
+        return hitDistance;
+    }
+
+    /** Raw state id hit by the last cast; only meaningful if it returned {@code true}. */
+    public int hitRawId() {
+        return hitRawId;
+    }
+
+    /**
+     * How far along the ray the last cast's traversal reached. Every voxel whose contents could
+     * change the result lies within this distance, which may lie past the hit itself.
+     */
+    public double walkedDistance() {
+        return walkedDistance;
+    }
+
+    /**
+     * Casts {@code length} blocks from the origin along the unit direction. Equivalent to an
+     * OUTLINE + {@code FluidHandling.ANY} raycast whose hit is kept only if it is a special block,
+     * falling back to a COLLIDER + {@code FluidHandling.NONE} raycast.
+     *
+     * @return whether anything was hit
+     */
+    public boolean cast(double originX, double originY, double originZ,
+                        double dirX, double dirY, double dirZ, double length) {
+        this.ox = originX;
+        this.oy = originY;
+        this.oz = originZ;
+        this.dx = dirX * length;
+        this.dy = dirY * length;
+        this.dz = dirZ * length;
+        this.length = length;
+        this.walkedDistance = length;
+        if (dx * dx + dy * dy + dz * dz < 1.0E-7) {
+            return false;
+        }
+
+        int x = MathHelper.floor(ox);
+        int y = MathHelper.floor(oy);
+        int z = MathHelper.floor(oz);
+        int stepX = (int) Math.signum(dx);
+        int stepY = (int) Math.signum(dy);
+        int stepZ = (int) Math.signum(dz);
+        double tDeltaX = stepX == 0 ? Double.MAX_VALUE : 1.0 / Math.abs(dx);
+        double tDeltaY = stepY == 0 ? Double.MAX_VALUE : 1.0 / Math.abs(dy);
+        double tDeltaZ = stepZ == 0 ? Double.MAX_VALUE : 1.0 / Math.abs(dz);
+        double tMaxX = stepX == 0 ? Double.MAX_VALUE : tDeltaX * (stepX > 0 ? x + 1 - ox : ox - x);
+        double tMaxY = stepY == 0 ? Double.MAX_VALUE : tDeltaY * (stepY > 0 ? y + 1 - oy : oy - y);
+        double tMaxZ = stepZ == 0 ? Double.MAX_VALUE : tDeltaZ * (stepZ > 0 ? z + 1 - oz : oz - z);
+        // Parameter at which the ray entered the current voxel
+        double tEntry = 0.0;
+
+        boolean outlineResolved = false;
+        double colliderT = -1.0;
+        int colliderId = -1;
+
+        while (true) {
+            int rawId = world.getRawId(x, y, z);
+            int flags = table.flags(rawId);
+
+            if (skipEmptyCells && (flags & EMPTY) != 0) {
+                int size = world.emptyCellSize(x, y, z);
+                if (size > 1) {
+                    // Leave the empty cell in one step: the exit crossing picks the axis as the
+                    // voxel step below would, the other axes stay where the ray is at that point
+                    int mask = -size;
+                    int cellX = x & mask, cellY = y & mask, cellZ = z & mask;
+                    double exitX = stepX == 0 ? Double.MAX_VALUE : tDeltaX * (stepX > 0 ? cellX + size - ox : ox - cellX);
+                    double exitY = stepY == 0 ? Double.MAX_VALUE : tDeltaY * (stepY > 0 ? cellY + size - oy : oy - cellY);
+                    double exitZ = stepZ == 0 ? Double.MAX_VALUE : tDeltaZ * (stepZ > 0 ? cellZ + size - oz : oz - cellZ);
+                    double exit;
+                    if (exitX < exitY && exitX < exitZ) {
+                        exit = exitX;
+                        x = stepX > 0 ? cellX + size : cellX - 1;
+                        y = inCell(oy + dy * exit, cellY, size);
+                        z = inCell(oz + dz * exit, cellZ, size);
+                    } else if (exitY < exitZ) {
+                        exit = exitY;
+                        x = inCell(ox + dx * exit, cellX, size);
+                        y = stepY > 0 ? cellY + size : cellY - 1;
+                        z = inCell(oz + dz * exit, cellZ, size);
+                    } else {
+                        exit = exitZ;
+                        x = inCell(ox + dx * exit, cellX, size);
+                        y = inCell(oy + dy * exit, cellY, size);
+                        z = stepZ > 0 ? cellZ + size : cellZ - 1;
+                    }
+                    if (exit > 1.0) break;
+                    tEntry = exit;
+                    tMaxX = stepX == 0 ? Double.MAX_VALUE : tDeltaX * (stepX > 0 ? x + 1 - ox : ox - x);
+                    tMaxY = stepY == 0 ? Double.MAX_VALUE : tDeltaY * (stepY > 0 ? y + 1 - oy : oy - y);
+                    tMaxZ = stepZ == 0 ? Double.MAX_VALUE : tDeltaZ * (stepZ > 0 ? z + 1 - oz : oz - z);
+                    continue;
+                }
+            }
+
+            // Stage 1: first OUTLINE/fluid hit wins only if it is a special block
+            if (!outlineResolved) {
+                double outlineT = (flags & DYNAMIC) != 0
+                        ? intersectDynamic(rawId, x, y, z, true)
+                        : intersectStatic(flags, OUTLINE_EMPTY, OUTLINE_FULL, table.outlineBoxes(rawId), tEntry, x, y, z);
+                if ((flags & HAS_FLUID) != 0) {
+                    double fluidT = intersectFluid(rawId, x, y, z);
+                    // Same tie-break as BlockView.raycast: the block wins unless the fluid is strictly closer
+                    if (fluidT >= 0.0 && (outlineT < 0.0 || fluidT < outlineT)) {
+                        outlineT = fluidT;
+                    }
+                }
+                if (outlineT >= 0.0) {
+                    outlineResolved = true;
+                    if ((flags & SPECIAL) != 0) {
+                        walked(tMaxX, tMaxY, tMaxZ);
+                        return hit(outlineT, rawId);
+                    }
+                }
+            }
+
+            // Stage 2: first COLLIDER hit, ignoring fluids
+            if (colliderId < 0) {
+                double t = (flags & DYNAMIC) != 0
+                        ? intersectDynamic(rawId, x, y, z, false)
+                        : intersectStatic(flags, COLLIDER_EMPTY, COLLIDER_FULL, table.colliderBoxes(rawId), tEntry, x, y, z);
+                if (t >= 0.0) {
+                    colliderT = t;
+                    colliderId = rawId;
+                }
+            }
+
+            if (outlineResolved && colliderId >= 0) {
+                walked(tMaxX, tMaxY, tMaxZ);
+                return hit(colliderT, colliderId);
+            }
+
+            // Advance to the next voxel along the smallest crossing
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                if (tMaxX > 1.0) break;
+                x += stepX;
+                tEntry = tMaxX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY < tMaxZ) {
+                if (tMaxY > 1.0) break;
+                y += stepY;
+                tEntry = tMaxY;
+                tMaxY += tDeltaY;
+            } else {
+                if (tMaxZ > 1.0) break;
+                z += stepZ;
+                tEntry = tMaxZ;
+                tMaxZ += tDeltaZ;
+            }
+        }
+        return colliderId >= 0 && hit(colliderT, colliderId);
+    }
+
+    // Voxel coordinate of a point known to lie in the cell, clamped against rounding at its faces
+    private static int inCell(double coord, int cellMin, int size) {
+        return MathHelper.clamp(MathHelper.floor(coord), cellMin, cellMin + size - 1);
+    }
+
+    // The traversal stopped inside the current voxel, i.e. before its nearest exit crossing
+    private void walked(double tMaxX, double tMaxY, double tMaxZ) {
+        walkedDistance = Math.min(1.0, Math.min(tMaxX, Math.min(tMaxY, tMaxZ))) * length;
+    }
+
+    private boolean hit(double t, int rawId) {
+        hitDistance = (float) (t * length);
+        hitRawId = rawId;
+        return true;
+    }
+
+    private double intersectStatic(int flags, int emptyFlag, int fullFlag, double[] boxes, double tEntry, int bx, int by, int bz) {
+        if ((flags & emptyFlag) != 0) {
+            return -1.0;
+        }
+        if ((flags & fullFlag) != 0) {
+            // A full cube is hit where the ray entered the voxel, unless the inside probe lands in it
+            return tEntry > INSIDE_PROBE_T ? tEntry : intersect(FULL_CUBE_BOXES, FULL_CUBE_BOXES.length, bx, by, bz);
+        }
+        return intersect(boxes, boxes.length, bx, by, bz);
+    }
+
+    private double intersectDynamic(int rawId, int bx, int by, int bz, boolean outline) {
+        BlockState state = table.state(rawId);
+        pos.set(bx, by, bz);
+        VoxelShape shape = outline
+                ? state.getOutlineShape(world, pos, shapeContext)
+                : state.getCollisionShape(world, pos, shapeContext);
+        return intersect(shape, state, bx, by, bz);
+    }
+
+    private double intersectFluid(int rawId, int bx, int by, int bz) {
+        FluidState fluidState = table.state(rawId).getFluidState();
+        pos.set(bx, by, bz);
+        return intersect(fluidState.getShape(world, pos), null, bx, by, bz);
+    }
+
+    /**
+     * Ray parameter of the first hit on {@code shape} placed at the voxel, or -1 on a miss.
+     * Mirrors VoxelShape.raycast: a ray starting inside the shape hits at the probe distance.
+     */
+    private double intersect(VoxelShape shape, BlockState state, int bx, int by, int bz) {
+        if (shape.isEmpty()) {
+            return -1.0;
+        }
+        double[] boxes = SHAPE_BOXES.get(shape);
+        if (boxes == null && (state == null || !state.hasModelOffset()) && SHAPE_BOXES.size() < MAX_CACHED_SHAPES) {
+            boxes = SHAPE_BOXES.computeIfAbsent(shape, BlockShapeTable::flatten);
+        }
+        if (boxes != null) {
+            return intersect(boxes, boxes.length, bx, by, bz);
+        }
+        // Offset shapes (flowers, grass) are rebuilt per position by vanilla; caching them would only churn
+        scratchLength = 0;
+        shape.forEachBox(collectBox);
+        return intersect(scratchBoxes, scratchLength, bx, by, bz);
+    }
+
+    private void collectBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        if (scratchLength + 6 > scratchBoxes.length) {
+            scratchBoxes = Arrays.copyOf(scratchBoxes, scratchBoxes.length * 2);
+        }
+        scratchBoxes[scratchLength++] = minX;
+        scratchBoxes[scratchLength++] = minY;
+        scratchBoxes[scratchLength++] = minZ;
+        scratchBoxes[scratchLength++] = maxX;
+        scratchBoxes[scratchLength++] = maxY;
+        scratchBoxes[scratchLength++] = maxZ;
+    }
+
+    private double intersect(double[] boxes, int length, int bx, int by, int bz) {
+        double px = ox + dx * INSIDE_PROBE_T - bx;
+        double py = oy + dy * INSIDE_PROBE_T - by;
+        double pz = oz + dz * INSIDE_PROBE_T - bz;
+        double best = 1.0;
+        boolean found = false;
+        for (int i = 0; i < length; i += 6) {
+            double minX = boxes[i], minY = boxes[i + 1], minZ = boxes[i + 2];
+            double maxX = boxes[i + 3], maxY = boxes[i + 4], maxZ = boxes[i + 5];
+            if (px >= minX && px < maxX && py >= minY && py < maxY && pz >= minZ && pz < maxZ) {
+                return INSIDE_PROBE_T;
+            }
+            double t = slab(ox - bx, dx, minX, maxX, oy - by, dy, minY, maxY, oz - bz, dz, minZ, maxZ);
+            if (t > 0.0 && t < best) {
+                best = t;
+                found = true;
+            }
+        }
+        return found ? best : -1.0;
+    }
+
+    // Entry parameter of the segment into the box, or -1 if it never enters
+    private static double slab(double sx, double ddx, double minX, double maxX,
+                               double sy, double ddy, double minY, double maxY,
+                               double sz, double ddz, double minZ, double maxZ) {
+        double tEnter = Double.NEGATIVE_INFINITY;
+        double tExit = Double.POSITIVE_INFINITY;
+        if (ddx != 0.0) {
+            double t0 = (minX - sx) / ddx, t1 = (maxX - sx) / ddx;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        } else if (sx < minX - FACE_EPSILON || sx > maxX + FACE_EPSILON) {
+            return -1.0;
+        }
+        if (ddy != 0.0) {
+            double t0 = (minY - sy) / ddy, t1 = (maxY - sy) / ddy;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        } else if (sy < minY - FACE_EPSILON || sy > maxY + FACE_EPSILON) {
+            return -1.0;
+        }
+        if (ddz != 0.0) {
+            double t0 = (minZ - sz) / ddz, t1 = (maxZ - sz) / ddz;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        } else if (sz < minZ - FACE_EPSILON || sz > maxZ + FACE_EPSILON) {
+            return -1.0;
+        }
+        return tEnter <= tExit + FACE_EPSILON ? tEnter : -1.0;
+    }
+}
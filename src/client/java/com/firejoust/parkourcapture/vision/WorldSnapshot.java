@@ -0,0 +1,126 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.BlockView;
+
+/**
+ * Immutable, read-only copy of the block-state sections around the player, safe to raycast
+ * against from any thread.
+ * <p>
+ * Sections are stored in a flat {@code sizeX * sizeY * sizeZ} array of raw state id arrays
+ * (indexed {@code y << 8 | z << 4 | x}, ids as unsigned {@code short}s, which
+ * {@link BlockShapeTable#MAX_STATE_IDS} guarantees are wide enough), so the raycaster reads a
+ * voxel's id with two array loads and classifies it through {@link BlockShapeTable}. {@code null}
+ * entries are empty or unloaded sections and read as air. Block entities are not captured, so the
+ * few shapes that depend on one fall back to their default shape.
+ * <p>
+ * Alongside each section the snapshot keeps a 64-bit occupancy mask over its 4x4x4 bricks (bit
+ * {@code by << 4 | bz << 2 | bx} set if any voxel in the brick is not {@link BlockShapeTable#EMPTY}).
+ * Together with the {@code null} sections this forms a two-level hierarchy that
+ * {@link #emptyCellSize} exposes to the raycaster, so rays cross open air a brick or a whole
+ * section at a time.
+ */
+public final class WorldSnapshot implements BlockView {
+
+    private static final int AIR_ID = Block.getRawIdFromState(Blocks.AIR.getDefaultState());
+    private static final int VOID_AIR_ID = Block.getRawIdFromState(Blocks.VOID_AIR.getDefaultState());
+
+    private final int minSectionX;
+    private final int minSectionY;
+    private final int minSectionZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final short[][] sections;
+    private final long[] brickMasks;
+    private final int bottomY;
+    private final int height;
+    private final long revision;
+
+    WorldSnapshot(int minSectionX, int minSectionY, int minSectionZ, int sizeX, int sizeY, int sizeZ,
+                  short[][] sections, long[] brickMasks, int bottomY, int height, long revision) {
+        this.minSectionX = minSectionX;
+        this.minSectionY = minSectionY;
+        this.minSectionZ = minSectionZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.sections = sections;
+        this.brickMasks = brickMasks;
+        this.bottomY = bottomY;
+        this.height = height;
+        this.revision = revision;
+    }
+
+    /** Equal revisions from the same {@link WorldSnapshotter} mean identical block contents. */
+    public long revision() {
+        return revision;
+    }
+
+    /** Raw state id at the position, as {@link Block#getRawIdFromState} would return. */
+    public int getRawId(int x, int y, int z) {
+        if (y < bottomY || y >= bottomY + height) {
+            return VOID_AIR_ID;
+        }
+        int sx = (x >> 4) - minSectionX;
+        int sy = (y >> 4) - minSectionY;
+        int sz = (z >> 4) - minSectionZ;
+        if (sx < 0 || sy < 0 || sz < 0 || sx >= sizeX || sy >= sizeY || sz >= sizeZ) {
+            return AIR_ID;
+        }
+        short[] section = sections[(sy * sizeZ + sz) * sizeX + sx];
+        return section == null ? AIR_ID : section[(y & 15) << 8 | (z & 15) << 4 | (x & 15)] & 0xFFFF;
+    }
+
+    /**
+     * Edge length of the aligned empty cell containing the voxel: 16 for an empty, unloaded or
+     * out-of-world section, 4 for an empty brick, or 1 if the voxel's brick is occupied.
+     */
+    public int emptyCellSize(int x, int y, int z) {
+        if (y < bottomY || y >= bottomY + height) {
+            return 16;
+        }
+        int sx = (x >> 4) - minSectionX;
+        int sy = (y >> 4) - minSectionY;
+        int sz = (z >> 4) - minSectionZ;
+        if (sx < 0 || sy < 0 || sz < 0 || sx >= sizeX || sy >= sizeY || sz >= sizeZ) {
+            return 16;
+        }
+        int index = (sy * sizeZ + sz) * sizeX + sx;
+        if (sections[index] == null) {
+            return 16;
+        }
+        int brick = (y & 15) >> 2 << 4 | (z & 15) >> 2 << 2 | (x & 15) >> 2;
+        return (brickMasks[index] >>> brick & 1L) == 0 ? 4 : 1;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        return Block.getStateFromRawId(getRawId(pos.getX(), pos.getY(), pos.getZ()));
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getBottomY() {
+        return bottomY;
+    }
+}
@@ -0,0 +1,147 @@
+package com.firejoust.parkourcapture.vision;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.ChunkStatus;
+
+/**
+ * Builds {@link WorldSnapshot}s on the client thread.
+ * <p>
+ * Sections are copied as flat raw state id arrays, together with their brick occupancy masks
+ * (see {@link WorldSnapshot}); a section whose voxels are all {@link BlockShapeTable#EMPTY} is
+ * not stored at all. Copies are cached by section position and shared copy-on-write between
+ * consecutive snapshots: a section is only copied again when the live {@link ChunkSection}
+ * was replaced or its {@link VersionedChunkSection} version moved, so a tick only pays for
+ * the sections that changed since the last one. Each snapshot carries a revision that only
+ * moves when its contents differ from the previous snapshot's, so caches built on top of a
+ * snapshot can tell whether the blocks under them changed. Not thread-safe; call from the
+ * client thread.
+ */
+public final class WorldSnapshotter {
+
+    private static final class CachedSection {
+        ChunkSection source;
+        int version;
+        short[] copy;
+        long brickMask;
+        long generation;
+    }
+
+    private final Long2ObjectOpenHashMap<CachedSection> cache = new Long2ObjectOpenHashMap<>();
+    private long generation = 0;
+    // Bumped whenever a capture's contents differ from the previous capture's
+    private long revision = 0;
+    private boolean changed;
+    private long lastBounds = Long.MIN_VALUE;
+
+    /** Snapshots every section intersecting the cube of half-size {@code radius} around {@code center}. */
+    public WorldSnapshot capture(World world, Vec3d center, double radius) {
+        int minSectionX = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.x - radius));
+        int maxSectionX = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.x + radius));
+        int minSectionZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.z - radius));
+        int maxSectionZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.z + radius));
+        int minSectionY = Math.max(world.getBottomSectionCoord(),
+                ChunkSectionPos.getSectionCoord(MathHelper.floor(center.y - radius)));
+        int maxSectionY = Math.min(world.getBottomSectionCoord() + world.countVerticalSections() - 1,
+                ChunkSectionPos.getSectionCoord(MathHelper.floor(center.y + radius)));
+
+        int sizeX = maxSectionX - minSectionX + 1;
+        int sizeY = Math.max(0, maxSectionY - minSectionY + 1);
+        int sizeZ = maxSectionZ - minSectionZ + 1;
+        short[][] sections = new short[sizeX * sizeY * sizeZ][];
+        long[] brickMasks = new long[sections.length];
+        BlockShapeTable table = BlockShapeTable.get();
+
+        generation++;
+        changed = false;
+        for (int sz = 0; sz < sizeZ; sz++) {
+            for (int sx = 0; sx < sizeX; sx++) {
+                Chunk chunk = world.getChunk(minSectionX + sx, minSectionZ + sz, ChunkStatus.FULL, false);
+                if (chunk == null) {
+                    continue;
+                }
+                ChunkSection[] chunkSections = chunk.getSectionArray();
+                for (int sy = 0; sy < sizeY; sy++) {
+                    int sectionY = minSectionY + sy;
+                    ChunkSection section = chunkSections[world.sectionCoordToIndex(sectionY)];
+                    if (section == null || section.isEmpty()) {
+                        continue;
+                    }
+                    long key = ChunkSectionPos.asLong(minSectionX + sx, sectionY, minSectionZ + sz);
+                    CachedSection entry = copyOnWrite(key, section, table);
+                    int index = (sy * sizeZ + sz) * sizeX + sx;
+                    sections[index] = entry.copy;
+                    brickMasks[index] = entry.brickMask;
+                }
+            }
+        }
+        // Drop sections that fell out of range, emptied or unloaded this tick
+        if (cache.values().removeIf(entry -> entry.generation != generation)) {
+            changed = true;
+        }
+        long bounds = ChunkSectionPos.asLong(minSectionX, minSectionY, minSectionZ);
+        if (bounds != lastBounds) {
+            lastBounds = bounds;
+            changed = true;
+        }
+        if (changed) {
+            revision++;
+        }
+
+        return new WorldSnapshot(minSectionX, minSectionY, minSectionZ, sizeX, sizeY, sizeZ, sections, brickMasks,
+                world.getBottomY(), world.getHeight(), revision);
+    }
+
+    public void clear() {
+        cache.clear();
+        lastBounds = Long.MIN_VALUE;
+    }
+
+    private CachedSection copyOnWrite(long key, ChunkSection section, BlockShapeTable table) {
+        int version = ((VersionedChunkSection) section).parkourcapture$getVersion();
+        CachedSection entry = cache.get(key);
+        if (entry == null) {
+            entry = new CachedSection();
+            cache.put(key, entry);
+        }
+        if (entry.source != section || entry.version != version) {
+            entry.source = section;
+            entry.version = version;
+            copy(entry, section, table);
+            changed = true;
+        }
+        entry.generation = generation;
+        return entry;
+    }
+
+    private static void copy(CachedSection entry, ChunkSection section, BlockShapeTable table) {
+        short[] ids = new short[16 * 16 * 16];
+        long bricks = 0L;
+        BlockState last = null;
+        int lastId = 0;
+        boolean lastEmpty = true;
+        for (int i = 0; i < ids.length; i++) {
+            BlockState state = section.getBlockState(i & 15, i >> 8, (i >> 4) & 15);
+            // Runs of the same state are common; skip the id lookup for them
+            if (state != last) {
+                last = state;
+                lastId = Block.getRawIdFromState(state);
+                lastEmpty = (table.flags(lastId) & BlockShapeTable.EMPTY) != 0;
+            }
+            ids[i] = (short) lastId;
+            if (!lastEmpty) {
+                // i is y << 8 | z << 4 | x; the brick is (y >> 2) << 4 | (z >> 2) << 2 | x >> 2
+                bricks |= 1L << ((i >> 10) << 4 | ((i >> 6) & 3) << 2 | ((i >> 2) & 3));
+            }
+        }
+        entry.copy = bricks == 0L ? null : ids;
+        entry.brickMask = bricks;
+    }
+}
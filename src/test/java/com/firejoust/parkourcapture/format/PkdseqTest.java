@@ -0,0 +1,177 @@
+package com.firejoust.parkourcapture.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PkdseqTest {
+
+    private static final int VALUES = 200_000;
+    private static final float TARGET_YAW = 37.5f;
+    private static final int FALL_ZONE_Y = 515;
+
+    @Test
+    void proprioRoundsTiesLikeTheJson() {
+        Random random = new Random(0x71E5);
+        float[] proprio = new float[Pkdseq.PROPRIO_SIZE];
+        for (int i = 0; i < VALUES; i++) {
+            Tick tick = new Tick(
+                    (float) (random.nextDouble() * 360.0 - 180.0),
+                    tie(random, 0, 1), tie(random, 0, 1), tie(random, 0, 1),
+                    tie(random, FALL_ZONE_Y, 10),
+                    0.0f);
+            Pkdseq.proprio(tick, TARGET_YAW, FALL_ZONE_Y, proprio, 0);
+
+            assertEquals(clamp(json(tick.velocityX()), -1.0, 1.0), proprio[0], "vx " + tick.velocityX());
+            assertEquals(clamp(json(tick.velocityY()), -1.0, 1.0), proprio[1], "vy " + tick.velocityY());
+            assertEquals(clamp(json(tick.velocityZ()), -1.0, 1.0), proprio[2], "vz " + tick.velocityZ());
+            assertEquals((float) (Pkdseq.normalizeAngle(json(tick.yaw()) - json(TARGET_YAW)) / 180.0), proprio[3],
+                    "yaw " + tick.yaw());
+            assertEquals(clamp((json(tick.playerY()) - FALL_ZONE_Y) / Pkdseq.MAX_REL_HEIGHT, -1.0, 1.0), proprio[7],
+                    "py " + tick.playerY());
+        }
+    }
+
+    @Test
+    void proprioRoundsKnownTiesUp() {
+        float[] proprio = new float[Pkdseq.PROPRIO_SIZE];
+        // 520.7375 * 1000 lands just below the tie in binary, which used to round it down to 520.737
+        Pkdseq.proprio(new Tick(0.0f, 0.0005, -0.0005, 0.2965, 520.7375, 0.0f), 0.0f, FALL_ZONE_Y, proprio, 0);
+        assertEquals(0.001f, proprio[0]);
+        assertEquals(-0.001f, proprio[1]);
+        assertEquals(0.297f, proprio[2]);
+        assertEquals((float) ((520.738 - FALL_ZONE_Y) / Pkdseq.MAX_REL_HEIGHT), proprio[7]);
+    }
+
+    @Test
+    void quantizeDistanceRoundsLikeTheJson() {
+        Random random = new Random(0xD157);
+        for (int i = 0; i < VALUES; i++) {
+            float distance = switch (i % 3) {
+                case 0 -> (float) (random.nextDouble() * 30.0);
+                // Sixteenths are exact decimal ties in the fourth place once widened
+                case 1 -> random.nextInt(30 * 16) / 16.0f;
+                default -> (float) (tie(random, 0, 30) + 0.05);
+            };
+            double blocks = Math.max(0.0, Math.min(json(distance), Pkdseq.MAX_DISTANCE_BLOCKS));
+            int expected = (int) Math.max(0, Math.min(Math.round(blocks * 10.0), Pkdseq.MAX_DISTANCE_UNITS));
+            assertEquals(expected, Pkdseq.quantizeDistance(distance) & 0xFF, "distance " + distance);
+        }
+    }
+
+    @Test
+    void fixed3RoundsLikeBigDecimal() {
+        Random random = new Random(0xF1CE);
+        for (int i = 0; i < VALUES; i++) {
+            double value = i % 2 == 0 ? tie(random, 0, 1_000_000) : (random.nextLong() % 10_000_000_000L) / 10_000.0;
+            assertEquals(json(value), Fixed3.round(value), "value " + value);
+        }
+        assertEquals(0.0, Fixed3.round(-0.0004));
+        assertEquals(Double.NaN, Fixed3.round(Double.NaN));
+        assertEquals(json(1e15 + 0.5), Fixed3.round(1e15 + 0.5));
+    }
+
+    // A value whose shortest decimal form ends in 5 in the fourth place, within center +- bound
+    private static double tie(Random random, int center, int bound) {
+        long thousandths = center * 1000L + random.nextLong() % (bound * 1000L);
+        return BigDecimal.valueOf(thousandths * 10 + (thousandths < 0 ? -5 : 5), 4).doubleValue();
+    }
+
+    // The value as the normalizer parses it back from run JSON
+    private static double json(double value) {
+        return BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    // As proprio clamps, narrowed to the stored float
+    private static float clamp(double value, double min, double max) {
+        return (float) Math.max(min, Math.min(value, max));
+    }
+
+    private record Tick(float yaw, double velocityX, double velocityY, double velocityZ, double playerY,
+                        float distance) implements RunTick {
+
+        @Override
+        public long sequence() {
+            return 0;
+        }
+
+        @Override
+        public boolean inputForward() {
+            return false;
+        }
+
+        @Override
+        public boolean inputLeft() {
+            return false;
+        }
+
+        @Override
+        public boolean inputRight() {
+            return false;
+        }
+
+        @Override
+        public boolean inputBack() {
+            return false;
+        }
+
+        @Override
+        public boolean inputJump() {
+            return false;
+        }
+
+        @Override
+        public boolean inputSneak() {
+            return false;
+        }
+
+        @Override
+        public boolean inputSprint() {
+            return false;
+        }
+
+        @Override
+        public boolean isOnGround() {
+            return false;
+        }
+
+        @Override
+        public boolean isCollidedHorizontally() {
+            return false;
+        }
+
+        @Override
+        public boolean isCollidedVertically() {
+            return false;
+        }
+
+        @Override
+        public boolean isInFallZone() {
+            return false;
+        }
+
+        @Override
+        public int visionWidth() {
+            return 1;
+        }
+
+        @Override
+        public int visionHeight() {
+            return 1;
+        }
+
+        @Override
+        public float visionDistance(int row, int column) {
+            return distance;
+        }
+
+        @Override
+        public int visionBlockState(int row, int column) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.firejoust.parkourcapture.io;
+
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Throughput of {@link JsonEmitter} against the Gson writers it replaced, on ticks shaped like the
+ * run file's: the scalar fields, a 64x32 distance grid and a 64x32 block id grid. Gson is timed
+ * both as the old writer ran it (floats at full precision) and fed {@code BigDecimal}s, the
+ * three-decimal output the emitter reproduces; the emitter must match the latter byte for byte.
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class JsonEmitterBenchmark {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final int TICKS = 1_000;
+    private static final int ROUNDS = 5;
+    // The writers' buffer sizes in the mod, before and after
+    private static final int GSON_BUFFER_SIZE = 1 << 16;
+    private static final int EMITTER_BUFFER_SIZE = 1 << 20;
+
+    private record Tick(float yaw, double velocityX, double velocityY, double velocityZ, double playerY,
+                        boolean onGround, float[] distances, int[] blockStates) {}
+
+    private interface RunWriter {
+        void write(Path file, Tick[] ticks) throws IOException;
+    }
+
+    @Test
+    void emitterVersusGson(@TempDir Path dir) throws IOException {
+        Tick[] ticks = ticks(new Random(0x15));
+        Path gsonFile = dir.resolve("gson.json");
+        Path roundedFile = dir.resolve("gson-bigdecimal.json");
+        Path emitterFile = dir.resolve("emitter.json");
+
+        writeGson(roundedFile, ticks, true);
+        writeEmitter(emitterFile, ticks);
+        assertArrayEquals(Files.readAllBytes(roundedFile), Files.readAllBytes(emitterFile));
+
+        double gsonNanos = nanosPerTick((file, run) -> writeGson(file, run, false), gsonFile, ticks);
+        double roundedNanos = nanosPerTick((file, run) -> writeGson(file, run, true), roundedFile, ticks);
+        double emitterNanos = nanosPerTick(JsonEmitterBenchmark::writeEmitter, emitterFile, ticks);
+        System.out.printf(Locale.ROOT, "Gson: %.1f us/tick (%d B/tick), Gson with BigDecimal: %.1f us/tick,"
+                        + " emitter: %.1f us/tick (%d B/tick); %.1fx and %.1fx faster%n",
+                gsonNanos / 1e3, Files.size(gsonFile) / TICKS, roundedNanos / 1e3, emitterNanos / 1e3,
+                Files.size(emitterFile) / TICKS, gsonNanos / emitterNanos, roundedNanos / emitterNanos);
+    }
+
+    // Best of several rounds, after as many rounds of warm-up
+    private static double nanosPerTick(RunWriter writer, Path file, Tick[] ticks) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS * 2; round++) {
+            long start = System.nanoTime();
+            writer.write(file, ticks);
+            long elapsed = System.nanoTime() - start;
+            if (round >= ROUNDS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best / (double) TICKS;
+    }
+
+    private static void writeEmitter(Path file, Tick[] ticks) throws IOException {
+        try (JsonEmitter json = new JsonEmitter(file, EMITTER_BUFFER_SIZE)) {
+            json.beginArray();
+            for (Tick tick : ticks) {
+                json.beginObject();
+                json.name("y").fixed3(tick.yaw());
+                json.name("vx").fixed3(tick.velocityX());
+                json.name("vy").fixed3(tick.velocityY());
+                json.name("vz").fixed3(tick.velocityZ());
+                json.name("g").value(tick.onGround());
+                json.name("py").fixed3(tick.playerY());
+                json.name("vd").beginArray();
+                for (int r = 0; r < HEIGHT; r++) {
+                    json.beginArray();
+                    for (int c = 0; c < WIDTH; c++) {
+                        json.fixed3(tick.distances()[r * WIDTH + c]);
+                    }
+                    json.endArray();
+                }
+                json.endArray();
+                json.name("vb").beginArray();
+                for (int r = 0; r < HEIGHT; r++) {
+                    json.beginArray();
+                    for (int c = 0; c < WIDTH; c++) {
+                        json.value(tick.blockStates()[r * WIDTH + c]);
+                    }
+                    json.endArray();
+                }
+                json.endArray();
+                json.endObject();
+            }
+            json.endArray();
+        }
+    }
+
+    private static void writeGson(Path file, Tick[] ticks, boolean rounded) throws IOException {
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), GSON_BUFFER_SIZE))) {
+            json.beginArray();
+            for (Tick tick : ticks) {
+                json.beginObject();
+                json.name("y").value(rounded ? fixed3(tick.yaw()) : Float.valueOf(tick.yaw()));
+                json.name("vx").value(rounded ? fixed3(tick.velocityX()) : tick.velocityX());
+                json.name("vy").value(rounded ? fixed3(tick.velocityY()) : tick.velocityY());
+                json.name("vz").value(rounded ? fixed3(tick.velocityZ()) : tick.velocityZ());
+                json.name("g").value(tick.onGround());
+                json.name("py").value(rounded ? fixed3(tick.playerY()) : tick.playerY());
+                json.name("vd").beginArray();
+                for (int r = 0; r < HEIGHT; r++) {
+                    json.beginArray();
+                    for (int c = 0; c < WIDTH; c++) {
+                        float distance = tick.distances()[r * WIDTH + c];
+                        json.value(rounded ? fixed3(distance) : Float.valueOf(distance));
+                    }
+                    json.endArray();
+                }
+                json.endArray();
+                json.name("vb").beginArray();
+                for (int r = 0; r < HEIGHT; r++) {
+                    json.beginArray();
+                    for (int c = 0; c < WIDTH; c++) {
+                        json.value(tick.blockStates()[r * WIDTH + c]);
+                    }
+                    json.endArray();
+                }
+                json.endArray();
+                json.endObject();
+            }
+            json.endArray();
+        }
+    }
+
+    private static BigDecimal fixed3(double value) {
+        return BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    // Open air capped at the ray's reach with walls and floor closer in, as a parkour course looks
+    private static Tick[] ticks(Random random) {
+        Tick[] ticks = new Tick[TICKS];
+        for (int i = 0; i < TICKS; i++) {
+            float[] distances = new float[WIDTH * HEIGHT];
+            int[] blockStates = new int[WIDTH * HEIGHT];
+            for (int cell = 0; cell < distances.length; cell++) {
+                boolean hit = random.nextInt(3) != 0;
+                distances[cell] = hit ? 1.0f + random.nextFloat() * 40.0f : 64.0f;
+                blockStates[cell] = hit ? 1 + random.nextInt(27_000) : 0;
+            }
+            ticks[i] = new Tick(random.nextFloat() * 360.0f - 180.0f, random.nextGaussian() * 0.3,
+                    random.nextGaussian() * 0.4, random.nextGaussian() * 0.3, 60.0 + random.nextDouble() * 20.0,
+                    random.nextBoolean(), distances, blockStates);
+        }
+        return ticks;
+    }
+}
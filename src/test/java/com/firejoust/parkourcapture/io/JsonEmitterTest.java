@@ -0,0 +1,75 @@
+package com.firejoust.parkourcapture.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonEmitterTest {
+
+    private static final int VALUES = 200_000;
+
+    @Test
+    void fixed3MatchesBigDecimal(@TempDir Path dir) throws IOException {
+        Random random = new Random(0x5EED);
+        double[] values = new double[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = switch (i % 5) {
+                case 0 -> random.nextDouble() * 200.0 - 100.0;
+                // Floats are written widened, as the vision distances and yaw are
+                case 1 -> (float) (random.nextDouble() * 200.0 - 100.0);
+                // Decimal ties in the fourth place, the values the binary rounding got wrong
+                case 2 -> (random.nextInt(2_000_000) - 1_000_000) / 1000.0 + 0.0005;
+                case 3 -> (float) ((random.nextInt(200_000) - 100_000) / 1000.0 + 0.0005);
+                default -> (random.nextLong() % 10_000_000_000L) / 10_000.0;
+            };
+        }
+
+        Path file = dir.resolve("values.json");
+        try (JsonEmitter json = new JsonEmitter(file, 1 << 12)) {
+            json.beginArray();
+            for (double value : values) {
+                json.fixed3(value);
+            }
+            json.endArray();
+        }
+
+        String written = Files.readString(file, StandardCharsets.US_ASCII);
+        String[] numbers = written.substring(1, written.length() - 1).split(",");
+        assertEquals(VALUES, numbers.length);
+        for (int i = 0; i < VALUES; i++) {
+            String expected = BigDecimal.valueOf(values[i]).setScale(3, RoundingMode.HALF_UP).toPlainString();
+            assertEquals(expected, numbers[i], "value " + values[i]);
+        }
+    }
+
+    @Test
+    void fixed3WritesTiesAndSignsLikeBigDecimal(@TempDir Path dir) throws IOException {
+        double[] values = {0.0025, 0.0025f, -0.0005, -0.0004, 0.0, -0.0, 24.2965, 1.0005, 1e15, -123456.7895};
+        Path file = dir.resolve("ties.json");
+        try (JsonEmitter json = new JsonEmitter(file, 1 << 12)) {
+            json.beginArray();
+            for (double value : values) {
+                json.fixed3(value);
+            }
+            json.endArray();
+        }
+
+        StringBuilder expected = new StringBuilder("[");
+        for (double value : values) {
+            if (expected.length() > 1) {
+                expected.append(',');
+            }
+            expected.append(BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP).toPlainString());
+        }
+        assertEquals(expected.append(']').toString(), Files.readString(file, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,79 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockChangeTrackerTest {
+
+    @BeforeEach
+    void drainPending() {
+        BlockChangeTracker.drain();
+    }
+
+    @Test
+    void droppedTickChangesReachTheNextCapture() {
+        BlockPos placed = new BlockPos(10, 64, -3);
+        BlockChangeTracker.onBlockChanged(placed);
+        BlockChanges dropped = BlockChangeTracker.drain();
+
+        // The pipeline had no free slot for that capture
+        BlockChangeTracker.restore(dropped);
+        BlockPos broken = new BlockPos(11, 64, -3);
+        BlockChangeTracker.onBlockChanged(broken);
+        BlockChangeTracker.onChunkChanged(new ChunkPos(0, -1));
+
+        BlockChanges next = BlockChangeTracker.drain();
+        assertFalse(next.invalidateAll());
+        long[] positions = next.positions().clone();
+        Arrays.sort(positions);
+        long[] expected = {placed.asLong(), broken.asLong()};
+        Arrays.sort(expected);
+        assertArrayEquals(expected, positions);
+        assertArrayEquals(new long[]{new ChunkPos(0, -1).toLong()}, next.chunks());
+        assertTrue(BlockChangeTracker.drain().isEmpty());
+    }
+
+    @Test
+    void droppedFullInvalidationIsKept() {
+        BlockChangeTracker.invalidateAll();
+        BlockChanges dropped = BlockChangeTracker.drain();
+        assertTrue(dropped.invalidateAll());
+
+        BlockChangeTracker.restore(dropped);
+        BlockChangeTracker.onBlockChanged(new BlockPos(0, 0, 0));
+        assertSame(BlockChanges.ALL, BlockChangeTracker.drain());
+    }
+
+    @Test
+    void restoringPastTheCapInvalidatesEverything() {
+        for (int i = 0; i < 200; i++) {
+            BlockChangeTracker.onBlockChanged(new BlockPos(i, 0, 0));
+        }
+        BlockChanges dropped = BlockChangeTracker.drain();
+        for (int i = 0; i < 200; i++) {
+            BlockChangeTracker.onBlockChanged(new BlockPos(i, 1, 0));
+        }
+        BlockChangeTracker.restore(dropped);
+        assertTrue(BlockChangeTracker.drain().invalidateAll());
+    }
+
+    @Test
+    void failedVisionInvalidatesEverything() throws InterruptedException {
+        BlockChangeTracker.onBlockChanged(new BlockPos(1, 2, 3));
+        Thread worker = new Thread(BlockChangeTracker::requestInvalidateAll);
+        worker.start();
+        worker.join();
+
+        assertSame(BlockChanges.ALL, BlockChangeTracker.drain());
+        assertTrue(BlockChangeTracker.drain().isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.block.ShapeContext;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Throughput of the raycaster with and without empty brick and section skipping, on a course
+ * that is mostly open air as parkour maps are. Both must hit the same blocks; distances may
+ * differ in the last bits, since skipping computes crossings directly rather than accumulating
+ * them. Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class EmptyCellSkippingBenchmark {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final float MAX_DISTANCE = 64.0f;
+    private static final int WARMUP_TRACES = 300;
+    private static final int MEASURED_TRACES = 300;
+
+    @BeforeAll
+    static void bootstrap() {
+        TestWorlds.bootstrap();
+    }
+
+    @Test
+    void skippingVersusPlainDda() {
+        // 64 blocks of reach on each side, obstacles in one of 400 voxels above the floor
+        WorldSnapshot world = TestWorlds.parkourCourse(4, 4, 400, 8L);
+        RayDirectionTable directions = new RayDirectionTable(WIDTH, HEIGHT, 90.0f, 45.0f);
+        VoxelRaycaster skipping = new VoxelRaycaster(true);
+        VoxelRaycaster plain = new VoxelRaycaster(false);
+        skipping.bind(world, ShapeContext.absent());
+        plain.bind(world, ShapeContext.absent());
+
+        Grid skippingGrid = new Grid(WIDTH * HEIGHT);
+        Grid plainGrid = new Grid(WIDTH * HEIGHT);
+        for (int i = 0; i < WARMUP_TRACES; i++) {
+            traceGrid(skipping, directions, i * 1.2f, skippingGrid);
+            traceGrid(plain, directions, i * 1.2f, plainGrid);
+        }
+        for (int i = 0; i < 360; i += 15) {
+            traceGrid(skipping, directions, i, skippingGrid);
+            traceGrid(plain, directions, i, plainGrid);
+            assertArrayEquals(plainGrid.blockStates(), skippingGrid.blockStates(), "blocks at yaw " + i);
+            assertArrayEquals(plainGrid.distances(), skippingGrid.distances(), 1.0E-4f, "distances at yaw " + i);
+        }
+
+        double plainNanos = nanosPerRay(plain, directions, plainGrid);
+        double skippingNanos = nanosPerRay(skipping, directions, skippingGrid);
+        System.out.printf(Locale.ROOT, "Plain DDA: %.1f ns/ray, brick/section skipping: %.1f ns/ray (%.2fx)%n",
+                plainNanos, skippingNanos, plainNanos / skippingNanos);
+    }
+
+    private record Grid(float[] distances, int[] blockStates) {
+        Grid(int cells) {
+            this(new float[cells], new int[cells]);
+        }
+    }
+
+    private static double nanosPerRay(VoxelRaycaster raycaster, RayDirectionTable directions, Grid grid) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_TRACES; i++) {
+            traceGrid(raycaster, directions, i * 1.2f, grid);
+        }
+        return (System.nanoTime() - start) / ((double) MEASURED_TRACES * WIDTH * HEIGHT);
+    }
+
+    private static void traceGrid(VoxelRaycaster raycaster, RayDirectionTable directions, float yaw, Grid out) {
+        double yawRad = Math.toRadians(yaw);
+        double sinYaw = Math.sin(yawRad);
+        double cosYaw = Math.cos(yawRad);
+        for (int cell = 0; cell < WIDTH * HEIGHT; cell++) {
+            boolean hit = raycaster.cast(TestWorlds.EYE_X, TestWorlds.EYE_Y, TestWorlds.EYE_Z,
+                    directions.rotatedX(cell, sinYaw, cosYaw), directions.y(cell), directions.rotatedZ(cell, sinYaw, cosYaw),
+                    MAX_DISTANCE);
+            out.distances()[cell] = hit ? raycaster.hitDistance() : MAX_DISTANCE;
+            out.blockStates()[cell] = hit ? raycaster.hitRawId() : 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.SlabBlock;
+import net.minecraft.block.StairsBlock;
+import net.minecraft.block.enums.SlabType;
+import net.minecraft.util.math.Direction;
+
+import java.util.Random;
+
+/** Synthetic {@link WorldSnapshot}s for raycaster tests and benchmarks. */
+final class TestWorlds {
+
+    /** Eye of a player standing on the course floor, in the middle of its centre section. */
+    static final double EYE_X = 8.5, EYE_Y = 66.62, EYE_Z = 8.5;
+
+    // Static shapes only: the table decides them without the block API
+    private static final BlockState[] OBSTACLES = {
+            Blocks.STONE.getDefaultState(),
+            Blocks.OAK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.BOTTOM),
+            Blocks.OAK_SLAB.getDefaultState().with(SlabBlock.TYPE, SlabType.TOP),
+            Blocks.OAK_STAIRS.getDefaultState().with(StairsBlock.FACING, Direction.EAST),
+            Blocks.OAK_FENCE.getDefaultState(),
+            Blocks.LADDER.getDefaultState(),
+            Blocks.GLASS.getDefaultState(),
+    };
+
+    private TestWorlds() {}
+
+    static void bootstrap() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+        BlockShapeTable.rebuild();
+    }
+
+    /**
+     * A stone floor at y 64 under {@code radius} sections of air on each side of the eye, with one
+     * in {@code sparseness} voxels of the lowest section an obstacle and the sections above that
+     * empty. Sections with nothing in them are left {@code null}, as the snapshotter leaves them.
+     */
+    static WorldSnapshot parkourCourse(int radius, int height, int sparseness, long seed) {
+        int size = 2 * radius + 1;
+        Random random = new Random(seed);
+        return build(-radius, 4, -radius, size, height, size, (x, y, z) -> {
+            if (y == 64) {
+                return OBSTACLES[0];
+            }
+            if (y >= 80 || Math.abs(x - EYE_X) < 2 && Math.abs(z - EYE_Z) < 2) {
+                return null; // Keep the eye clear
+            }
+            return random.nextInt(sparseness) == 0 ? OBSTACLES[random.nextInt(OBSTACLES.length)] : null;
+        });
+    }
+
+    interface BlockSource {
+        /** State at the world position, or {@code null} for air. */
+        BlockState at(int x, int y, int z);
+    }
+
+    static WorldSnapshot build(int minSectionX, int minSectionY, int minSectionZ, int sizeX, int sizeY, int sizeZ,
+                               BlockSource blocks) {
+        BlockShapeTable table = BlockShapeTable.get();
+        int air = Block.getRawIdFromState(Blocks.AIR.getDefaultState());
+        short[][] sections = new short[sizeX * sizeY * sizeZ][];
+        long[] brickMasks = new long[sections.length];
+        for (int sy = 0; sy < sizeY; sy++) {
+            for (int sz = 0; sz < sizeZ; sz++) {
+                for (int sx = 0; sx < sizeX; sx++) {
+                    int index = (sy * sizeZ + sz) * sizeX + sx;
+                    short[] ids = new short[16 * 16 * 16];
+                    long bricks = 0L;
+                    for (int i = 0; i < ids.length; i++) {
+                        BlockState state = blocks.at((minSectionX + sx) * 16 + (i & 15), (minSectionY + sy) * 16 + (i >> 8),
+                                (minSectionZ + sz) * 16 + (i >> 4 & 15));
+                        int rawId = state != null ? Block.getRawIdFromState(state) : air;
+                        ids[i] = (short) rawId;
+                        if ((table.flags(rawId) & BlockShapeTable.EMPTY) == 0) {
+                            bricks |= 1L << ((i >> 10) << 4 | ((i >> 6) & 3) << 2 | ((i >> 2) & 3));
+                        }
+                    }
+                    sections[index] = bricks == 0L ? null : ids;
+                    brickMasks[index] = bricks;
+                }
+            }
+        }
+        return new WorldSnapshot(minSectionX, minSectionY, minSectionZ, sizeX, sizeY, sizeZ, sections, brickMasks,
+                -64, 384, 0L);
+    }
+}
@@ -0,0 +1,64 @@
+package com.firejoust.parkourcapture.vision;
+
+import net.minecraft.block.ShapeContext;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** A warmed grid trace through static shapes must not allocate; see {@link VoxelRaycaster}. */
+class VoxelRaycasterAllocationTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 32;
+    private static final float MAX_DISTANCE = 64.0f;
+    private static final int WARMUP_TRACES = 200;
+
+    @BeforeAll
+    static void bootstrap() {
+        TestWorlds.bootstrap();
+    }
+
+    @Test
+    void warmedGridTraceAllocatesNothing() {
+        WorldSnapshot world = TestWorlds.parkourCourse(1, 2, 12, 4L);
+        RayDirectionTable directions = new RayDirectionTable(WIDTH, HEIGHT, 90.0f, 45.0f);
+        VoxelRaycaster raycaster = new VoxelRaycaster();
+        raycaster.bind(world, ShapeContext.absent());
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int hits = 0;
+        for (int i = 0; i < WARMUP_TRACES; i++) {
+            hits += traceGrid(raycaster, directions, i * 7.5f);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10; i++) {
+            hits += traceGrid(raycaster, directions, i * 36.0f);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(hits > 0);
+        assertEquals(0L, allocated, "bytes allocated by 10 warmed grid traces");
+    }
+
+    // Same per-cell loop as the vision modes, on the calling thread so its allocations are counted
+    private static int traceGrid(VoxelRaycaster raycaster, RayDirectionTable directions, float yaw) {
+        double yawRad = Math.toRadians(yaw);
+        double sinYaw = Math.sin(yawRad);
+        double cosYaw = Math.cos(yawRad);
+        int hits = 0;
+        for (int cell = 0; cell < WIDTH * HEIGHT; cell++) {
+            if (raycaster.cast(TestWorlds.EYE_X, TestWorlds.EYE_Y, TestWorlds.EYE_Z, directions.rotatedX(cell, sinYaw, cosYaw),
+                    directions.y(cell), directions.rotatedZ(cell, sinYaw, cosYaw), MAX_DISTANCE)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}